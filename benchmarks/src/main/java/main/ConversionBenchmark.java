@@ -0,0 +1,48 @@
+package main;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/* The time (and, with -prof gc, the allocation) of simplifying and converting random grammars to CNF form - each invocation converts a freshly built grammar, so build measures the part of each score that isn't conversion */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConversionBenchmark {
+
+    @Param({"8", "32", "128"})
+    public int nonTerminals;
+
+    @Param({"4"})
+    public int productionsPerNonTerminal;
+
+    @Param({"4"})
+    public int maxLength;
+
+    private CFG newGrammar() {
+        return GrammarGenerator.random(nonTerminals, productionsPerNonTerminal, 4, maxLength, 3);
+    }
+
+    @Benchmark
+    public CFG build() {
+        return newGrammar();
+    }
+
+    @Benchmark
+    public CFG simplify() {
+        CFG cfg = newGrammar();
+        cfg.simplify();
+        return cfg;
+    }
+
+    @Benchmark
+    public CompiledGrammar convertToCNF() {
+        CFG cfg = newGrammar();
+        cfg.convertToCNF(cfg.getNextUnusedSymbol(), null);
+        return cfg.compile();
+    }
+
+}
@@ -0,0 +1,45 @@
+package main;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/* Single-threaded latency of the chart and matrix engines on the same members around the input lengths where one overtakes the other, which is what MembershipOptions' default matrix threshold is set from */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatrixCrossoverBenchmark {
+
+    @Param({"dyck", "arithmetic", "random"})
+    public String grammar;
+
+    /* Grammars without members of exactly this length use their next longer member */
+    @Param({"16", "32", "48", "64", "128", "256", "512", "1024"})
+    public int length;
+
+    @Param({"CHART", "MATRIX"})
+    public MembershipEngine engine;
+
+    private CompiledGrammar compiled;
+
+    private MembershipOptions options;
+
+    private int[] member;
+
+    @Setup
+    public void setUp() {
+        compiled = GrammarGenerator.compile(grammar);
+        options = new MembershipOptions().setEngine(engine).setParallelThreshold(Integer.MAX_VALUE); // both engines fill anti-diagonals in parallel the same way, so only the fill itself is compared
+        InputGenerator inputs = new InputGenerator(compiled, length + 2, 7);
+        member = inputs.member(length);
+    }
+
+    @Benchmark
+    public boolean member() {
+        return compiled.recognize(member, options);
+    }
+
+}
@@ -0,0 +1,60 @@
+package main;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/* Single-call latency of a membership check at several input lengths, for a member and for a non-member that differs from a member in one terminal */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MembershipBenchmark {
+
+    @Param({"dyck", "arithmetic", "random"})
+    public String grammar;
+
+    /* Grammars without members of exactly this length use their next longer member */
+    @Param({"16", "64", "256", "1024"})
+    public int length;
+
+    @Param({"AUTO", "CHART", "MATRIX", "EARLEY"})
+    public MembershipEngine engine;
+
+    private CompiledGrammar compiled;
+
+    private MembershipOptions options;
+
+    /* Only built for the EARLEY engine, which runs on the grammar as written */
+    private EarleyRecognizer earley;
+
+    private String member, nonMember;
+
+    @Setup
+    public void setUp() {
+        compiled = GrammarGenerator.compile(grammar);
+        options = new MembershipOptions().setEngine(engine);
+        if(engine == MembershipEngine.EARLEY)
+            earley = new EarleyRecognizer(GrammarGenerator.source(grammar), compiled);
+        InputGenerator inputs = new InputGenerator(compiled, length + 2, 7);
+        member = inputs.toString(inputs.member(length));
+        nonMember = inputs.toString(inputs.nonMember(member.length()));
+    }
+
+    @Benchmark
+    public boolean member() {
+        return check(member);
+    }
+
+    @Benchmark
+    public boolean nonMember() {
+        return check(nonMember);
+    }
+
+    private boolean check(String input) {
+        return earley != null ? earley.recognize(compiled.tokenize(input)) : compiled.recognize(input, options);
+    }
+
+}
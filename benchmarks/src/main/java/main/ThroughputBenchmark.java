@@ -0,0 +1,62 @@
+package main;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/* Membership checks per second over a fixed mix of members and non-members, checked one at a time and as a batch */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ThroughputBenchmark {
+
+    /* The number of inputs checked per invocation, which the scores are divided by */
+    static final int INPUTS = 1024;
+
+    @Param({"dyck", "arithmetic", "random"})
+    public String grammar;
+
+    @Param({"8", "32", "128"})
+    public int length;
+
+    private CompiledGrammar compiled;
+
+    private MembershipOptions options;
+
+    private MembershipBatch batch;
+
+    private List<String> inputs;
+
+    @Setup
+    public void setUp() {
+        compiled = GrammarGenerator.compile(grammar);
+        options = new MembershipOptions();
+        batch = new MembershipBatch(compiled, options);
+        InputGenerator generator = new InputGenerator(compiled, length + 2, 11);
+        inputs = new ArrayList<>();
+        for(int i = 0; i < INPUTS; i++) { // every other input is a member
+            int[] member = generator.member(length);
+            inputs.add(generator.toString(i % 2 == 0 ? member : generator.nonMember(member.length)));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public void sequential(Blackhole blackhole) {
+        for(String input : inputs)
+            blackhole.consume(compiled.recognize(input, options));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public boolean[] batch() {
+        return batch.checkAll(inputs);
+    }
+
+}
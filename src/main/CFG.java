@@ -1,227 +1,486 @@
 package main;
 
+import java.io.PrintStream;
 import java.util.*;
 
 public class CFG {
 
-    private char startSymbol;
+    /* The names of every symbol in the CFG, with all productions and sets below referring to symbols by their id in it */
+    private SymbolTable symbolTable;
 
-    /* A list of all terminal symbols */
-    private List<Character> terminals;
+    private int startSymbol;
+
+    /* A set of all terminal symbols, in the order they were added */
+    private Set<Integer> terminals;
 
     /* A HashMap of all non-terminals in the CFG, where the key is each non-terminal's symbol */
-    private HashMap<Character, NonTerminal> nonTerminals;
+    private HashMap<Integer, NonTerminal> nonTerminals;
+
+    /* The compiled form of this CFG used by runCYK, built on first use and discarded whenever the CFG changes */
+    private CompiledGrammar compiled;
+
+    /* The settings used by runCYK */
+    private MembershipOptions options;
+
+    /* Where each production convertToCNF split up came from, so parse trees can be mapped back - null until the CFG is converted */
+    private CNFOrigins cnfOrigins;
+
+    /* Whether the CFG was read in token mode, where input symbols are separated by whitespace instead of being single characters */
+    private boolean tokenMode;
+
+    /* Where getNextUnusedSymbol picks up its search - the index (in A - Z, A1 - Z1, ...) of the last name it gave out, since every name before it was in use when it looked */
+    private int nameCursor;
 
     public CFG() {
-        startSymbol = 'S';
-        terminals = new ArrayList<>();
+        this("S");
+    }
+
+    /* Create an empty CFG whose start symbol has the given name */
+    public CFG(String startName) {
+        symbolTable = new SymbolTable();
+        startSymbol = symbolTable.intern(startName);
+        terminals = new LinkedHashSet<>();
         nonTerminals = new LinkedHashMap<>(); // LinkedHashMap to preserve order for displaying
+        options = new MembershipOptions();
+    }
+
+    /* A deep copy of this CFG, so it can be simplified or converted without changing this one - the copy shares this CFG's options */
+    public CFG copy() {
+        CFG copy = new CFG();
+        copy.symbolTable = new SymbolTable(symbolTable);
+        copy.startSymbol = startSymbol;
+        copy.terminals.addAll(terminals);
+        for(NonTerminal n : nonTerminals.values()) {
+            NonTerminal nonTerminal = new NonTerminal(copy.symbolTable, n.getSymbol(), copy::changed);
+            for(Production p : n.getProductionList())
+                nonTerminal.addProduction(p.getSymbols().clone());
+            copy.nonTerminals.put(n.getSymbol(), nonTerminal);
+        }
+        copy.options = options;
+        copy.cnfOrigins = cnfOrigins; // never changed once a conversion has finished, so it can be shared
+        copy.tokenMode = tokenMode;
+        copy.nameCursor = 0; // the copy's names are checked again from A, since it may be changed apart from this CFG
+        return copy;
     }
 
     /* Add a terminal symbol to the terminals list if it isn't already in there */
+    public void addTerminal(String name) {
+        if(terminals.add(symbolTable.intern(name)))
+            changed();
+    }
+
     public void addTerminal(char symbol) {
-        if(!terminals.contains(symbol))
-            terminals.add(symbol);
+        addTerminal(Character.toString(symbol));
     }
 
-    /* Add a non-terminal with the given symbol to a newly created non-terminals map, with the rest of the non-terminals in the old map to follow (to preserve ordering) */
-    public void replaceStart(char newStartSymbol) {
+    /* Add a non-terminal with the given name to a newly created non-terminals map, with the rest of the non-terminals in the old map to follow (to preserve ordering) */
+    public void replaceStart(String newStartName) {
+        int newStartSymbol = symbolTable.intern(newStartName);
         if(nonTerminals.containsKey(newStartSymbol)) // the desired new start symbol cannot already exist in the map
-            throw new RuntimeException("CFG already contains the symbol: " + newStartSymbol + ".");
-        HashMap<Character, NonTerminal> newMap = new LinkedHashMap<>();
-        NonTerminal nonTerminal = new NonTerminal(newStartSymbol);
+            throw new RuntimeException("CFG already contains the symbol: " + newStartName + ".");
+        HashMap<Integer, NonTerminal> newMap = new LinkedHashMap<>();
+        NonTerminal nonTerminal = new NonTerminal(symbolTable, newStartSymbol, this::changed);
         newMap.put(newStartSymbol, nonTerminal);
         newMap.putAll(nonTerminals);
-        nonTerminal.addProduction(Character.toString(startSymbol)); // add the old start symbol as a production for the new one
+        nonTerminal.addProduction(new int[] {startSymbol}); // add the old start symbol as a production for the new one
         startSymbol = newStartSymbol;
         nonTerminals = newMap;
+        changed();
     }
 
-    /* Add a terminal symbol with the given symbol to the non-terminals map, if it isn't already in there */
-    public NonTerminal addNonTerminal(char symbol) {
+    public void replaceStart(char newStartSymbol) {
+        replaceStart(Character.toString(newStartSymbol));
+    }
+
+    /* Add a non-terminal with the given name to the non-terminals map, if it isn't already in there */
+    public NonTerminal addNonTerminal(String name) {
+        int symbol = symbolTable.intern(name);
         if(nonTerminals.containsKey(symbol))
             return nonTerminals.get(symbol);
-        NonTerminal nonTerminal = new NonTerminal(symbol);
+        NonTerminal nonTerminal = new NonTerminal(symbolTable, symbol, this::changed);
         nonTerminals.put(symbol, nonTerminal);
+        changed();
         return nonTerminal;
     }
 
-    /* Add a terminal symbol with the given symbol to a newly created non-terminals map, with the rest of the non-terminals in the old map to follow (for the purposes of addition while iterating) */
-    public NonTerminal addNonTerminalNewMap(char symbol) {
-        NonTerminal nonTerminal = new NonTerminal(symbol);
-        HashMap<Character, NonTerminal> newMap = new LinkedHashMap<>(nonTerminals);
+    public NonTerminal addNonTerminal(char symbol) {
+        return addNonTerminal(Character.toString(symbol));
+    }
+
+    /* Add a non-terminal with the given name to a newly created non-terminals map, with the rest of the non-terminals in the old map to follow (for the purposes of addition while iterating) */
+    public NonTerminal addNonTerminalNewMap(String name) {
+        int symbol = symbolTable.intern(name);
+        NonTerminal nonTerminal = new NonTerminal(symbolTable, symbol, this::changed);
+        HashMap<Integer, NonTerminal> newMap = new LinkedHashMap<>(nonTerminals);
         newMap.put(symbol, nonTerminal);
         nonTerminals = newMap;
+        changed();
         return nonTerminal;
     }
 
-    // Based off of https://en.wikipedia.org/wiki/CYK_algorithm
+    /* Drop the compiled form after a change (including one to a non-terminal's productions), along with everything the options' cache holds for it */
+    private void changed() {
+        if(compiled != null && options.getCache() != null)
+            options.getCache().invalidate(compiled.getFingerprint());
+        compiled = null;
+    }
+
+    /* Get the compiled form of this CFG, compiling it if it has changed since the last call - the CFG must be in CNF form */
+    public CompiledGrammar compile() {
+        if(compiled == null)
+            compiled = CompiledGrammar.of(symbolTable, startSymbol, nonTerminals.values(), isTokenMode());
+        return compiled;
+    }
+
+    /* Parse the input with the compiled form (the CFG must be in CNF form), recording its parse forest - trees taken from it are mapped back from the helper non-terminals convertToCNF added to the productions they were split from */
+    public ParseForest parse(String input) {
+        CompiledGrammar grammar = compile();
+        return new ParseForest(grammar, grammar.tokenize(input), options, cnfOrigins);
+    }
+
     public boolean runCYK(String input) {
-        List<NonTerminal> nTList = new ArrayList<>(nonTerminals.values()); // an index-able list of all non-terminals used for referencing in the table below
-        List<Production> nonTerminalProductions = new ArrayList<>(); // a list of all productions containing only non-terminal symbols
-        for(NonTerminal n : nonTerminals.values())
-            for(Production p : n.getProductionList())
-                if(p.getExpression().length() != 1) // productions containing only non-terminal symbols (should be any productions with a length not equal to 1 because of CNF form)
-                    nonTerminalProductions.add(p);
-        boolean[][][] table = new boolean[input.length()][input.length()][nTList.size()]; // the boolean array used to keep track of substring matches, where the third dimension refers to the indexes of the non-terminals in the list above
-        for(int s = 0; s < input.length(); s++)
-            for(NonTerminal n : nonTerminals.values())
-                for(Production p : n.getProductionList())
-                    if(p.getExpression().equals(Character.toString(input.charAt(s)))) // matching productions for substrings of length 1, which is the character at string[s]
-                        table[0][s][nTList.indexOf(p.getNonTerminal())] = true; // bottom row of table
-        for(int l = 2; l <= input.length(); l++)
-            for(int s = 0; s < input.length() - l + 1; s++)
-                for(int p = 1; p <= l - 1; p++)
-                    for (Production production : nonTerminalProductions) {
-                        int b = nTList.indexOf(nonTerminals.get(production.getExpression().charAt(0))); // index of the first non-terminal in each production
-                        int c = nTList.indexOf(nonTerminals.get(production.getExpression().charAt(1))); // index of the second non-terminal in each production
-                        if (table[p - 1][s][b] && table[l - p - 1][s + p][c]) // if both current substring references in bottom rows of the table are true
-                            table[l - 1][s][nTList.indexOf(production.getNonTerminal())] = true;
-                    }
-        return table[input.length() - 1][0][0]; // true if the top of the 'CYK triangle' is true (if the top contains the start symbol)
+        return compile().recognize(input, options);
     }
 
-    public void convertToCNF(char newStartSymbol) {
+    public boolean runCYK(String input, MembershipOptions options) {
+        return compile().recognize(input, options);
+    }
+
+    public MembershipOptions getOptions() {
+        return options;
+    }
+
+    public void convertToCNF(String newStartName) {
+        convertToCNF(newStartName, System.out);
+    }
+
+    /* Convert to CNF form, printing the simplified grammar to the given stream unless it's null */
+    public void convertToCNF(String newStartName, PrintStream log) {
+        changed();
+        MembershipListener listener = options.getListener();
+        long start = listener == null ? 0 : System.nanoTime();
         boolean newStart = false;
         for (NonTerminal nonterminal : nonTerminals.values())
             for (Production production : nonterminal.getProductionList())
-                if (production.getExpression().contains(Character.toString(startSymbol))) { // determine if any production contains the start symbol so that we know to create a new start
+                if (production.contains(startSymbol)) { // determine if any production contains the start symbol so that we know to create a new start
                     newStart = true;
                     break;
                 }
 
-        if (newStart) // if needed, replace the current start with a new one
-            replaceStart(newStartSymbol);
+        CNFOrigins origins = new CNFOrigins(this); // before anything is changed, so trees can be mapped back to the productions as written
+        if (newStart) { // if needed, replace the current start with a new one
+            origins.addHelper(newStartName);
+            replaceStart(newStartName);
+        }
 
-        simplify();
+        origins.track(this);
+        simplify(origins);
+        long simplified = listener == null ? 0 : System.nanoTime();
 
-        System.out.println("Simplified:\n" + toString());
+        if(log != null)
+            log.println("Simplified:\n" + toString());
 
-        HashMap<String, Character> standAlones = new HashMap<>(); // used to avoid making duplicate standalone productions when separating productions that don't satisfy CNF form (with the key being the production expression itself so we can quickly lookup if one already exists)
+        HashMap<Long, Integer> standAlones = new HashMap<>(); // used to avoid making duplicate standalone productions when separating productions that don't satisfy CNF form (with the key being the production's symbols packed into a long so we can quickly lookup if one already exists)
         for (NonTerminal n : nonTerminals.values())
-            if(n.getProductionList().size() == 1 && n.getProductionList().get(0).satisfiesCNF()) // to be a standalone the non-terminal must have only 1 production, and that 1 production must be in CNF form
-                standAlones.put(n.getProductionList().get(0).getExpression(), n.getSymbol());
+            if(n.getProductionList().size() == 1 && satisfiesCNF(n.getProductionList().get(0))) // to be a standalone the non-terminal must have only 1 production, and that 1 production must be in CNF form
+                standAlones.put(standAloneKey(n.getProductionList().get(0).getSymbols()), n.getSymbol());
+
+        for(NonTerminal n : new ArrayList<>(nonTerminals.values())) // a copy, since standalones are added to the map along the way
+            for(Production p : new ArrayList<>(n.getProductionList())) { // go through each production and convert it to CNF form if it isn't already
+                if(satisfiesCNF(p))
+                    continue;
+                int[] original = p.getSymbols(), symbols = original.clone();
+                for(int i = 0; i < symbols.length; i++) // turn all terminals into non-terminals
+                    if(terminals.contains(symbols[i])) // check if the symbol is a terminal
+                        symbols[i] = getStandAlone(standAlones, new int[] {symbols[i]});
+                for(int i = 0; i < symbols.length - 2; i++) // only productions with a length of at least 3 that contain only non-terminals should remain at this point, so fold them from the left one pair at a time
+                    symbols[i + 1] = getStandAlone(standAlones, new int[] {symbols[i], symbols[i + 1]});
+                p.setSymbols(symbols.length > 2 ? Arrays.copyOfRange(symbols, symbols.length - 2, symbols.length) : symbols);
+                origins.add(n.getName(), symbolTable.getName(symbols[symbols.length - 2]), symbolTable.getName(symbols[symbols.length - 1]), CNFOrigins.names(symbolTable, original));
+            }
+        cnfOrigins = origins;
+        if(listener != null)
+            listener.grammarConverted(this, simplified - start, System.nanoTime() - simplified);
+    }
+
+    public void convertToCNF(char newStartSymbol) {
+        convertToCNF(Character.toString(newStartSymbol));
+    }
+
+    /* Check if a production is in CNF form - a single terminal, or two non-terminals */
+    private boolean satisfiesCNF(Production production) {
+        int[] symbols = production.getSymbols();
+        if(symbols.length == 1)
+            return terminals.contains(symbols[0]);
+        return symbols.length == 2 && nonTerminals.containsKey(symbols[0]) && nonTerminals.containsKey(symbols[1]);
+    }
+
+    /* Pack the symbols of a one or two symbol expression into a long */
+    private static long standAloneKey(int[] symbols) {
+        return symbols.length == 1 ? symbols[0] : ((long) (symbols[0] + 1) << 32) | symbols[1];
+    }
+
+    /* Get the symbol of the standalone non-terminal whose only production is the given expression, creating it if there isn't one yet */
+    private int getStandAlone(HashMap<Long, Integer> standAlones, int[] symbols) {
+        Integer symbol = standAlones.get(standAloneKey(symbols));
+        if(symbol == null) { // create a new non-terminal with a single production containing the expression and add it to standalones
+            NonTerminal nonTerminal = addNonTerminal(getNextUnusedSymbol()); // the conversion loop goes through a copy of the map, so it can be added to in place
+            nonTerminal.addProduction(symbols);
+            symbol = nonTerminal.getSymbol();
+            standAlones.put(standAloneKey(symbols), symbol);
+        }
+        return symbol;
+    }
+
+    /* Find the most specific class this CFG falls into, checking the cheapest engines first - this has to be done before convertToCNF, which turns every grammar into a general one */
+    public GrammarClass classify() {
+        if(isLinear(true))
+            return GrammarClass.RIGHT_LINEAR;
+        if(isLinear(false))
+            return GrammarClass.LEFT_LINEAR;
+        if(LL1Recognizer.isLL1(this))
+            return GrammarClass.LL1;
+        return GrammarClass.GENERAL;
+    }
 
+    /* Check if every production has at most one non-terminal, which is its last symbol (right) or its first symbol (left) */
+    public boolean isLinear(boolean right) {
         for(NonTerminal n : nonTerminals.values())
-            for(Production p : n.getProductionList()) { // go through each production and convert it to CNF form if it isn't already
-                if(p.satisfiesCNF())
+            for(Production p : n.getProductionList()) {
+                int[] symbols = p.getSymbols();
+                for(int i = 0; i < symbols.length; i++)
+                    if(!terminals.contains(symbols[i]) && i != (right ? symbols.length - 1 : 0))
+                        return false;
+            }
+        return true;
+    }
+
+    /* Remove lambda, unit and useless productions - each step is a worklist pass over an index of the productions each symbol occurs in, so it runs in time linear in the grammar's size (apart from the productions it has to add) */
+    public void simplify() {
+        simplify(null);
+    }
+
+    /* Same as above, recording how each production is derived in the origins unless they're null */
+    private void simplify(CNFOrigins origins) {
+        changed();
+        removeLambdaProductions(origins);
+        removeUnitProductions(origins);
+        removeUselessProductions();
+    }
+
+    /* Get, for every non-terminal symbol, the productions it occurs in - once per occurrence, so a production appears as many times as the symbol does in it */
+    private Map<Integer, List<Production>> indexOccurrences() {
+        Map<Integer, List<Production>> occurrences = new HashMap<>();
+        for(NonTerminal n : nonTerminals.values())
+            for(Production p : n.getProductionList())
+                for(int symbol : p.getSymbols())
+                    if(nonTerminals.containsKey(symbol))
+                        occurrences.computeIfAbsent(symbol, k -> new ArrayList<>()).add(p);
+        return occurrences;
+    }
+
+    /* Get the set of nullable non-terminals, i.e. those deriving lambda - a production makes its non-terminal nullable once every symbol in it is nullable */
+    private Set<Integer> getNullables(Map<Integer, List<Production>> occurrences) {
+        Map<Production, Integer> remaining = new IdentityHashMap<>(); // the number of symbols in each production that aren't known to be nullable yet
+        Set<Integer> nullables = new HashSet<>();
+        Deque<Integer> work = new ArrayDeque<>();
+        for(NonTerminal n : nonTerminals.values())
+            for(Production p : n.getProductionList()) {
+                remaining.put(p, p.length());
+                if(p.length() == 0 && nullables.add(n.getSymbol()))
+                    work.add(n.getSymbol());
+            }
+        while(!work.isEmpty())
+            for(Production p : occurrences.getOrDefault(work.poll(), Collections.emptyList()))
+                if(remaining.merge(p, -1, Integer::sum) == 0 && nullables.add(p.getNonTerminal().getSymbol()))
+                    work.add(p.getNonTerminal().getSymbol());
+        return nullables;
+    }
+
+    /* Remove every lambda production, adding a copy of each production with every combination of its nullable symbols left out - productions with more than one nullable symbol are split into pairs first,
+       so each production has at most 3 copies rather than 2 to the power of its nullable symbols */
+    private void removeLambdaProductions(CNFOrigins origins) {
+        Set<Integer> nullables = getNullables(indexOccurrences());
+        HashMap<Long, Integer> pairs = new HashMap<>(); // the helper non-terminal made for each pair of symbols, so a pair shared by several productions only gets one
+        for(NonTerminal n : new ArrayList<>(nonTerminals.values())) // a copy, since helpers are added to the map along the way
+            for(Production p : new ArrayList<>(n.getProductionList())) {
+                int[] symbols = p.getSymbols().clone();
+                if(symbols.length < 3 || Arrays.stream(symbols).filter(nullables::contains).count() < 2)
                     continue;
-                for(int i = 0; i < p.getExpression().length(); i++) { // turn all terminals into non-terminals
-                    char c = p.getExpression().charAt(i);
-                    if(terminals.contains(c)) // check if the character is a terminal
-                        if(standAlones.containsKey(Character.toString(c))) // check if there's a standalone with the current character already
-                            p.replaceChar(i, standAlones.get(Character.toString(c))); // if so, we can just replace the character with the character to the non-terminal symbol the standalone belongs to
-                        else { // otherwise create a new non-terminal with a single production containing the current character, replace the current character with the one of the newly created non-terminal, and add it to standalones
-                            char newSymbol = getNextUnusedSymbol();
-                            NonTerminal nonTerminal = addNonTerminalNewMap(newSymbol);
-                            nonTerminal.addProduction(Character.toString(c));
-                            p.replaceChar(i, newSymbol);
-                            standAlones.put(Character.toString(c), newSymbol);
+                for(int i = 0; i < symbols.length - 2; i++) { // fold from the left one pair at a time, the same way convertToCNF does
+                    Integer helper = pairs.get(standAloneKey(new int[] {symbols[i], symbols[i + 1]}));
+                    if(helper == null) {
+                        NonTerminal nonTerminal = addNonTerminal(getNextUnusedSymbol());
+                        nonTerminal.addProduction(new int[] {symbols[i], symbols[i + 1]});
+                        helper = nonTerminal.getSymbol();
+                        pairs.put(standAloneKey(new int[] {symbols[i], symbols[i + 1]}), helper);
+                        if(origins != null)
+                            origins.addPair(nonTerminal.getName(), symbolTable.getName(symbols[i]), symbolTable.getName(symbols[i + 1]));
+                        if(nullables.contains(symbols[i]) && nullables.contains(symbols[i + 1]))
+                            nullables.add(helper);
                     }
+                    symbols[i + 1] = helper;
                 }
-                while(!p.satisfiesCNF()) { // only productions with a length of at least 3 that contain only non-terminals should remain at this point
-                    char c1 = p.getExpression().charAt(0), c2 = p.getExpression().charAt(1), c3 = p.getExpression().charAt(2); // the first three characters in the production
-                    String chosenExpression = standAlones.containsKey("" + c1 + c2) ? "" + c1 + c2 : standAlones.containsKey("" + c1 + c3) ? "" + c1 + c3 :
-                            standAlones.containsKey("" + c2 + c3) ? "" + c2 + c3 : "" + c1 + c2; // check all combinations for pre-existing standalones to ensure we get the most simplified form
-                    if(standAlones.containsKey(chosenExpression)) // if there's already a standalone with the chosen expression, replace the chosen expression with the non-terminal symbol the standalone belongs to
-                        p.replaceFirstPairWithChar(chosenExpression, standAlones.get(chosenExpression));
-                    else { // otherwise create a new non-terminal with a single production containing the chosen expression, replace the current chosen expression with the one of the newly created non-terminal, and add it to standalones
-                        char newSymbol = getNextUnusedSymbol();
-                        NonTerminal nonTerminal = addNonTerminalNewMap(newSymbol);
-                        nonTerminal.addProduction(chosenExpression);
-                        p.replaceFirstPairWithChar(chosenExpression, newSymbol);
-                        standAlones.put(chosenExpression, newSymbol);
+                if(origins != null)
+                    origins.fold(n.getName(), CNFOrigins.names(symbolTable, p.getSymbols()), symbolTable.getName(symbols[symbols.length - 2]));
+                p.setSymbols(Arrays.copyOfRange(symbols, symbols.length - 2, symbols.length));
+            }
+        Map<List<String>, List<CNFOrigins.Item>> templates = origins == null ? null : origins.beginStep();
+        for(NonTerminal n : nonTerminals.values()) {
+            List<int[]> variants = new ArrayList<>();
+            for(Production p : n.getProductionList()) {
+                int[] symbols = p.getSymbols();
+                List<int[]> expansions = new ArrayList<>(); // the indexes of the symbols kept in every expression the production becomes, built one symbol at a time
+                expansions.add(new int[0]);
+                for(int index = 0; index < symbols.length; index++) {
+                    int size = expansions.size();
+                    for(int i = 0; i < size; i++) {
+                        int[] kept = Arrays.copyOf(expansions.get(i), expansions.get(i).length + 1);
+                        kept[kept.length - 1] = index;
+                        if(nullables.contains(symbols[index])) // one copy with the nullable symbol left out and one with it kept
+                            expansions.add(kept);
+                        else
+                            expansions.set(i, kept);
                     }
                 }
+                for(int[] kept : expansions)
+                    if(kept.length > 0) {
+                        variants.add(Arrays.stream(kept).map(index -> symbols[index]).toArray());
+                        if(origins != null)
+                            origins.addVariant(templates, n.getName(), CNFOrigins.names(symbolTable, symbols), kept);
+                    }
             }
-
+            n.removeProductionsIf(p -> true);
+            variants.forEach(n::addProduction); // addProduction method takes care of any duplicates
+        }
+        if(origins != null)
+            origins.endStep(templates);
     }
 
-    public void simplify() {
-        /* Lambda removal */
-        List<NonTerminal> nullables = getNonTerminalsContaining(Main.LAMBDA); // the list of all non-terminals that lead to a lambda
-        for(NonTerminal n : nullables)
-            for(Production production : n.getProductionList())
-                if(production.getExpression().contains(Character.toString(Main.LAMBDA)))
-                    n.removeProduction(production);
-        while(true) { // find all nonterminal indirect "paths" to lambda productions
-            List<NonTerminal> newNullables = new ArrayList<>(); // the list of newly found nullables
-            for(NonTerminal nonTerminal : nullables) {
-                List<NonTerminal> oneLevelUp = getNonTerminalsContaining(nonTerminal.getSymbol());
-                for(NonTerminal n : oneLevelUp)
-                    if(!newNullables.contains(n) && !nullables.contains(n) && n.getSymbol() != 'S') // stop at original start symbol
-                        newNullables.add(n);
-            }
-            if(newNullables.size() == 0) // if no new nullables have been found, exit the loop
-                break;
-            nullables.addAll(newNullables); // add the new nullables to the list of nullables
+    /* Replace every unit production A -> B with the non-unit productions of B - non-terminals in the same cycle of unit productions end up with the same productions, so each strongly connected component of the unit graph is only expanded once */
+    private void removeUnitProductions(CNFOrigins origins) {
+        if(origins != null) // before the unit productions are gone, since the templates go through them
+            origins.replaceUnits(this);
+        List<NonTerminal> nodes = new ArrayList<>(nonTerminals.values());
+        Map<Integer, Integer> indexes = new HashMap<>();
+        for(NonTerminal n : nodes)
+            indexes.put(n.getSymbol(), indexes.size());
+        List<List<Integer>> edges = new ArrayList<>(); // the non-terminals each non-terminal has a unit production to
+        for(NonTerminal n : nodes) {
+            List<Integer> targets = new ArrayList<>();
+            for(Production p : n.getProductionList())
+                if(isUnitProduction(p))
+                    targets.add(indexes.get(p.getSymbols()[0]));
+            edges.add(targets);
         }
-        for(NonTerminal n : nullables) { // for each nullable, find every production that contains the non-terminal's symbol
-            List<Production> relevantProductions = getProductionsContaining(n.getSymbol());
-            for(Production production : relevantProductions) {
-                if(production.getExpression().length() == 1) // ignore unit productions
+
+        int[] component = new int[nodes.size()], lowLinks = new int[nodes.size()], order = new int[nodes.size()];
+        Arrays.fill(order, -1);
+        Deque<Integer> stack = new ArrayDeque<>(); // Tarjan's stack of nodes that haven't been assigned a component yet
+        boolean[] onStack = new boolean[nodes.size()];
+        List<List<int[]>> componentExpressions = new ArrayList<>(); // the non-unit expressions of each component, in the order Tarjan's algorithm finishes them (successors first)
+        int visited = 0;
+        for(int root = 0; root < nodes.size(); root++) {
+            if(order[root] >= 0)
+                continue;
+            Deque<int[]> calls = new ArrayDeque<>(); // {node, index of the next edge to follow}, in place of recursion
+            calls.push(new int[] {root, 0});
+            order[root] = lowLinks[root] = visited++;
+            stack.push(root);
+            onStack[root] = true;
+            while(!calls.isEmpty()) {
+                int[] call = calls.peek();
+                int v = call[0];
+                if(call[1] < edges.get(v).size()) {
+                    int w = edges.get(v).get(call[1]++);
+                    if(order[w] < 0) {
+                        order[w] = lowLinks[w] = visited++;
+                        stack.push(w);
+                        onStack[w] = true;
+                        calls.push(new int[] {w, 0});
+                    } else if(onStack[w])
+                        lowLinks[v] = Math.min(lowLinks[v], order[w]);
                     continue;
-                for(int i = 0; i < production.getExpression().length(); i++)
-                    if(production.getExpression().charAt(i) == n.getSymbol()) // 1 character at a time because there could be more than one occurrence of the nullable's character, which would require its own new producution
-                        production.getNonTerminal().addProduction(production.getExpression().substring(0, i) + production.getExpression().substring(i + 1)); // new production with the offending nullable character having been extracted
+                }
+                calls.pop();
+                if(!calls.isEmpty())
+                    lowLinks[calls.peek()[0]] = Math.min(lowLinks[calls.peek()[0]], lowLinks[v]);
+                if(lowLinks[v] != order[v])
+                    continue;
+                List<int[]> expressions = new ArrayList<>(); // v is the root of a component, so pop it off the stack and gather its expressions
+                List<Integer> members = new ArrayList<>();
+                int w;
+                do {
+                    w = stack.pop();
+                    onStack[w] = false;
+                    component[w] = componentExpressions.size();
+                    members.add(w);
+                } while(w != v);
+                for(int member : members)
+                    for(Production p : nodes.get(member).getProductionList())
+                        if(!isUnitProduction(p))
+                            expressions.add(p.getSymbols());
+                Set<Integer> reached = new HashSet<>(); // each successor component is only added once, even when several members point into it
+                for(int member : members)
+                    for(int target : edges.get(member))
+                        if(component[target] != componentExpressions.size() && reached.add(component[target])) // every other component reached has already been finished
+                            expressions.addAll(componentExpressions.get(component[target]));
+                componentExpressions.add(expressions);
             }
         }
 
-        /* Unit production removal */
-        List<Production> unitProductions = getUnitProductions(); // the list of all unit productions
-        while(unitProductions.size() > 0) {
-            for(Production unitProduction : unitProductions) {
-                NonTerminal unitProductionSymbol = nonTerminals.get(unitProduction.getExpression().charAt(0)); // the non-terminal the character the unit production refers to
-                for(Production production : unitProductionSymbol.getProductionList()) // add all productions from the unit production's non-terminal
-                   unitProduction.getNonTerminal().addProduction(production.getExpression()); // addProduction method takes care of any duplicates
-                unitProduction.getNonTerminal().removeProduction(unitProduction); // remove the current unit production from the list
-            }
-            unitProductions = getUnitProductions(); // update list each time because unit productions might be moved around a few times before they're completely gone
+        for(int i = 0; i < nodes.size(); i++) {
+            NonTerminal n = nodes.get(i);
+            n.removeProductionsIf(this::isUnitProduction);
+            componentExpressions.get(component[i]).forEach(n::addProduction); // addProduction method takes care of any duplicates
         }
+    }
+
+    /* Check if a production is a unit production (a singular non-terminal symbol) */
+    private boolean isUnitProduction(Production production) {
+        return production.length() == 1 && nonTerminals.containsKey(production.getSymbols()[0]);
+    }
 
-        /* Useless production removal */
-        Set<Character> containsTerminal = getTerminatingNonTerminals(); // the list of all non-terminals that terminate
+    /* Remove every non-terminal that doesn't terminate or can't be reached from the start symbol, along with every production using one */
+    private void removeUselessProductions() {
+        Map<Production, Integer> remaining = new IdentityHashMap<>(); // the number of non-terminal symbols in each production that aren't known to terminate yet
+        Set<Integer> containsTerminal = getTerminatingNonTerminals(remaining); // the set of all non-terminals that terminate
         if(!containsTerminal.contains(startSymbol)) // the start symbol must terminate
-            throw new RuntimeException("This grammar does not terminate on start symbol: " + startSymbol + ".");
-        Iterator<Map.Entry<Character, NonTerminal>> iter = nonTerminals.entrySet().iterator();
-        while(iter.hasNext()) { // iterate through the non-terminals map
-            Map.Entry<Character, NonTerminal> entry = iter.next();
-            if (containsTerminal.contains(entry.getValue().getSymbol())) // no need to do anything if the non-terminal terminates
-                continue;
-            List<Production> toBeRemoved = getProductionsContaining(entry.getValue().getSymbol()); // the list of all productions that contain the non-terminal symbol
-            toBeRemoved.forEach(p -> p.getNonTerminal().removeProduction(p)); // remove all occurrences of productions that contain this non-terminal's symbol
-            iter.remove();
-        }
-        Queue<Character> next = new LinkedList<>(); // the queue used for looping, filled with unvisited non-terminals
-        Set<Character> visited = new HashSet<>(); // the set of non-terminal characters that can be reached from the start symbol
+            throw new RuntimeException("This grammar does not terminate on start symbol: " + symbolTable.getName(startSymbol) + ".");
+        nonTerminals.values().removeIf(n -> !containsTerminal.contains(n.getSymbol()));
+        for(NonTerminal n : nonTerminals.values())
+            n.removeProductionsIf(p -> remaining.get(p) > 0); // productions using a non-terminal that doesn't terminate
+
+        Deque<Integer> next = new ArrayDeque<>(); // the queue used for looping, filled with unvisited non-terminals
+        Set<Integer> visited = new HashSet<>(); // the set of non-terminal symbols that can be reached from the start symbol
         next.add(startSymbol);
+        visited.add(startSymbol);
         while(next.size() > 0) { // determine which non-terminals can be reached from the start symbol
             NonTerminal n = nonTerminals.get(next.poll());
             for(Production p : n.getProductionList())
-                for(char c : p.getExpression().toCharArray())
-                    if(nonTerminals.containsKey(c) && !visited.contains(c) && !next.contains(c)) // add all new non-terminal symbols that haven't been visited yet to the queue
-                        next.add(c);
-            visited.add(n.getSymbol()); // add the current non-terminal's symbol to visited since it was reachable through this iteration
+                for(int symbol : p.getSymbols())
+                    if(nonTerminals.containsKey(symbol) && visited.add(symbol)) // add all new non-terminal symbols that haven't been visited yet to the queue
+                        next.add(symbol);
         }
-        nonTerminals.keySet().removeIf(character -> !visited.contains(character)); // remove all non-terminals that couldn't be reached from the start symbol
+        nonTerminals.keySet().removeIf(symbol -> !visited.contains(symbol)); // remove all non-terminals that couldn't be reached from the start symbol
     }
 
     /* Get the list of non-terminals that contain a production that contain the given symbol */
-    public List<NonTerminal> getNonTerminalsContaining(char symbol) {
+    public List<NonTerminal> getNonTerminalsContaining(int symbol) {
         List<NonTerminal> nTs = new ArrayList<>();
         for(NonTerminal nonTerminal : nonTerminals.values())
             for(Production production : nonTerminal.getProductionList())
-                if(production.getExpression().contains(Character.toString(symbol)))
+                if(production.contains(symbol))
                     nTs.add(nonTerminal);
         return nTs;
     }
 
     /* Get the list of productions that contain the given symbol */
-    public List<Production> getProductionsContaining(char symbol) {
+    public List<Production> getProductionsContaining(int symbol) {
         List<Production> productions = new ArrayList<>();
         for(NonTerminal nonTerminal : nonTerminals.values())
             for(Production production : nonTerminal.getProductionList())
-                if(production.getExpression().contains(Character.toString(symbol)))
+                if(production.contains(symbol))
                     productions.add(production);
         return productions;
     }
@@ -231,54 +490,90 @@ public class CFG {
         List<Production> unitProductions = new ArrayList<>();
         for(NonTerminal n : nonTerminals.values())
             for(Production p : n.getProductionList())
-                if(p.getExpression().length() == 1 && !terminals.contains(p.getExpression().charAt(0)))
+                if(isUnitProduction(p))
                     unitProductions.add(p);
         return unitProductions;
     }
 
     /* Get the set of non-terminal symbols that terminate */
-    public Set<Character> getTerminatingNonTerminals() {
-        Set<Character> terminatingNonTerminals = new HashSet<>();
-        while(true) { // find all non-terminals that terminate directly and use those that have been found so far to find those that indirectly terminate until there are no new results
-            int before = terminatingNonTerminals.size(); // the number of characters currently in the set before attempting to add more - used for terminating the loop if unchanged
-            for (NonTerminal n : nonTerminals.values())
-                for (Production p : n.getProductionList())
-                    if (p.getExpression().contains(Character.toString(Main.LAMBDA)) || p.getExpression().matches("[a-z]*")) // non-terminals that directly terminate (contains lambda or a production of all terminals)
-                        terminatingNonTerminals.add(n.getSymbol()); // add the production's non-terminal character to the current set
-                    else {
-                        boolean terminates = true;
-                        for(char c : p.getExpression().toCharArray())
-                            if (nonTerminals.containsKey(c) && !terminatingNonTerminals.contains(c)) { // at this point the non-terminal must contain at least one production that's an expression that fully terminates
-                                terminates = false; // if not, the non-terminal doesn't terminate with the current characters in the terminating set
-                                break;
-                            }
-                        if(terminates) // if the non-terminal does terminate we add it to the set of terminating characters and run the loop again with the new set
-                            terminatingNonTerminals.add(n.getSymbol());
-                    }
-            if(before == terminatingNonTerminals.size()) // if there was no change there's no reason to run the loop anymore
-                break;
-        }
+    public Set<Integer> getTerminatingNonTerminals() {
+        return getTerminatingNonTerminals(new IdentityHashMap<>());
+    }
+
+    /* Same as above, also filling in, for each production, the number of its symbols that don't terminate (0 for a production that terminates) */
+    private Set<Integer> getTerminatingNonTerminals(Map<Production, Integer> remaining) {
+        Map<Integer, List<Production>> occurrences = indexOccurrences();
+        Set<Integer> terminatingNonTerminals = new HashSet<>();
+        Deque<Integer> work = new ArrayDeque<>();
+        for(NonTerminal n : nonTerminals.values())
+            for(Production p : n.getProductionList()) {
+                int count = 0;
+                for(int symbol : p.getSymbols())
+                    if(!terminals.contains(symbol)) // a symbol that isn't a terminal has to be a non-terminal that terminates
+                        count++;
+                remaining.put(p, count);
+                if(count == 0 && terminatingNonTerminals.add(n.getSymbol())) // non-terminals that directly terminate (lambda or a production of all terminals)
+                    work.add(n.getSymbol());
+            }
+        while(!work.isEmpty()) // each newly terminating non-terminal brings every production it occurs in one symbol closer to terminating
+            for(Production p : occurrences.getOrDefault(work.poll(), Collections.emptyList()))
+                if(remaining.merge(p, -1, Integer::sum) == 0 && terminatingNonTerminals.add(p.getNonTerminal().getSymbol()))
+                    work.add(p.getNonTerminal().getSymbol());
         return terminatingNonTerminals;
     }
 
-    /* Find the first unused character from A - Z */
-    public char getNextUnusedSymbol() {
-        char c = 'A';
-        while(nonTerminals.containsKey(c))
-            c++;
-        if(c > 'Z') // currently only supports 26 non-terminals
-            throw new RuntimeException("No available non-terminal characters left.");
-        return c;
+    /* Find the next unused name from A - Z, then from A1 - Z1, A2 - Z2 and so on, carrying on from the last one given out - so helpers added one after another cost a lookup each rather than a search from A.
+       The name isn't taken until it's added, so calling this again before then gives the same name */
+    public String getNextUnusedSymbol() {
+        for(; ; nameCursor++) {
+            String name = nameCursor < 26 ? Character.toString((char) ('A' + nameCursor)) : (char) ('A' + nameCursor % 26) + Integer.toString(nameCursor / 26);
+            int symbol = symbolTable.getId(name);
+            if(symbol < 0 || (!nonTerminals.containsKey(symbol) && !terminals.contains(symbol)))
+                return name;
+        }
+    }
+
+    public int getStartSymbol() {
+        return startSymbol;
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    public boolean isTerminal(int symbol) {
+        return terminals.contains(symbol);
+    }
+
+    /* Whether inputs are read as whitespace separated tokens - true once set for a grammar read in token mode, or if any terminal's name is longer than one character. Otherwise every character is a symbol, and whitespace is just a character no terminal matches */
+    public boolean isTokenMode() {
+        if(tokenMode)
+            return true;
+        for(int symbol : terminals)
+            if(symbolTable.getName(symbol).length() != 1)
+                return true;
+        return false;
+    }
+
+    public void setTokenMode(boolean tokenMode) {
+        if(this.tokenMode != tokenMode) {
+            this.tokenMode = tokenMode;
+            changed();
+        }
+    }
+
+    public Collection<NonTerminal> getNonTerminals() {
+        return nonTerminals.values();
     }
 
     @SuppressWarnings("unused")
-    public char[] getSymbols() {
-        char[] symbols = new char[terminals.size() + nonTerminals.size()];
+    public int[] getSymbols() {
+        int[] symbols = new int[terminals.size() + nonTerminals.size()];
         int count = 0;
-        for(char c : terminals)
-            symbols[count++] = c;
-        for(char c : nonTerminals.keySet())
-            symbols[count++] = c;
+        for(int symbol : terminals)
+            symbols[count++] = symbol;
+        for(int symbol : nonTerminals.keySet())
+            symbols[count++] = symbol;
         return symbols;
     }
 
@@ -286,7 +581,7 @@ public class CFG {
     public String toString() {
         StringBuilder result = new StringBuilder();
         for(NonTerminal nonTerminal : nonTerminals.values())
-            result.append(nonTerminal.getSymbol()).append(" ").append(Main.ARROW).append(" ").append(nonTerminal.productionsToString()).append("\n");
+            result.append(nonTerminal.getName()).append(" ").append(Main.ARROW).append(" ").append(nonTerminal.productionsToString()).append("\n");
         return result.toString();
     }
 
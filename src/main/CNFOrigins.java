@@ -0,0 +1,407 @@
+package main;
+
+import java.util.*;
+
+/* Records how each production of a grammar being converted to CNF form derives its symbols in the grammar as it was written, so a tree over the CNF form can be mapped back to one over the original productions.
+   Every production carries a template - the children its head's node has in the original grammar, with a hole for each of the production's symbols - which each step of the conversion rewrites along with the production:
+   leaving out a nullable symbol puts a lambda derivation in its hole, and replacing a unit production puts the node of the non-terminal it went through in its hole. The helper non-terminals added along the way
+   (and the new start symbol) have no node of their own, so their children are put straight into the node above them. Lambda derivations of helpers and chains of unit productions are only spelled out as trees are restored,
+   so the templates stay about as large as the grammar however long the productions and chains are */
+class CNFOrigins {
+
+    /* The template of each production, keyed by its head followed by its symbols */
+    private Map<List<String>, List<Item>> templates;
+
+    /* For each CNF production convertToCNF split a longer one into, as its head, left and right names, the production it was split from - its helpers are taken apart rather than mapped back through their own templates */
+    private final Map<List<String>, Split> splits;
+
+    private final Set<String> terminals;
+
+    /* The non-terminals that aren't in the original grammar and so are left out of the trees, with the pair each helper simplify made to split a production stands for */
+    private final Set<String> helpers;
+
+    private final Map<String, String[]> pairs;
+
+    /* For each non-terminal that derives lambda, the production that does so in the fewest steps */
+    private final Map<String, String[]> lambdaProductions;
+
+    /* Snapshot the grammar's terminals and lambda derivations, before it's changed by the conversion */
+    CNFOrigins(CFG source) {
+        templates = new HashMap<>();
+        splits = new HashMap<>();
+        terminals = new HashSet<>();
+        helpers = new HashSet<>();
+        pairs = new HashMap<>();
+        Map<String, List<String[]>> productions = new HashMap<>();
+        SymbolTable symbolTable = source.getSymbolTable();
+        for(NonTerminal n : source.getNonTerminals()) {
+            List<String[]> expressions = new ArrayList<>();
+            for(Production p : n.getProductionList()) {
+                String[] names = names(symbolTable, p.getSymbols());
+                for(int i = 0; i < names.length; i++)
+                    if(source.isTerminal(p.getSymbols()[i]))
+                        terminals.add(names[i]);
+                expressions.add(names);
+            }
+            productions.put(n.getName(), expressions);
+        }
+        lambdaProductions = new HashMap<>();
+        for(boolean changed = true; changed; ) { // in rounds, so each non-terminal gets a production whose lambda derivation is as shallow as possible
+            changed = false;
+            Map<String, String[]> round = new HashMap<>();
+            for(Map.Entry<String, List<String[]>> entry : productions.entrySet())
+                if(!lambdaProductions.containsKey(entry.getKey()))
+                    for(String[] expression : entry.getValue())
+                        if(Arrays.stream(expression).allMatch(lambdaProductions::containsKey)) {
+                            round.put(entry.getKey(), expression);
+                            changed = true;
+                            break;
+                        }
+            lambdaProductions.putAll(round);
+        }
+    }
+
+    /* Record that the non-terminal was added by the conversion, so it's left out of the trees */
+    void addHelper(String name) {
+        helpers.add(name);
+    }
+
+    /* Give every production of the grammar, as it is when simplify starts, the template that derives each of its symbols as it is */
+    void track(CFG cfg) {
+        templates = new HashMap<>();
+        for(NonTerminal n : cfg.getNonTerminals())
+            for(Production p : n.getProductionList())
+                templates.put(key(n.getName(), names(cfg.getSymbolTable(), p.getSymbols())), holes(p.length()));
+    }
+
+    /* Record the helper simplify made for a pair of symbols, whose only production is the pair itself */
+    void addPair(String helper, String left, String right) {
+        helpers.add(helper);
+        pairs.put(helper, new String[] {left, right});
+        templates.put(key(helper, new String[] {left, right}), holes(2));
+    }
+
+    /* Record that the production head -> symbols was folded into head -> helper last, where the helper stands for every symbol but the last - the production mustn't have been rewritten yet, so its symbols are still its template's children */
+    void fold(String head, String[] symbols, String helper) {
+        List<Item> template = template(head, symbols);
+        if(!template.equals(holes(symbols.length)))
+            throw new IllegalStateException("The production " + head + " " + Main.ARROW + " " + String.join(" ", symbols) + " was rewritten before it was split into pairs.");
+        templates.putIfAbsent(key(head, new String[] {helper, symbols[symbols.length - 1]}), holes(2));
+    }
+
+    /* Start a step that rewrites every production, with the templates of the productions it leaves put into the map returned */
+    Map<List<String>, List<Item>> beginStep() {
+        return new HashMap<>();
+    }
+
+    void endStep(Map<List<String>, List<Item>> next) {
+        templates = next;
+    }
+
+    /* Record the copy of head -> symbols that keeps only the symbols at the given indexes, with a lambda derivation in place of each one left out */
+    void addVariant(Map<List<String>, List<Item>> next, String head, String[] symbols, int[] kept) {
+        List<List<Item>> replacements = new ArrayList<>();
+        for(String symbol : symbols)
+            replacements.add(lambdaItems(symbol));
+        String[] keptSymbols = new String[kept.length];
+        for(int i = 0; i < kept.length; i++) {
+            replacements.set(kept[i], Collections.singletonList(Item.hole(i)));
+            keptSymbols[i] = symbols[kept[i]];
+        }
+        next.putIfAbsent(key(head, keptSymbols), substitute(template(head, symbols), replacements));
+    }
+
+    /* Record the productions each non-terminal is given in place of its unit productions - the non-unit productions of every non-terminal its unit productions reach, through the shortest chain of them.
+       Each non-terminal's non-unit productions are handed back along the unit productions into it, so the chains share their tails and the work is about the size of the productions given out */
+    void replaceUnits(CFG cfg) {
+        SymbolTable symbolTable = cfg.getSymbolTable();
+        Set<String> names = new HashSet<>();
+        for(NonTerminal n : cfg.getNonTerminals())
+            names.add(n.getName());
+        Map<String, Map<String, List<Item>>> units = new HashMap<>(); // for each non-terminal, the template of every unit production to it by its head, with the node of the non-terminal in its hole
+        Map<String, List<String[]>> nonUnits = new LinkedHashMap<>();
+        for(NonTerminal n : cfg.getNonTerminals()) {
+            List<String[]> own = new ArrayList<>();
+            for(Production p : n.getProductionList()) {
+                String[] symbols = names(symbolTable, p.getSymbols());
+                if(p.length() == 1 && names.contains(symbols[0]))
+                    units.computeIfAbsent(symbols[0], k -> new LinkedHashMap<>()).put(n.getName(), substitute(template(n.getName(), symbols), Collections.singletonList(wrap(symbols[0], holes(1)))));
+                else
+                    own.add(symbols);
+            }
+            nonUnits.put(n.getName(), own);
+        }
+        Map<List<String>, List<Item>> next = new HashMap<>();
+        Map<List<String>, Integer> lengths = new HashMap<>(); // the length of the chain each template in next goes through, so the shortest is kept
+        for(Map.Entry<String, List<String[]>> target : nonUnits.entrySet()) {
+            if(target.getValue().isEmpty())
+                continue;
+            Map<String, Chain> chains = new LinkedHashMap<>(); // for each non-terminal that reaches the target, its shortest chain there (null for the target itself)
+            Deque<String> queue = new ArrayDeque<>();
+            chains.put(target.getKey(), null);
+            queue.add(target.getKey());
+            while(!queue.isEmpty()) {
+                String current = queue.poll();
+                for(Map.Entry<String, List<Item>> unit : units.getOrDefault(current, Collections.emptyMap()).entrySet())
+                    if(!chains.containsKey(unit.getKey())) {
+                        chains.put(unit.getKey(), new Chain(unit.getValue(), chains.get(current)));
+                        queue.add(unit.getKey());
+                    }
+            }
+            for(Map.Entry<String, Chain> reached : chains.entrySet()) {
+                Chain chain = reached.getValue();
+                for(String[] symbols : target.getValue()) {
+                    List<String> key = key(reached.getKey(), symbols);
+                    int length = chain == null ? 0 : chain.length;
+                    if(lengths.getOrDefault(key, Integer.MAX_VALUE) > length) {
+                        lengths.put(key, length);
+                        List<Item> template = template(target.getKey(), symbols);
+                        next.put(key, chain == null ? template : Collections.singletonList(Item.via(chain, template)));
+                    }
+                }
+            }
+        }
+        templates = next;
+    }
+
+    /* Record that the CNF production head -> left right was split from head -> original, which had the template recorded for it */
+    void add(String head, String left, String right, String[] original) {
+        splits.putIfAbsent(Arrays.asList(head, left, right), new Split(original, template(head, original)));
+    }
+
+    /* Map a tree over the CNF form back to the original productions */
+    ParseTree restore(ParseTree tree) {
+        if(tree.isTerminal())
+            return tree;
+        List<ParseTree> restored = restoreNode(tree);
+        if(restored.size() != 1)
+            throw new IllegalStateException("The tree's root " + tree.getSymbol() + " doesn't map back to a single node of the original grammar.");
+        return restored.get(0);
+    }
+
+    /* The nodes of the original grammar the node of the CNF form stands for - the node itself over its restored children, or just those children for a helper */
+    private List<ParseTree> restoreNode(ParseTree tree) {
+        List<ParseTree> children = tree.getChildren();
+        List<String> key = new ArrayList<>();
+        key.add(tree.getSymbol());
+        for(ParseTree child : children)
+            key.add(child.getSymbol());
+        Split split = children.size() == 2 ? splits.get(key) : null;
+        List<Item> template;
+        List<List<ParseTree>> parts = new ArrayList<>();
+        if(split != null) {
+            template = split.template;
+            ParseTree[] unfolded = new ParseTree[split.symbols.length]; // the production was folded from the left, so all but the last symbol hang off the left spine of helpers each deriving only the pair below it
+            ParseTree spine = tree;
+            for(int i = unfolded.length - 1; i >= 2; i--) {
+                unfolded[i] = spine.getChildren().get(1);
+                spine = spine.getChildren().get(0);
+            }
+            unfolded[1] = spine.getChildren().get(1);
+            unfolded[0] = spine.getChildren().get(0);
+            for(int i = 0; i < unfolded.length; i++) // a terminal was replaced by a helper deriving only it, so its leaf is under the helper
+                parts.add(terminals.contains(split.symbols[i]) ? unfolded[i].getChildren() : restoreNode(unfolded[i]));
+        } else {
+            template = templates.get(key);
+            if(template == null)
+                throw new IllegalStateException("The production " + String.join(" ", key) + " of the CNF form wasn't derived from the original grammar.");
+            for(ParseTree child : children)
+                parts.add(child.isTerminal() ? Collections.singletonList(child) : restoreNode(child));
+        }
+        List<ParseTree> restored = new ArrayList<>();
+        fill(template, parts, tree.getStart(), restored);
+        return helpers.contains(tree.getSymbol()) ? restored : Collections.singletonList(new ParseTree(tree.getSymbol(), tree.getStart(), tree.getEnd(), restored));
+    }
+
+    /* Build the trees of the template's items from the given position, putting the parts for each hole in it, and return the position after them */
+    private int fill(List<Item> template, List<List<ParseTree>> parts, int position, List<ParseTree> trees) {
+        for(Item item : template)
+            if(item.chain != null)
+                position = fill(item.chain.around(item.children), parts, position, trees);
+            else if(item.symbol == null)
+                for(ParseTree part : parts.get(item.hole)) {
+                    trees.add(part);
+                    position = part.getEnd();
+                }
+            else if(item.children == null)
+                lambdaTrees(item.symbol, position, trees);
+            else {
+                List<ParseTree> children = new ArrayList<>();
+                int end = fill(item.children, parts, position, children);
+                trees.add(new ParseTree(item.symbol, position, end, children));
+                position = end;
+            }
+        return position;
+    }
+
+    /* Add the lambda derivations the symbol stands for - its own, or those of each symbol of a helper's pair */
+    private void lambdaTrees(String symbol, int position, List<ParseTree> trees) {
+        Deque<String> pending = new ArrayDeque<>(); // in place of recursion, since helpers can be nested as deep as a production is long
+        pending.push(symbol);
+        while(!pending.isEmpty()) {
+            String[] pair = pairs.get(pending.peek());
+            if(pair == null)
+                trees.add(lambdaTree(pending.pop(), position));
+            else {
+                pending.pop();
+                pending.push(pair[1]);
+                pending.push(pair[0]);
+            }
+        }
+    }
+
+    private ParseTree lambdaTree(String symbol, int position) {
+        String[] expression = lambdaProductions.get(symbol);
+        List<ParseTree> children = new ArrayList<>();
+        if(expression.length == 0)
+            children.add(new ParseTree(Character.toString(Main.LAMBDA), position, position, new ArrayList<>()));
+        for(String child : expression)
+            children.add(lambdaTree(child, position));
+        return new ParseTree(symbol, position, position, children);
+    }
+
+    private List<Item> template(String head, String[] symbols) {
+        List<Item> template = templates.get(key(head, symbols));
+        if(template == null)
+            throw new IllegalStateException("No template was recorded for the production " + head + " " + Main.ARROW + " " + String.join(" ", symbols) + ".");
+        return template;
+    }
+
+    /* The items deriving lambda from the nullable symbol - for a helper, that's a lambda item for the helper itself, which fill takes apart */
+    private static List<Item> lambdaItems(String symbol) {
+        return Collections.singletonList(Item.lambda(symbol));
+    }
+
+    /* The node of the non-terminal over the items, or just the items for a helper */
+    private List<Item> wrap(String symbol, List<Item> items) {
+        return helpers.contains(symbol) ? items : Collections.singletonList(Item.node(symbol, items));
+    }
+
+    /* The template with each of its holes replaced by the items for it */
+    private static List<Item> substitute(List<Item> template, List<List<Item>> replacements) {
+        List<Item> result = new ArrayList<>();
+        for(Item item : template)
+            if(item.chain != null) // the chain's own holes are filled already
+                result.add(Item.via(item.chain, substitute(item.children, replacements)));
+            else if(item.symbol == null)
+                result.addAll(replacements.get(item.hole));
+            else if(item.children == null)
+                result.add(item);
+            else
+                result.add(Item.node(item.symbol, substitute(item.children, replacements)));
+        return result;
+    }
+
+    private static List<Item> holes(int count) {
+        List<Item> holes = new ArrayList<>();
+        for(int i = 0; i < count; i++)
+            holes.add(Item.hole(i));
+        return holes;
+    }
+
+    private static List<String> key(String head, String[] symbols) {
+        List<String> key = new ArrayList<>();
+        key.add(head);
+        key.addAll(Arrays.asList(symbols));
+        return key;
+    }
+
+    static String[] names(SymbolTable symbolTable, int[] symbols) {
+        String[] names = new String[symbols.length];
+        for(int i = 0; i < names.length; i++)
+            names[i] = symbolTable.getName(symbols[i]);
+        return names;
+    }
+
+    /* One child of a template - a hole for one of the production's symbols, a lambda derivation of a symbol, the node of a non-terminal over more items, or a chain of unit productions around more items */
+    static final class Item {
+
+        /* Null for a hole or a chain */
+        private final String symbol;
+
+        private final int hole;
+
+        /* Null for a hole or a lambda derivation */
+        private final List<Item> children;
+
+        /* Null for anything but a chain */
+        private final Chain chain;
+
+        private Item(String symbol, int hole, List<Item> children, Chain chain) {
+            this.symbol = symbol;
+            this.hole = hole;
+            this.children = children;
+            this.chain = chain;
+        }
+
+        static Item hole(int index) {
+            return new Item(null, index, null, null);
+        }
+
+        static Item lambda(String symbol) {
+            return new Item(symbol, -1, null, null);
+        }
+
+        static Item node(String symbol, List<Item> children) {
+            return new Item(symbol, -1, children, null);
+        }
+
+        static Item via(Chain chain, List<Item> children) {
+            return new Item(null, -1, children, chain);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Item && Objects.equals(((Item) o).symbol, symbol) && ((Item) o).hole == hole && Objects.equals(((Item) o).children, children) && ((Item) o).chain == chain;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(symbol, hole, children);
+        }
+
+    }
+
+    /* A chain of unit productions, each a template with the node of the next non-terminal in its hole - chains to the same non-terminal share their tails */
+    static final class Chain {
+
+        private final List<Item> step;
+
+        /* The rest of the chain, or null if this is its last unit production */
+        private final Chain rest;
+
+        private final int length;
+
+        private Chain(List<Item> step, Chain rest) {
+            this.step = step;
+            this.rest = rest;
+            length = rest == null ? 1 : rest.length + 1;
+        }
+
+        /* The chain's steps nested one inside the next, with the given items in the last one's hole */
+        List<Item> around(List<Item> items) {
+            List<List<Item>> steps = new ArrayList<>();
+            for(Chain chain = this; chain != null; chain = chain.rest)
+                steps.add(chain.step);
+            for(int i = steps.size() - 1; i >= 0; i--)
+                items = substitute(steps.get(i), Collections.singletonList(items));
+            return items;
+        }
+
+    }
+
+    /* The production a CNF production was split from, with its template */
+    private static final class Split {
+
+        private final String[] symbols;
+
+        private final List<Item> template;
+
+        private Split(String[] symbols, List<Item> template) {
+            this.symbols = symbols;
+            this.template = template;
+        }
+
+    }
+
+}
@@ -0,0 +1,53 @@
+package main;
+
+import java.util.concurrent.CancellationException;
+
+/* Lets a running membership check be aborted from another thread, or once a deadline passes - the span loop checks it between chunks of cells and throws a CancellationException */
+public class CancellationToken {
+
+    /* Cancelling the parent cancels this token too, or null for none */
+    private final CancellationToken parent;
+
+    /* The System.nanoTime after which the token counts as cancelled, only read when hasDeadline is set */
+    private final long deadline;
+
+    private final boolean hasDeadline;
+
+    private volatile boolean cancelled;
+
+    public CancellationToken() {
+        this(null, 0, false);
+    }
+
+    private CancellationToken(CancellationToken parent, long deadline, boolean hasDeadline) {
+        this.parent = parent;
+        this.deadline = deadline;
+        this.hasDeadline = hasDeadline;
+    }
+
+    /* A token that cancels itself the given number of milliseconds from now */
+    public static CancellationToken withTimeout(long millis) {
+        return new CancellationToken(null, System.nanoTime() + millis * 1_000_000, true);
+    }
+
+    /* The token a single check made with the given options runs under - the options' token with their time limit (counted from now) on top, or null if there's neither */
+    static CancellationToken forCall(MembershipOptions options) {
+        if(options.getTimeLimitMillis() <= 0)
+            return options.getCancellationToken();
+        return new CancellationToken(options.getCancellationToken(), System.nanoTime() + options.getTimeLimitMillis() * 1_000_000, true);
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled || (hasDeadline && System.nanoTime() - deadline >= 0) || (parent != null && parent.isCancelled());
+    }
+
+    public void throwIfCancelled() {
+        if(isCancelled())
+            throw new CancellationException("The membership check was cancelled or ran past its deadline.");
+    }
+
+}
@@ -0,0 +1,59 @@
+package main;
+
+/* The storage for a CYK triangle, where the cell at (start, length) holds the set of non-terminals deriving the substring of that length beginning at start */
+public interface Chart {
+
+    /* Charts with at most this many bytes of dense cells are always packed, since they're small enough that the faster layout is worth it */
+    long DENSE_LIMIT = 64L << 20;
+
+    /* The assumed average number of non-terminals in a sparse cell, used when estimating the size of a sparse chart before it's filled */
+    int SPARSE_EXPECTED_MEMBERS = 4;
+
+    /* Copy the cell's non-terminals into the given bitset, replacing its previous contents */
+    void load(int start, int length, long[] into);
+
+    /* Replace the cell's non-terminals with those in the given bitset */
+    void store(int start, int length, long[] cell);
+
+    boolean contains(int start, int length, int id);
+
+    boolean isEmpty(int start, int length);
+
+    /* The number of bytes currently held by this chart */
+    long getBytes();
+
+    /* The number of cells in the triangle for an input of the given length */
+    static long cellCount(int length) {
+        return (long) length * (length + 1) / 2;
+    }
+
+    /* Decide between a packed and a sparse chart - a chart over the dense limit takes whichever layout is estimated to be smaller, since a sparse cell costs about 40 bytes against 8 per word of a packed one, so narrow cells stay packed however large the chart */
+    static boolean useSparse(CompiledGrammar grammar, int length) {
+        long packed = PackedChart.estimateBytes(grammar, length);
+        return packed > DENSE_LIMIT && SparseChart.estimateBytes(grammar, length) < packed;
+    }
+
+    /* The estimated peak number of bytes the chart chosen for the given input length will use */
+    static long estimateBytes(CompiledGrammar grammar, int length) {
+        return useSparse(grammar, length) ? SparseChart.estimateBytes(grammar, length) : PackedChart.estimateBytes(grammar, length);
+    }
+
+    /* Create the chart best suited to the grammar and input length, rejecting it before allocation if its estimated size is over the given limit */
+    static Chart create(CompiledGrammar grammar, int length, long maxBytes) {
+        return create(grammar, length, maxBytes, null);
+    }
+
+    /* Same as above, but reusing the given packed chart (if it isn't null) when a packed chart is chosen */
+    static Chart create(CompiledGrammar grammar, int length, long maxBytes, PackedChart reuse) {
+        long estimate = estimateBytes(grammar, length);
+        if(estimate > maxBytes)
+            throw new RuntimeException("An input of length " + length + " needs an estimated " + estimate + " bytes of chart memory, over the limit of " + maxBytes + " bytes.");
+        if(useSparse(grammar, length))
+            return new SparseChart(length, maxBytes);
+        if(reuse == null)
+            return new PackedChart(grammar.getWords(), length);
+        reuse.reset(length);
+        return reuse;
+    }
+
+}
@@ -0,0 +1,576 @@
+package main;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+
+/* An immutable, integer-indexed form of a CFG in CNF form, built once and reused for every membership check - it's never changed after construction, so it can be shared between threads */
+public final class CompiledGrammar {
+
+    /* The name of each non-terminal, indexed by its dense id */
+    private final String[] nonTerminalNames;
+
+    /* The dense id of the start symbol, or -1 if the start symbol has no productions */
+    private final int startId;
+
+    /* The number of longs needed to hold one bit per non-terminal in a chart cell */
+    private final int words;
+
+    /* Maps input text to dense terminal indexes */
+    private final Tokenizer tokenizer;
+
+    /* For each dense terminal index, the bitset of non-terminals with a production to that terminal */
+    private final long[][] terminalNonTerminals;
+
+    /* For each left child id, the right child ids and head ids of every binary production with that left child (parallel arrays) */
+    private final int[][] rightChildren, heads;
+
+    /* For each left child id, the bitset of every right child it's paired with - used to skip left children that can't match a cell */
+    private final long[][] rightMasks;
+
+    /* Every binary production as parallel head, left child and right child arrays, for engines that walk all productions */
+    private final int[] binaryHeads, binaryLefts, binaryRights;
+
+    /* The non-terminals that appear as the left or right child of some binary production */
+    private final long[] leftChildMask, rightChildMask;
+
+    /* The non-terminals that derive at least one string */
+    private final long[] productive;
+
+    /* For each non-terminal, every non-terminal that derives it followed by only productive symbols - so any prefix of a string it derives is also a prefix of one they derive. Only IncrementalRecognizer needs them,
+       so they're worked out on first use rather than by every compile (and aren't stored by GrammarFile) */
+    private volatile long[][] leftAncestors;
+
+    private final MembershipFilter filter;
+
+    /* A 64-bit hash of the rule tables, the same for any two grammars with the same tables - results are cached under it */
+    private final long fingerprint;
+
+    /* Compile the given non-terminals, whose productions must all be in CNF form, tokenizing inputs as described in Tokenizer */
+    static CompiledGrammar of(SymbolTable symbolTable, int startSymbol, Collection<NonTerminal> nonTerminals, boolean tokenMode) {
+        String[] nonTerminalNames = new String[nonTerminals.size()];
+        Map<Integer, Integer> ids = new HashMap<>();
+        for(NonTerminal n : nonTerminals) { // assign dense ids in map order
+            ids.put(n.getSymbol(), ids.size());
+            nonTerminalNames[ids.size() - 1] = n.getName();
+        }
+
+        Map<String, Integer> terminalIndexes = new LinkedHashMap<>();
+        List<Integer> unaryTerminals = new ArrayList<>(), unaryHeads = new ArrayList<>(), binaryHeads = new ArrayList<>(), binaryLefts = new ArrayList<>(), binaryRights = new ArrayList<>();
+        for(NonTerminal n : nonTerminals) {
+            int head = ids.get(n.getSymbol());
+            for(Production p : n.getProductionList()) {
+                int[] symbols = p.getSymbols();
+                if(symbols.length == 1 && !ids.containsKey(symbols[0])) { // a production to a single terminal
+                    unaryTerminals.add(terminalIndexes.computeIfAbsent(symbolTable.getName(symbols[0]), k -> terminalIndexes.size()));
+                    unaryHeads.add(head);
+                } else if(symbols.length == 2) { // a production to two non-terminals
+                    Integer left = ids.get(symbols[0]), right = ids.get(symbols[1]);
+                    if(left != null && right != null) { // a production referring to a missing non-terminal can never be used
+                        binaryHeads.add(head);
+                        binaryLefts.add(left);
+                        binaryRights.add(right);
+                    }
+                } else
+                    throw new RuntimeException("Production " + n.getName() + " " + Main.ARROW + " " + p.getExpression() + " is not in CNF form.");
+            }
+        }
+        return new CompiledGrammar(nonTerminalNames, ids.getOrDefault(startSymbol, -1), terminalIndexes.keySet().toArray(new String[0]), tokenMode, toArray(unaryTerminals), toArray(unaryHeads), toArray(binaryHeads), toArray(binaryLefts), toArray(binaryRights));
+    }
+
+    /* Build the grammar straight from its rule tables (parallel arrays of dense ids), working out which non-terminals are productive, their left ancestors, the filter and the fingerprint from them */
+    CompiledGrammar(String[] nonTerminalNames, int startId, String[] terminalNames, boolean tokenMode, int[] unaryTerminals, int[] unaryHeads, int[] binaryHeads, int[] binaryLefts, int[] binaryRights) {
+        this(nonTerminalNames, startId, terminalNames, tokenMode, unaryTerminals, unaryHeads, binaryHeads, binaryLefts, binaryRights, null, null, 0);
+    }
+
+    /* Same as above, but taking the productive set, filter and fingerprint an earlier build worked out, which is how precompiled grammars are loaded without analysing them again - with a null productive set they're all worked out instead */
+    CompiledGrammar(String[] nonTerminalNames, int startId, String[] terminalNames, boolean tokenMode, int[] unaryTerminals, int[] unaryHeads, int[] binaryHeads, int[] binaryLefts, int[] binaryRights, long[] productive, MembershipFilter filter, long fingerprint) {
+        this.nonTerminalNames = nonTerminalNames;
+        this.startId = startId;
+        tokenizer = new Tokenizer(terminalNames, tokenMode);
+        words = Math.max(1, (nonTerminalNames.length + 63) >>> 6);
+
+        terminalNonTerminals = new long[terminalNames.length][words];
+        for(int r = 0; r < unaryHeads.length; r++)
+            set(terminalNonTerminals[unaryTerminals[r]], unaryHeads[r]);
+
+        List<List<int[]>> binaryRules = new ArrayList<>(); // rules grouped by left child as {right, head} pairs
+        for(int i = 0; i < nonTerminalNames.length; i++)
+            binaryRules.add(new ArrayList<>());
+        for(int r = 0; r < binaryHeads.length; r++)
+            binaryRules.get(binaryLefts[r]).add(new int[] {binaryRights[r], binaryHeads[r]});
+
+        int binaryCount = 0;
+        for(List<int[]> rules : binaryRules)
+            binaryCount += rules.size();
+        this.binaryHeads = new int[binaryCount];
+        this.binaryLefts = new int[binaryCount];
+        this.binaryRights = new int[binaryCount];
+        leftChildMask = new long[words];
+        rightChildMask = new long[words];
+        rightChildren = new int[nonTerminalNames.length][];
+        heads = new int[nonTerminalNames.length][];
+        rightMasks = new long[nonTerminalNames.length][];
+        for(int b = 0; b < nonTerminalNames.length; b++) {
+            List<int[]> rules = binaryRules.get(b);
+            rightChildren[b] = new int[rules.size()];
+            heads[b] = new int[rules.size()];
+            rightMasks[b] = new long[words];
+            for(int r = 0; r < rules.size(); r++) {
+                rightChildren[b][r] = rules.get(r)[0];
+                heads[b][r] = rules.get(r)[1];
+                set(rightMasks[b], rules.get(r)[0]);
+                this.binaryLefts[--binaryCount] = b;
+                this.binaryRights[binaryCount] = rules.get(r)[0];
+                this.binaryHeads[binaryCount] = rules.get(r)[1];
+                set(leftChildMask, b);
+                set(rightChildMask, rules.get(r)[0]);
+            }
+        }
+
+        if(productive != null) {
+            this.productive = productive;
+            this.filter = filter;
+            this.fingerprint = fingerprint;
+            return;
+        }
+
+        this.productive = productive = new long[words];
+        for(long[] terminalSet : terminalNonTerminals)
+            for(int w = 0; w < words; w++)
+                productive[w] |= terminalSet[w];
+        for(boolean changed = true; changed; ) { // add heads of binary productions with two productive children until nothing changes
+            changed = false;
+            for(int r = 0; r < binaryHeads.length; r++)
+                if(!get(productive, binaryHeads[r]) && get(productive, binaryLefts[r]) && get(productive, binaryRights[r])) {
+                    set(productive, binaryHeads[r]);
+                    changed = true;
+                }
+        }
+
+        this.filter = new MembershipFilter(this); // built last, since it reads the tables above
+        this.fingerprint = fingerprint(nonTerminalNames, startId, terminalNames, unaryTerminals, unaryHeads, binaryHeads, binaryLefts, binaryRights);
+    }
+
+    /* The first 8 bytes of the SHA-256 of the tables, laid out much as GrammarFile stores them */
+    private static long fingerprint(String[] nonTerminalNames, int startId, String[] terminalNames, int[]... rules) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(startId);
+            for(String[] names : new String[][] {nonTerminalNames, terminalNames}) {
+                out.writeInt(names.length);
+                for(String name : names)
+                    out.writeUTF(name);
+            }
+            for(int[] column : rules) {
+                out.writeInt(column.length);
+                for(int value : column)
+                    out.writeInt(value);
+            }
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes.toByteArray());
+            long hash = 0;
+            for(int i = 0; i < 8; i++)
+                hash = (hash << 8) | (digest[i] & 0xFF);
+            return hash;
+        } catch(IOException | NoSuchAlgorithmException e) {
+            throw new RuntimeException(e); // neither can happen writing to memory with SHA-256, which every Java platform supports
+        }
+    }
+
+    /* Map the input to dense terminal indexes, as described in Tokenizer */
+    public int[] tokenize(String input) {
+        return tokenizer.tokenize(input);
+    }
+
+    public boolean recognize(String input) {
+        return recognize(tokenize(input), new MembershipOptions());
+    }
+
+    public boolean recognize(String input, MembershipOptions options) {
+        return recognize(tokenize(input), options);
+    }
+
+    // Based off of https://en.wikipedia.org/wiki/CYK_algorithm
+    public boolean recognize(int[] tokens, MembershipOptions options) {
+        return recognize(tokens, options, null);
+    }
+
+    /* Same as above, but filling the given packed chart (if it isn't null) instead of allocating one when a packed chart is chosen */
+    boolean recognize(int[] tokens, MembershipOptions options, PackedChart reuse) {
+        if(options.getEngine() == MembershipEngine.EARLEY)
+            throw new RuntimeException("The Earley engine needs the grammar before CNF conversion - use a MembershipRouter or an EarleyRecognizer.");
+        MembershipListener listener = options.getListener();
+        if(listener == null)
+            return check(tokens, options, reuse, null);
+        MembershipStats stats = new MembershipStats(tokens.length);
+        try {
+            boolean result = check(tokens, options, reuse, stats);
+            stats.setVerdict(result);
+            return result;
+        } catch(CancellationException e) {
+            stats.setCancelled();
+            throw e;
+        } finally {
+            stats.finish();
+            listener.membershipChecked(stats);
+        }
+    }
+
+    /* Answer from the cache or the filters if possible, otherwise run an engine - recording what happened in the stats unless they're null */
+    private boolean check(int[] tokens, MembershipOptions options, PackedChart reuse, MembershipStats stats) {
+        CancellationToken token = CancellationToken.forCall(options); // started before anything else, so the time limit covers the whole call
+        MembershipCache cache = options.getCache();
+        Boolean cached = cache == null ? null : cache.getVerdict(this, tokens);
+        if(cached != null) {
+            if(stats != null)
+                stats.setCacheHit();
+            return cached;
+        }
+        MembershipFilter.Rejection rejection = filter.check(tokens);
+        if(rejection != null) { // most non-members fail one of the filters, which is far cheaper than the chart (and than caching their verdicts)
+            if(stats != null)
+                stats.setRejection(rejection);
+            return false;
+        }
+        boolean result = fill(tokens, options, reuse, cache == null ? null : cache.spans(this, tokens), token, stats);
+        if(cache != null)
+            cache.putVerdict(this, tokens, result);
+        return result;
+    }
+
+    /* Run the matrix or chart engine, seeding chart cells from the given span cache lookups (if they aren't null) and storing the ones it fills into them */
+    private boolean fill(int[] tokens, MembershipOptions options, PackedChart reuse, MembershipCache.Spans spans, CancellationToken token, MembershipStats stats) {
+        int n = tokens.length;
+        boolean useMatrix = options.getEngine() == MembershipEngine.MATRIX;
+        if(options.getEngine() == MembershipEngine.AUTO && spans == null && n >= options.getMatrixThreshold()) // the matrix engine has no cells to seed, so AUTO keeps to the chart while spans are cached
+            useMatrix = MatrixRecognizer.estimateBytes(this, n) <= options.getMaxChartBytes(); // the matrices take about twice the chart's memory, so AUTO falls back to the chart (packed or sparse) when they'd be over the limit
+        if(useMatrix) {
+            long estimate = MatrixRecognizer.estimateBytes(this, n);
+            if(estimate > options.getMaxChartBytes())
+                throw new RuntimeException("An input of length " + n + " needs an estimated " + estimate + " bytes of matrix memory, over the limit of " + options.getMaxChartBytes() + " bytes.");
+            MatrixRecognizer matrix = new MatrixRecognizer(this, n);
+            if(stats != null) {
+                stats.endSetup(MembershipEngine.MATRIX);
+                stats.setChartBytes(estimate);
+            }
+            return matrix.recognize(tokens, options, token, stats);
+        }
+        Chart chart = Chart.create(this, n, options.getMaxChartBytes(), reuse);
+        if(stats != null)
+            stats.endSetup(MembershipEngine.CHART);
+        for(int s = 0; s < n; s++)
+            chart.store(s, 1, terminalNonTerminals[tokens[s]]); // bottom row of table
+        if(stats != null)
+            stats.endUnary();
+        SpanTask.fillTriangle((length, from, to) -> {
+            long[] left = new long[words], right = new long[words], cell = new long[words];
+            long filled = 0, applied = 0;
+            for(int s = from; s < to; s++) {
+                if(spans != null && spans.load(s, length, cell)) {
+                    chart.store(s, length, cell);
+                    continue;
+                }
+                if(stats == null)
+                    fillCell(chart, s, length, left, right, cell);
+                else
+                    applied += fillCellCounted(chart, s, length, left, right, cell);
+                filled++;
+                if(spans != null)
+                    spans.store(s, length, cell);
+            }
+            if(stats != null)
+                stats.addCells(filled, applied);
+        }, n, options, token);
+        if(stats != null) {
+            stats.endBinary();
+            stats.setChartBytes(chart.getBytes());
+        }
+        return chart.contains(0, n, startId); // true if the top of the 'CYK triangle' contains the start symbol
+    }
+
+    /* Fill the triangle for the input while recording its parse forest, to get its derivations as well as the verdict - the forest's trees are over the CNF form */
+    public ParseForest parse(int[] tokens, MembershipOptions options) {
+        return new ParseForest(this, tokens, options, null);
+    }
+
+    public ParseForest parse(String input) {
+        return parse(tokenize(input), new MembershipOptions());
+    }
+
+    /* The estimated peak chart memory for an input of the given length, so callers can reject inputs before running them */
+    public long estimateChartBytes(int length) {
+        return Chart.estimateBytes(this, length);
+    }
+
+    /* The estimated peak memory of the matrix engine for an input of the given length */
+    public long estimateMatrixBytes(int length) {
+        return MatrixRecognizer.estimateBytes(this, length);
+    }
+
+    /* Fill the cell at (start, length) from every split of its substring into two shorter, already filled cells */
+    void fillCell(Chart chart, int start, int length, long[] left, long[] right, long[] cell) {
+        Arrays.fill(cell, 0);
+        for(int p = 1; p <= length - 1; p++) {
+            if(chart.isEmpty(start, p) || chart.isEmpty(start + p, length - p))
+                continue;
+            chart.load(start, p, left);
+            chart.load(start + p, length - p, right);
+            combine(left, right, cell);
+        }
+        chart.store(start, length, cell);
+    }
+
+    /* Same as above, but returning the number of rule applications - kept apart from it so checks without stats don't pay for the count in the innermost loop */
+    private long fillCellCounted(Chart chart, int start, int length, long[] left, long[] right, long[] cell) {
+        Arrays.fill(cell, 0);
+        long applied = 0;
+        for(int p = 1; p <= length - 1; p++) {
+            if(chart.isEmpty(start, p) || chart.isEmpty(start + p, length - p))
+                continue;
+            chart.load(start, p, left);
+            chart.load(start + p, length - p, right);
+            for(int w = 0; w < words; w++)
+                for(long bits = left[w]; bits != 0; bits &= bits - 1) { // combine, counting each production that matches
+                    int b = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    if(!intersects(rightMasks[b], right))
+                        continue;
+                    int[] children = rightChildren[b], heads = this.heads[b];
+                    for(int r = 0; r < children.length; r++)
+                        if(get(right, children[r])) {
+                            set(cell, heads[r]);
+                            applied++;
+                        }
+                }
+        }
+        chart.store(start, length, cell);
+        return applied;
+    }
+
+    /* Add the heads of every binary production whose left child is in the left cell and whose right child is in the right cell to the given cell */
+    void combine(long[] left, long[] right, long[] cell) {
+        for(int w = 0; w < words; w++)
+            for(long bits = left[w]; bits != 0; bits &= bits - 1) { // visit each non-terminal in the left cell
+                int b = (w << 6) + Long.numberOfTrailingZeros(bits);
+                if(!intersects(rightMasks[b], right)) // none of b's right children are in the right cell
+                    continue;
+                int[] children = rightChildren[b], heads = this.heads[b];
+                for(int r = 0; r < children.length; r++)
+                    if(get(right, children[r]))
+                        set(cell, heads[r]);
+            }
+    }
+
+    public int getNonTerminalCount() {
+        return nonTerminalNames.length;
+    }
+
+    public int getTerminalCount() {
+        return terminalNonTerminals.length;
+    }
+
+    /* The ids of every non-terminal with a production to the terminal with the given dense index */
+    public int[] getTerminalNonTerminals(int token) {
+        int count = 0;
+        for(long word : terminalNonTerminals[token])
+            count += Long.bitCount(word);
+        int[] ids = new int[count];
+        count = 0;
+        for(int w = 0; w < words; w++)
+            for(long bits = terminalNonTerminals[token][w]; bits != 0; bits &= bits - 1)
+                ids[count++] = (w << 6) + Long.numberOfTrailingZeros(bits);
+        return ids;
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    public MembershipFilter getFilter() {
+        return filter;
+    }
+
+    public int getStartId() {
+        return startId;
+    }
+
+    public String getNonTerminalName(int id) {
+        return nonTerminalNames[id];
+    }
+
+    public Tokenizer getTokenizer() {
+        return tokenizer;
+    }
+
+    public String getTerminalName(int token) {
+        return tokenizer.getTerminalName(token);
+    }
+
+    /* The dense index of the terminal with the given name, or -1 if it isn't a terminal of this grammar */
+    public int getTerminalIndex(String name) {
+        return tokenizer.getTerminalIndex(name);
+    }
+
+    int getWords() {
+        return words;
+    }
+
+    public boolean isProductive(int id) {
+        return get(productive, id);
+    }
+
+    /* The bitset behind isProductive, for GrammarFile to store */
+    long[] getProductive() {
+        return productive;
+    }
+
+    long[] getLeftAncestors(int id) {
+        return leftAncestors()[id];
+    }
+
+    /* The left ancestors of every non-terminal, worked out the first time they're asked for - two threads racing here both work out the same sets, so either may win */
+    private long[][] leftAncestors() {
+        long[][] result = leftAncestors;
+        if(result == null)
+            leftAncestors = result = closeLeftChildGraph();
+        return result;
+    }
+
+    /* Close the graph with an edge from each left child to the head of every production it's in with a productive right child, one strongly connected component at a time in reverse topological order -
+       Tarjan's algorithm finishes a component only after every component it reaches, so its set is its members' heads plus the finished sets of those outside it, and all its members share that set */
+    private long[][] closeLeftChildGraph() {
+        int count = nonTerminalNames.length;
+        long[][] result = new long[count][];
+        int[] lowLinks = new int[count], order = new int[count];
+        Arrays.fill(order, -1);
+        Deque<Integer> stack = new ArrayDeque<>(); // Tarjan's stack of nodes that haven't been assigned a component yet
+        boolean[] onStack = new boolean[count];
+        int visited = 0;
+        for(int root = 0; root < count; root++) {
+            if(order[root] >= 0)
+                continue;
+            Deque<int[]> calls = new ArrayDeque<>(); // {node, index of the next production to follow}, in place of recursion
+            calls.push(new int[] {root, 0});
+            order[root] = lowLinks[root] = visited++;
+            stack.push(root);
+            onStack[root] = true;
+            while(!calls.isEmpty()) {
+                int[] call = calls.peek();
+                int v = call[0];
+                if(call[1] < heads[v].length) {
+                    int r = call[1]++;
+                    if(!get(productive, rightChildren[v][r]))
+                        continue;
+                    int w = heads[v][r];
+                    if(order[w] < 0) {
+                        order[w] = lowLinks[w] = visited++;
+                        stack.push(w);
+                        onStack[w] = true;
+                        calls.push(new int[] {w, 0});
+                    } else if(onStack[w])
+                        lowLinks[v] = Math.min(lowLinks[v], order[w]);
+                    continue;
+                }
+                calls.pop();
+                if(!calls.isEmpty())
+                    lowLinks[calls.peek()[0]] = Math.min(lowLinks[calls.peek()[0]], lowLinks[v]);
+                if(lowLinks[v] != order[v])
+                    continue;
+                List<Integer> members = new ArrayList<>(); // v is the root of a component, so pop it off the stack
+                int w;
+                do {
+                    w = stack.pop();
+                    onStack[w] = false;
+                    members.add(w);
+                } while(w != v);
+                long[] ancestors = new long[words];
+                for(int member : members)
+                    for(int r = 0; r < heads[member].length; r++)
+                        if(get(productive, rightChildren[member][r])) {
+                            int head = heads[member][r];
+                            set(ancestors, head);
+                            if(result[head] != null) // in a finished component - the heads in this one are all set by their own edges
+                                for(int u = 0; u < words; u++)
+                                    ancestors[u] |= result[head][u];
+                        }
+                for(int member : members)
+                    result[member] = ancestors;
+            }
+        }
+        return result;
+    }
+
+    /* Add the left ancestors of every non-terminal in the cell to it */
+    void closeLeftAncestors(long[] cell) {
+        long[][] leftAncestors = leftAncestors();
+        for(int w = 0; w < words; w++)
+            for(long bits = cell[w]; bits != 0; bits &= bits - 1) {
+                long[] ancestors = leftAncestors[(w << 6) + Long.numberOfTrailingZeros(bits)];
+                for(int v = 0; v < words; v++)
+                    cell[v] |= ancestors[v];
+            }
+    }
+
+    /* Replace the cell's contents with the non-terminals that derive the given terminal, or with nothing if the terminal isn't in the grammar */
+    void loadTerminal(int token, long[] cell) {
+        if(token < 0)
+            Arrays.fill(cell, 0);
+        else
+            System.arraycopy(terminalNonTerminals[token], 0, cell, 0, words);
+    }
+
+    /* The right children and heads of the binary productions with the given left child (parallel arrays), and the bitset of those right children */
+    int[] getRightChildren(int left) {
+        return rightChildren[left];
+    }
+
+    int[] getHeads(int left) {
+        return heads[left];
+    }
+
+    long[] getRightMask(int left) {
+        return rightMasks[left];
+    }
+
+    boolean isLeftChild(int id) {
+        return get(leftChildMask, id);
+    }
+
+    boolean isRightChild(int id) {
+        return get(rightChildMask, id);
+    }
+
+    int[] getBinaryHeads() {
+        return binaryHeads;
+    }
+
+    int[] getBinaryLefts() {
+        return binaryLefts;
+    }
+
+    int[] getBinaryRights() {
+        return binaryRights;
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        return values.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    static boolean get(long[] bits, int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    static void set(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << index;
+    }
+
+    static boolean intersects(long[] a, long[] b) {
+        for(int i = 0; i < a.length; i++)
+            if((a[i] & b[i]) != 0)
+                return true;
+        return false;
+    }
+
+}
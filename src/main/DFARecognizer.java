@@ -0,0 +1,180 @@
+package main;
+
+import java.util.*;
+
+/* A minimized DFA for a right or left-linear CFG, over the dense terminal indexes of the grammar's compiled form so it reads the same tokens as the other engines - it checks an input in one table lookup per symbol */
+public final class DFARecognizer {
+
+    /* Marks an epsilon move in the NFA */
+    private static final int EPSILON = -1;
+
+    /* The most states the subset construction may make before giving up - a linear grammar's DFA can have exponentially many states in its number of non-terminals (as for (a|b)*a(a|b)^k), so past this the grammar is left to the general engines */
+    public static final int MAX_STATES = 1 << 16;
+
+    private final int terminalCount;
+
+    /* The next state for each state and terminal, at state * terminalCount + terminal - or -1 for the dead state every rejected input ends up in */
+    private final int[] transitions;
+
+    private final boolean[] accepting;
+
+    private final int startState;
+
+    /* Build the DFA of the given linear CFG (before it's converted to CNF form), reading the terminals of its compiled form - throwing a StateLimitException if it needs more than MAX_STATES states */
+    public DFARecognizer(CFG source, CompiledGrammar grammar) {
+        boolean right = source.isLinear(true);
+        if(!right && !source.isLinear(false))
+            throw new RuntimeException("Only a right or left-linear grammar can be turned into a DFA.");
+        terminalCount = grammar.getTerminalCount();
+
+        // build an NFA with a state per non-terminal plus a final state (right-linear) or an initial state (left-linear), and a state between each pair of terminals in a production
+        List<List<int[]>> edges = new ArrayList<>(); // {label, target} pairs for each state
+        Map<Integer, Integer> states = new HashMap<>();
+        for(NonTerminal n : source.getNonTerminals())
+            states.put(n.getSymbol(), newState(edges));
+        int extra = newState(edges); // the final or initial state
+        for(NonTerminal n : source.getNonTerminals())
+            for(Production p : n.getProductionList()) {
+                int[] symbols = p.getSymbols();
+                boolean linked = symbols.length > 0 && !source.isTerminal(symbols[right ? symbols.length - 1 : 0]); // whether the production has a non-terminal
+                int from = right ? states.get(n.getSymbol()) : linked ? stateOf(states, edges, symbols[0]) : extra;
+                boolean usable = true; // a terminal missing from the compiled grammar can never be read, so a production using it can never be used
+                for(int i = linked && !right ? 1 : 0; i < symbols.length - (linked && right ? 1 : 0); i++) {
+                    int terminal = grammar.getTerminalIndex(source.getSymbolTable().getName(symbols[i]));
+                    if(terminal < 0) {
+                        usable = false;
+                        break;
+                    }
+                    int to = newState(edges);
+                    edges.get(from).add(new int[] {terminal, to});
+                    from = to;
+                }
+                if(usable)
+                    edges.get(from).add(new int[] {EPSILON, right ? linked ? stateOf(states, edges, symbols[symbols.length - 1]) : extra : states.get(n.getSymbol())});
+            }
+        Integer start = states.get(source.getStartSymbol());
+        int nfaStart = right ? (start == null ? -1 : start) : extra;
+        int nfaFinal = right ? extra : (start == null ? -1 : start);
+
+        // subset construction, with the empty set as the dead state
+        Map<BitSet, Integer> dfaStates = new HashMap<>();
+        List<BitSet> subsets = new ArrayList<>();
+        List<int[]> rows = new ArrayList<>();
+        BitSet initial = new BitSet();
+        if(nfaStart >= 0)
+            initial.set(nfaStart);
+        closeEpsilon(initial, edges);
+        dfaStates.put(initial, 0);
+        subsets.add(initial);
+        for(int d = 0; d < subsets.size(); d++) {
+            int[] row = new int[terminalCount];
+            for(int t = 0; t < terminalCount; t++) {
+                BitSet next = new BitSet();
+                for(int s = subsets.get(d).nextSetBit(0); s >= 0; s = subsets.get(d).nextSetBit(s + 1))
+                    for(int[] edge : edges.get(s))
+                        if(edge[0] == t)
+                            next.set(edge[1]);
+                closeEpsilon(next, edges);
+                Integer id = dfaStates.get(next);
+                if(id == null) {
+                    if(subsets.size() == MAX_STATES)
+                        throw new StateLimitException("The DFA of this grammar needs more than " + MAX_STATES + " states.");
+                    id = subsets.size();
+                    dfaStates.put(next, id);
+                    subsets.add(next);
+                }
+                row[t] = id;
+            }
+            rows.add(row);
+        }
+
+        // Moore's partition refinement - split the states by accepting, then by the classes their transitions lead to, until no class splits
+        int count = subsets.size();
+        int[] classes = new int[count];
+        for(int d = 0; d < count; d++)
+            classes[d] = nfaFinal >= 0 && subsets.get(d).get(nfaFinal) ? 1 : 0;
+        for(int classCount = -1; ; ) {
+            Map<List<Integer>, Integer> signatures = new HashMap<>();
+            int[] next = new int[count];
+            for(int d = 0; d < count; d++) {
+                List<Integer> signature = new ArrayList<>(terminalCount + 1);
+                signature.add(classes[d]);
+                for(int target : rows.get(d))
+                    signature.add(classes[target]);
+                next[d] = signatures.computeIfAbsent(signature, k -> signatures.size());
+            }
+            classes = next;
+            if(signatures.size() == classCount)
+                break;
+            classCount = signatures.size();
+        }
+
+        int dead = dfaStates.getOrDefault(new BitSet(), -1) < 0 ? -1 : classes[dfaStates.get(new BitSet())];
+        int stateCount = 0;
+        for(int c : classes)
+            stateCount = Math.max(stateCount, c + 1);
+        int[] renumbered = new int[stateCount]; // class ids with the dead state's class left out
+        for(int c = 0, id = 0; c < stateCount; c++)
+            renumbered[c] = c == dead ? -1 : id++;
+        int liveStates = dead < 0 ? stateCount : stateCount - 1;
+        transitions = new int[Math.max(1, liveStates) * terminalCount];
+        accepting = new boolean[Math.max(1, liveStates)];
+        for(int d = 0; d < count; d++) {
+            int state = renumbered[classes[d]];
+            if(state < 0)
+                continue;
+            accepting[state] = nfaFinal >= 0 && subsets.get(d).get(nfaFinal);
+            for(int t = 0; t < terminalCount; t++)
+                transitions[state * terminalCount + t] = renumbered[classes[rows.get(d)[t]]];
+        }
+        startState = renumbered[classes[0]];
+    }
+
+    /* Check the input, given as dense terminal indexes (-1 for a symbol not in the grammar) */
+    public boolean recognize(int[] tokens) {
+        int state = startState;
+        for(int i = 0; i < tokens.length && state >= 0; i++)
+            state = tokens[i] < 0 ? -1 : transitions[state * terminalCount + tokens[i]];
+        return state >= 0 && accepting[state];
+    }
+
+    /* The number of states of the minimized DFA, not counting the dead state */
+    public int getStateCount() {
+        return startState < 0 ? 0 : accepting.length;
+    }
+
+    /* Thrown when a grammar's DFA would have more than MAX_STATES states */
+    public static final class StateLimitException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        StateLimitException(String message) {
+            super(message);
+        }
+
+    }
+
+    private static int newState(List<List<int[]>> edges) {
+        edges.add(new ArrayList<>());
+        return edges.size() - 1;
+    }
+
+    /* The state of the given non-terminal symbol, adding one with no moves for a symbol without productions */
+    private static int stateOf(Map<Integer, Integer> states, List<List<int[]>> edges, int symbol) {
+        return states.computeIfAbsent(symbol, k -> newState(edges));
+    }
+
+    /* Add every state reachable from the set through epsilon moves to it */
+    private static void closeEpsilon(BitSet set, List<List<int[]>> edges) {
+        Deque<Integer> work = new ArrayDeque<>();
+        for(int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1))
+            work.push(s);
+        while(!work.isEmpty())
+            for(int[] edge : edges.get(work.pop()))
+                if(edge[0] == EPSILON && !set.get(edge[1])) {
+                    set.set(edge[1]);
+                    work.push(edge[1]);
+                }
+    }
+
+}
@@ -0,0 +1,379 @@
+package main;
+
+import java.util.*;
+import java.util.concurrent.CancellationException;
+
+/* An Earley recognizer that runs on a CFG as written (no CNF form needed, so the grammar isn't blown up or changed), built from a snapshot of its productions.
+   Lambda productions are handled by advancing over nullable non-terminals when they're predicted (Aycock and Horspool), predicting a non-terminal adds the precomputed closure of every rule it can start with, and right recursion is completed in one step through Leo's deterministic reduction paths - so unambiguous grammars run in about linear time, and the worst case is cubic */
+public final class EarleyRecognizer {
+
+    /* The next symbol of a complete item */
+    private static final int COMPLETE = Integer.MIN_VALUE;
+
+    /* The number of items processed between checks of the cancellation token - sets are checked as they finish, so an ambiguous grammar's large sets are each checked while cheap ones share a check */
+    private static final int CHECK_ITEMS = 4096;
+
+    private final Tokenizer tokenizer;
+
+    /* For each item (a rule with a dot in it, numbered rule by rule), the symbol after the dot - a terminal index, ~id for a non-terminal, or COMPLETE */
+    private final int[] nextSymbols;
+
+    /* For each item, the id of its rule's non-terminal */
+    private final int[] heads;
+
+    /* For each non-terminal id, the first items of the rules of every non-terminal predicting it predicts */
+    private final int[][] predictions;
+
+    /* For each non-terminal id, whether it derives lambda */
+    private final boolean[] nullable;
+
+    /* The first item of the rule S' → S added for the start symbol, whose completion at the end means the input is a member */
+    private final int startItem;
+
+    /* Build a recognizer for the CFG, which reads terminals by the CFG's own names */
+    public EarleyRecognizer(CFG source) {
+        this(source, null);
+    }
+
+    /* Build a recognizer for the CFG that reads the dense terminal indexes of the given compiled grammar (normally its CNF form), so it can take the same tokens as the other engines */
+    public EarleyRecognizer(CFG source, CompiledGrammar grammar) {
+        Map<Integer, Integer> terminalIndexes = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        int extra = grammar == null ? 0 : grammar.getTerminalCount();
+        for(int symbol : source.getSymbols())
+            if(source.isTerminal(symbol)) {
+                String name = source.getSymbolTable().getName(symbol);
+                int index = grammar == null ? -1 : grammar.getTerminalIndex(name);
+                if(index < 0) { // a terminal the compiled grammar doesn't have is never read, but still has to be told apart
+                    index = extra++;
+                    names.add(name);
+                }
+                terminalIndexes.put(symbol, index);
+            }
+        tokenizer = grammar == null ? new Tokenizer(names.toArray(new String[0]), source.isTokenMode()) : grammar.getTokenizer();
+
+        Map<Integer, Integer> ids = new HashMap<>(); // id 0 is S', so every other non-terminal's id is one past its place in the map
+        for(NonTerminal n : source.getNonTerminals())
+            ids.put(n.getSymbol(), ids.size() + 1);
+        List<int[]> rules = new ArrayList<>(); // each rule as its head id followed by its encoded symbols
+        rules.add(new int[] {0, ~ids.computeIfAbsent(source.getStartSymbol(), k -> ids.size() + 1)});
+        for(NonTerminal n : source.getNonTerminals())
+            for(Production p : n.getProductionList()) {
+                int[] rule = new int[p.length() + 1];
+                rule[0] = ids.get(n.getSymbol());
+                for(int i = 0; i < p.length(); i++) {
+                    int symbol = p.getSymbols()[i];
+                    rule[i + 1] = source.isTerminal(symbol) ? terminalIndexes.get(symbol) : ~ids.computeIfAbsent(symbol, k -> ids.size() + 1); // a non-terminal without productions gets an id with no rules
+                }
+                rules.add(rule);
+            }
+
+        int itemCount = 0;
+        for(int[] rule : rules)
+            itemCount += rule.length; // one item per dot position
+        nextSymbols = new int[itemCount];
+        heads = new int[itemCount];
+        int count = ids.size() + 1;
+        List<List<Integer>> firstItems = new ArrayList<>(); // the first item of each rule of each non-terminal
+        for(int id = 0; id < count; id++)
+            firstItems.add(new ArrayList<>());
+        for(int r = 0, item = 0; r < rules.size(); r++) {
+            int[] rule = rules.get(r);
+            firstItems.get(rule[0]).add(item);
+            for(int dot = 1; dot <= rule.length; dot++, item++) {
+                heads[item] = rule[0];
+                nextSymbols[item] = dot < rule.length ? rule[dot] : COMPLETE;
+            }
+        }
+        startItem = 0;
+
+        nullable = new boolean[count];
+        for(boolean changed = true; changed; ) { // a non-terminal is nullable if one of its rules is all nullable non-terminals
+            changed = false;
+            for(int[] rule : rules) {
+                boolean all = true;
+                for(int i = 1; i < rule.length && all; i++)
+                    all = rule[i] < 0 && nullable[~rule[i]];
+                if(all && !nullable[rule[0]]) {
+                    nullable[rule[0]] = true;
+                    changed = true;
+                }
+            }
+        }
+
+        predictions = new int[count][];
+        boolean[] reached = new boolean[count];
+        for(int id = 0; id < count; id++) { // every non-terminal that can start a string derived from this one, found by following the symbol after each nullable prefix of each rule
+            Arrays.fill(reached, false);
+            Deque<Integer> work = new ArrayDeque<>();
+            List<Integer> items = new ArrayList<>();
+            reached[id] = true;
+            work.add(id);
+            while(!work.isEmpty()) {
+                int next = work.poll();
+                for(int item : firstItems.get(next)) {
+                    items.add(item);
+                    for(int i = item; nextSymbols[i] < 0 && nextSymbols[i] != COMPLETE; i++) {
+                        int symbol = ~nextSymbols[i];
+                        if(!reached[symbol]) {
+                            reached[symbol] = true;
+                            work.add(symbol);
+                        }
+                        if(!nullable[symbol])
+                            break;
+                    }
+                }
+            }
+            predictions[id] = items.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    public int[] tokenize(String input) {
+        return tokenizer.tokenize(input);
+    }
+
+    public boolean recognize(String input) {
+        return recognize(tokenize(input));
+    }
+
+    /* Check the input, given as dense terminal indexes (-1 for a symbol not in the grammar) - unlike the CNF engines, the empty string is a member if the start symbol derives lambda */
+    public boolean recognize(int[] tokens) {
+        return recognize(tokens, null, null);
+    }
+
+    /* Same as above, but honouring the options' listener, cancellation token and time limit */
+    public boolean recognize(int[] tokens, MembershipOptions options) {
+        CancellationToken token = CancellationToken.forCall(options);
+        MembershipListener listener = options.getListener();
+        if(listener == null)
+            return recognize(tokens, token, null);
+        MembershipStats stats = new MembershipStats(tokens.length);
+        try {
+            boolean result = recognize(tokens, token, stats);
+            stats.setVerdict(result);
+            return result;
+        } catch(CancellationException e) {
+            stats.setCancelled();
+            throw e;
+        } finally {
+            stats.finish();
+            listener.membershipChecked(stats);
+        }
+    }
+
+    /* Check the input, stopping once the token (if it isn't null) is cancelled and recording the sets and items in the stats unless they're null */
+    private boolean recognize(int[] tokens, CancellationToken token, MembershipStats stats) {
+        if(stats != null)
+            stats.endSetup(MembershipEngine.EARLEY);
+        long items = 0, unchecked = 0;
+        for(int t : tokens)
+            if(t < 0)
+                return false;
+        int n = tokens.length;
+        EarleySet[] sets = new EarleySet[n + 1];
+        int[] predicted = new int[nullable.length]; // the set each non-terminal was last predicted in, plus 1
+        sets[0] = new EarleySet();
+        sets[0].add(startItem, 0);
+        for(int i = 0; i <= n; i++) {
+            EarleySet set = sets[i];
+            if(i < n)
+                sets[i + 1] = new EarleySet();
+            for(int e = 0; e < set.size; e++) { // the set grows while it's processed
+                int item = set.items[e], origin = set.origins[e], symbol = nextSymbols[item];
+                if(symbol == COMPLETE) {
+                    if(origin < i) // a completion at its own origin derived lambda, which was already advanced over when it was predicted
+                        complete(sets, heads[item], origin, set);
+                } else if(symbol >= 0) { // scan
+                    if(i < n && tokens[i] == symbol)
+                        sets[i + 1].add(item + 1, origin);
+                } else {
+                    int id = ~symbol;
+                    if(predicted[id] != i + 1) {
+                        predicted[id] = i + 1;
+                        for(int first : predictions[id])
+                            set.add(first, i);
+                        for(int first : predictions[id]) // mark the whole closure, so it isn't added again
+                            predicted[heads[first]] = i + 1;
+                    }
+                    if(nullable[id])
+                        set.add(item + 1, origin);
+                }
+            }
+            set.index(nextSymbols);
+            items += set.size;
+            if(token != null && (unchecked += set.size) >= CHECK_ITEMS) {
+                unchecked = 0;
+                if(token.isCancelled()) {
+                    recordSets(stats, i + 1, items);
+                    token.throwIfCancelled();
+                }
+            }
+            if(i < n && sets[i + 1].size == 0) {
+                recordSets(stats, i + 1, items);
+                return false;
+            }
+        }
+        recordSets(stats, n + 1, items);
+        return sets[n].contains(startItem + 1, 0);
+    }
+
+    /* Record the sets built and the items in them as the cells and rule applications of the stats, unless they're null */
+    private static void recordSets(MembershipStats stats, int sets, long items) {
+        if(stats == null)
+            return;
+        stats.addCells(sets, items);
+        stats.endBinary();
+    }
+
+    /* Add the items the completion of the non-terminal from origin to the current set advances - through its Leo item if it has one, otherwise every item in the origin set waiting on it */
+    private void complete(EarleySet[] sets, int id, int origin, EarleySet set) {
+        EarleySet from = sets[origin];
+        int key = from.find(id);
+        if(key < 0)
+            return;
+        long leo = leoItem(sets, origin, key);
+        if(leo >= 0) {
+            set.add((int) (leo >>> 32), (int) leo);
+            return;
+        }
+        for(int w = from.starts[key]; w < from.starts[key + 1]; w++) {
+            int e = from.waiting[w];
+            set.add(from.items[e] + 1, from.origins[e]);
+        }
+    }
+
+    /* The topmost complete item of the deterministic reduction path of the non-terminal at the given key of the set, as item << 32 | origin, or -1 if it has none.
+       The path exists when the only item waiting on the non-terminal has it as its last symbol - completing the non-terminal then completes that item's non-terminal too, and so on up */
+    private long leoItem(EarleySet[] sets, int index, int key) {
+        List<int[]> path = new ArrayList<>(); // {set, key} pairs whose Leo item isn't known yet
+        long top = -1;
+        while(true) {
+            EarleySet set = sets[index];
+            if(set.leo[key] != EarleySet.UNKNOWN) {
+                top = set.leo[key];
+                break;
+            }
+            if(set.starts[key + 1] - set.starts[key] != 1 || nextSymbols[set.items[set.waiting[set.starts[key]]] + 1] != COMPLETE) {
+                set.leo[key] = -1;
+                top = -1;
+                break;
+            }
+            path.add(new int[] {index, key});
+            int e = set.waiting[set.starts[key]], origin = set.origins[e], parent = sets[origin].find(heads[set.items[e]]);
+            top = ((long) (set.items[e] + 1) << 32) | origin; // the item itself is the top unless its non-terminal has a path further up
+            if(parent < 0 || origin == index) // nothing waits on it further up (or it's a completion at its own origin, handled by the nullable advance)
+                break;
+            long above = sets[origin].leo[parent];
+            if(above == EarleySet.UNKNOWN) {
+                index = origin;
+                key = parent;
+                continue;
+            }
+            if(above >= 0)
+                top = above;
+            break;
+        }
+        // every set on the path shares the top found (or falls back to its own item if nothing above had a path)
+        for(int p = path.size() - 1; p >= 0; p--) {
+            EarleySet set = sets[path.get(p)[0]];
+            int e = set.waiting[set.starts[path.get(p)[1]]];
+            long own = ((long) (set.items[e] + 1) << 32) | set.origins[e];
+            if(top < 0)
+                top = own;
+            set.leo[path.get(p)[1]] = top;
+        }
+        return top;
+    }
+
+    /* One Earley set - its items with their origins in the order they were added, deduplicated by an open addressed hash set, and once it's finished an index from each non-terminal to the items waiting on it */
+    private static final class EarleySet {
+
+        static final long UNKNOWN = -2;
+
+        int size;
+
+        int[] items = new int[8], origins = new int[8];
+
+        /* The hash set of item << 32 | origin + 1, with 0 as an empty slot */
+        private long[] slots = new long[16];
+
+        /* The non-terminal ids items wait on, sorted, and for each the range of starts holding the indexes of those items in waiting */
+        int[] keys, starts, waiting;
+
+        /* The Leo item of each key, UNKNOWN until it's needed */
+        long[] leo;
+
+        void add(int item, int origin) {
+            long entry = ((long) item << 32 | origin) + 1;
+            int mask = slots.length - 1, slot = (int) (entry ^ entry >>> 29) * 0x9E3779B9 & mask;
+            for(; slots[slot] != 0; slot = (slot + 1) & mask)
+                if(slots[slot] == entry)
+                    return;
+            slots[slot] = entry;
+            if(size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+                origins = Arrays.copyOf(origins, size * 2);
+            }
+            items[size] = item;
+            origins[size++] = origin;
+            if(size * 2 > slots.length) { // keep the table at most half full
+                long[] old = slots;
+                slots = new long[old.length * 2];
+                mask = slots.length - 1;
+                for(long value : old)
+                    if(value != 0) {
+                        int s = (int) (value ^ value >>> 29) * 0x9E3779B9 & mask;
+                        while(slots[s] != 0)
+                            s = (s + 1) & mask;
+                        slots[s] = value;
+                    }
+            }
+        }
+
+        boolean contains(int item, int origin) {
+            long entry = ((long) item << 32 | origin) + 1;
+            int mask = slots.length - 1;
+            for(int slot = (int) (entry ^ entry >>> 29) * 0x9E3779B9 & mask; slots[slot] != 0; slot = (slot + 1) & mask)
+                if(slots[slot] == entry)
+                    return true;
+            return false;
+        }
+
+        /* Build the index of waiting items, once no more items will be added */
+        void index(int[] nextSymbols) {
+            long[] pairs = new long[size]; // id << 32 | entry index of every item waiting on a non-terminal
+            int count = 0;
+            for(int e = 0; e < size; e++) {
+                int symbol = nextSymbols[items[e]];
+                if(symbol < 0 && symbol != COMPLETE)
+                    pairs[count++] = (long) ~symbol << 32 | e;
+            }
+            Arrays.sort(pairs, 0, count);
+            keys = new int[count];
+            starts = new int[count + 1];
+            waiting = new int[count];
+            int distinct = 0;
+            for(int p = 0; p < count; p++) {
+                int id = (int) (pairs[p] >>> 32);
+                if(distinct == 0 || keys[distinct - 1] != id) {
+                    keys[distinct] = id;
+                    starts[distinct++] = p;
+                }
+                waiting[p] = (int) pairs[p];
+            }
+            keys = Arrays.copyOf(keys, distinct);
+            starts = Arrays.copyOf(starts, distinct + 1);
+            starts[distinct] = count;
+            leo = new long[distinct];
+            Arrays.fill(leo, UNKNOWN);
+        }
+
+        /* The key of the non-terminal in the index, or -1 if nothing waits on it */
+        int find(int id) {
+            int key = Arrays.binarySearch(keys, id);
+            return key < 0 ? -1 : key;
+        }
+
+    }
+
+}
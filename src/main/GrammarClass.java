@@ -0,0 +1,18 @@
+package main;
+
+/* The most specific class a CFG falls into, which decides the cheapest engine that can check its membership exactly */
+public enum GrammarClass {
+
+    /* Every production is a string of terminals followed by at most one non-terminal, so the language is regular and a DFA checks it in linear time */
+    RIGHT_LINEAR,
+
+    /* Every production is at most one non-terminal followed by a string of terminals - also regular */
+    LEFT_LINEAR,
+
+    /* One symbol of lookahead always picks the production to expand, so a table-driven LL(1) parser checks it in linear time */
+    LL1,
+
+    /* None of the above, so membership needs CYK */
+    GENERAL
+
+}
@@ -0,0 +1,197 @@
+package main;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+/* Reads and writes compiled grammars in a compact binary form, so a grammar only has to be simplified, converted to CNF form and analysed once - loading one just maps the file and rebuilds the rule tables, taking everything worked out from them as stored (apart from the left ancestors, which CompiledGrammar works out on first use) */
+public final class GrammarFile {
+
+    /* "CFGB" - the file is laid out (big-endian) as this, the version, the source hash (a long), the start id, the flags (1 for a token mode grammar), the non-terminal names, the terminal names, the unary rules as (terminal, head) pairs and the binary rules as (head, left, right) triples, each list preceded by its count and each name stored as a byte length and UTF-8 bytes. Then come the grammar's fingerprint, the productive non-terminals (as a bitset of longs over the non-terminals), the filter's minimum and maximum lengths, its first and last terminals (as bitsets over the terminals) and its required terminals as a count of (terminal, count) pairs, then a CRC32 of everything before it */
+    public static final int MAGIC = 0x43464742;
+
+    public static final int VERSION = 4;
+
+    /* The flag set for grammars whose inputs are whitespace separated tokens */
+    private static final int TOKEN_MODE = 1;
+
+    private GrammarFile() {
+    }
+
+    /* Write the grammar to the given file, recording the hash of the grammar source it was compiled from. The file is written next to the target and moved over it, so readers never see a partly written grammar */
+    public static void write(CompiledGrammar grammar, long sourceHash, Path file) throws IOException {
+        int unaryCount = 0;
+        for(int t = 0; t < grammar.getTerminalCount(); t++)
+            unaryCount += grammar.getTerminalNonTerminals(t).length;
+        byte[][] nonTerminalNames = new byte[grammar.getNonTerminalCount()][], terminalNames = new byte[grammar.getTerminalCount()][];
+        MembershipFilter filter = grammar.getFilter();
+        int words = grammar.getProductive().length, terminalWords = filter.getFirst().length, required = filter.getRequiredTerminals().length;
+        long size = 4 + 4 + 8 + 4 + 4 + 4 + 4 + 4 * (1 + 2L * unaryCount + 1 + 3L * grammar.getBinaryHeads().length) // header, name counts and rule tables
+                + 8 + 8L * words + 4 + 4 + 8 * 2 * terminalWords + 4 + 8L * required + 4; // analysis and checksum
+        for(int id = 0; id < nonTerminalNames.length; id++)
+            size += 4 + (nonTerminalNames[id] = grammar.getNonTerminalName(id).getBytes(StandardCharsets.UTF_8)).length;
+        for(int t = 0; t < terminalNames.length; t++)
+            size += 4 + (terminalNames[t] = grammar.getTerminalName(t).getBytes(StandardCharsets.UTF_8)).length;
+
+        if(size > Integer.MAX_VALUE)
+            throw new RuntimeException("Grammar is too large to write (" + size + " bytes).");
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(sourceHash).putInt(grammar.getStartId()).putInt(grammar.getTokenizer().isTokenMode() ? TOKEN_MODE : 0);
+        putNames(buffer, nonTerminalNames);
+        putNames(buffer, terminalNames);
+        buffer.putInt(unaryCount);
+        for(int t = 0; t < grammar.getTerminalCount(); t++)
+            for(int head : grammar.getTerminalNonTerminals(t))
+                buffer.putInt(t).putInt(head);
+        int[] heads = grammar.getBinaryHeads(), lefts = grammar.getBinaryLefts(), rights = grammar.getBinaryRights();
+        buffer.putInt(heads.length);
+        for(int r = 0; r < heads.length; r++)
+            buffer.putInt(heads[r]).putInt(lefts[r]).putInt(rights[r]);
+        buffer.putLong(grammar.getFingerprint());
+        putBits(buffer, grammar.getProductive());
+        buffer.putInt(filter.getMinLength()).putInt(filter.getMaxLength());
+        putBits(buffer, filter.getFirst());
+        putBits(buffer, filter.getLast());
+        buffer.putInt(required);
+        for(int i = 0; i < required; i++)
+            buffer.putInt(filter.getRequiredTerminals()[i]).putInt(filter.getRequiredCounts()[i]);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+
+        Path absolute = file.toAbsolutePath();
+        Path temporary = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        try {
+            Files.write(temporary, buffer.array());
+            Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /* Load a grammar written by write, checking its format and checksum - nothing is analysed, so this costs about as much as reading the rule tables */
+    public static CompiledGrammar read(Path file) throws IOException {
+        ByteBuffer buffer = map(file);
+        int checksum = buffer.getInt(buffer.limit() - 4);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().limit(buffer.limit() - 4));
+        if((int) crc.getValue() != checksum)
+            throw new RuntimeException("Grammar file " + file + " is corrupt (checksum mismatch).");
+        buffer.position(8 + 8); // skip the header read by map
+        int startId = buffer.getInt(), flags = buffer.getInt();
+        String[] nonTerminalNames = getNames(buffer);
+        String[] terminalNames = getNames(buffer);
+        int[] unaryTerminals = new int[getCount(buffer, 8)], unaryHeads = new int[unaryTerminals.length];
+        for(int r = 0; r < unaryTerminals.length; r++) {
+            unaryTerminals[r] = getId(buffer, terminalNames.length);
+            unaryHeads[r] = getId(buffer, nonTerminalNames.length);
+        }
+        int[] binaryHeads = new int[getCount(buffer, 12)], binaryLefts = new int[binaryHeads.length], binaryRights = new int[binaryHeads.length];
+        for(int r = 0; r < binaryHeads.length; r++) {
+            binaryHeads[r] = getId(buffer, nonTerminalNames.length);
+            binaryLefts[r] = getId(buffer, nonTerminalNames.length);
+            binaryRights[r] = getId(buffer, nonTerminalNames.length);
+        }
+        int words = Math.max(1, (nonTerminalNames.length + 63) >>> 6), terminalWords = Math.max(1, (terminalNames.length + 63) >>> 6);
+        long fingerprint = buffer.getLong();
+        long[] productive = getBits(buffer, words);
+        int minLength = buffer.getInt(), maxLength = buffer.getInt();
+        long[] first = getBits(buffer, terminalWords), last = getBits(buffer, terminalWords);
+        int[] requiredTerminals = new int[getCount(buffer, 8)], requiredCounts = new int[requiredTerminals.length];
+        for(int i = 0; i < requiredTerminals.length; i++) {
+            requiredTerminals[i] = getId(buffer, terminalNames.length);
+            if((requiredCounts[i] = buffer.getInt()) < 1)
+                throw new RuntimeException("Grammar file " + file + " is malformed.");
+        }
+        if(startId < -1 || startId >= nonTerminalNames.length || (flags & ~TOKEN_MODE) != 0 || minLength < 1 || maxLength < 0 || buffer.remaining() != 4)
+            throw new RuntimeException("Grammar file " + file + " is malformed.");
+        MembershipFilter filter = new MembershipFilter(terminalNames.length, minLength, maxLength, first, last, requiredTerminals, requiredCounts);
+        return new CompiledGrammar(nonTerminalNames, startId, terminalNames, (flags & TOKEN_MODE) != 0, unaryTerminals, unaryHeads, binaryHeads, binaryLefts, binaryRights, productive, filter, fingerprint);
+    }
+
+    /* The hash of the grammar source recorded in the given file, without loading the rest of it */
+    public static long readSourceHash(Path file) throws IOException {
+        return map(file).getLong(8);
+    }
+
+    /* A 64-bit hash of a grammar source file's contents, for telling whether a compiled grammar is still up to date */
+    public static long hash(Path source) throws IOException {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(source));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch(NoSuchAlgorithmException e) {
+            throw new RuntimeException(e); // every Java platform is required to support SHA-256
+        }
+    }
+
+    /* Map the file read-only and check its magic and version - the mapping stays valid after the channel is closed */
+    private static ByteBuffer map(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if(channel.size() < 5 * 4 + 8 + 4 || channel.size() > Integer.MAX_VALUE)
+                throw new RuntimeException("Grammar file " + file + " is malformed.");
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if(buffer.getInt(0) != MAGIC)
+            throw new RuntimeException(file + " is not a compiled grammar file.");
+        if(buffer.getInt(4) != VERSION)
+            throw new RuntimeException("Grammar file " + file + " has version " + buffer.getInt(4) + ", but only version " + VERSION + " is supported.");
+        return buffer;
+    }
+
+    private static void putNames(ByteBuffer buffer, byte[][] names) {
+        buffer.putInt(names.length);
+        for(byte[] name : names)
+            buffer.putInt(name.length).put(name);
+    }
+
+    private static void putBits(ByteBuffer buffer, long[] bits) {
+        for(long word : bits)
+            buffer.putLong(word);
+    }
+
+    /* Read a bitset of the given number of longs, which the rule tables before it fix, so it has no count of its own */
+    private static long[] getBits(ByteBuffer buffer, int words) {
+        if(8L * words > buffer.remaining())
+            throw new RuntimeException("Compiled grammar is truncated.");
+        long[] bits = new long[words];
+        buffer.asLongBuffer().get(bits);
+        buffer.position(buffer.position() + 8 * words);
+        return bits;
+    }
+
+    private static String[] getNames(ByteBuffer buffer) {
+        String[] names = new String[getCount(buffer, 4)];
+        for(int i = 0; i < names.length; i++) {
+            byte[] name = new byte[getCount(buffer, 1)];
+            buffer.get(name);
+            names[i] = new String(name, StandardCharsets.UTF_8);
+        }
+        return names;
+    }
+
+    /* Read a count, checking that the buffer has room for that many entries of the given size so a bad count can't cause a huge allocation */
+    private static int getCount(ByteBuffer buffer, int entryBytes) {
+        int count = buffer.getInt();
+        if(count < 0 || (long) count * entryBytes > buffer.remaining())
+            throw new RuntimeException("Compiled grammar has an invalid count: " + count + ".");
+        return count;
+    }
+
+    private static int getId(ByteBuffer buffer, int limit) {
+        int id = buffer.getInt();
+        if(id < 0 || id >= limit)
+            throw new RuntimeException("Compiled grammar refers to a missing symbol: " + id + ".");
+        return id;
+    }
+
+}
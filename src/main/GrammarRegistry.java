@@ -0,0 +1,74 @@
+package main;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+
+/* Named grammars that can be loaded, reloaded and dropped while checks are running - a reload builds the new snapshot first and then swaps it in, so lookups never block and never see a half-converted grammar */
+public class GrammarRegistry implements AutoCloseable {
+
+    private final ConcurrentMap<String, GrammarSnapshot> grammars;
+
+    private final MembershipOptions options;
+
+    /* Polls the grammar files for changes, or null until watch is called */
+    private ScheduledExecutorService watcher;
+
+    public GrammarRegistry(MembershipOptions options) {
+        this.options = options;
+        grammars = new ConcurrentHashMap<>();
+    }
+
+    /* Load (or reload) the grammar file under the given name, returning the new snapshot */
+    public GrammarSnapshot load(String name, Path source) throws IOException {
+        GrammarSnapshot snapshot = GrammarSnapshot.load(name, source, options);
+        grammars.put(name, snapshot);
+        return snapshot;
+    }
+
+    /* The current snapshot of the grammar, or null if there's none by that name */
+    public GrammarSnapshot get(String name) {
+        return grammars.get(name);
+    }
+
+    public boolean drop(String name) {
+        return grammars.remove(name) != null;
+    }
+
+    public SortedSet<String> getNames() {
+        return new TreeSet<>(grammars.keySet());
+    }
+
+    /* Reload every grammar whose file has changed since it was loaded, returning their names - a file that can't be read or converted keeps its old snapshot */
+    public List<String> refresh() {
+        List<String> reloaded = new ArrayList<>();
+        for(GrammarSnapshot snapshot : grammars.values())
+            try {
+                if(GrammarFile.hash(snapshot.getSource()) != snapshot.getSourceHash() && grammars.replace(snapshot.getName(), snapshot, GrammarSnapshot.load(snapshot.getName(), snapshot.getSource(), options)))
+                    reloaded.add(snapshot.getName()); // not replaced if it was loaded or dropped in the meantime
+            } catch(IOException | RuntimeException e) {
+                System.err.println("Couldn't reload grammar " + snapshot.getName() + " from " + snapshot.getSource() + ": " + e.getMessage());
+            }
+        return reloaded;
+    }
+
+    /* Refresh every given number of milliseconds on a background thread, until the registry is closed */
+    public synchronized void watch(long intervalMillis) {
+        if(watcher != null)
+            throw new RuntimeException("The registry is already being watched.");
+        watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "grammar-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watcher.scheduleWithFixedDelay(this::refresh, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if(watcher != null)
+            watcher.shutdownNow();
+    }
+
+}
@@ -0,0 +1,52 @@
+package main;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/* An immutable, converted grammar loaded from a grammar file under a name - checks hold on to the snapshot they started with, so a reload never changes a check that's already running */
+public final class GrammarSnapshot {
+
+    private final String name;
+
+    private final Path source;
+
+    /* The hash of the source file's contents when it was read, for telling whether it has changed since */
+    private final long sourceHash;
+
+    private final MembershipRouter router;
+
+    private GrammarSnapshot(String name, Path source, long sourceHash, MembershipRouter router) {
+        this.name = name;
+        this.source = source;
+        this.sourceHash = sourceHash;
+        this.router = router;
+    }
+
+    /* Read the grammar file, classify it and convert it to CNF form, checking inputs with the given options */
+    public static GrammarSnapshot load(String name, Path source, MembershipOptions options) throws IOException {
+        long hash = GrammarFile.hash(source); // hashed first, so a file changed while it's being read is reloaded again later
+        CFG cfg = Main.readGrammar(source.toFile());
+        return new GrammarSnapshot(name, source, hash, new MembershipRouter(cfg, options));
+    }
+
+    public boolean recognize(String input) {
+        return router.recognize(input);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Path getSource() {
+        return source;
+    }
+
+    public long getSourceHash() {
+        return sourceHash;
+    }
+
+    public GrammarClass getGrammarClass() {
+        return router.getGrammarClass();
+    }
+
+}
@@ -0,0 +1,67 @@
+package main;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/* A lock-free histogram of non-negative values with a bucket per power of two, so recording is one add and quantiles are exact to within a factor of two */
+public class Histogram {
+
+    /* Bucket b counts the values with b significant bits, i.e. 0 in bucket 0 and [2^(b-1), 2^b) in bucket b */
+    private final LongAdder[] buckets;
+
+    private final LongAdder sum;
+
+    private final LongAccumulator max;
+
+    public Histogram() {
+        buckets = new LongAdder[65];
+        for(int b = 0; b < buckets.length; b++)
+            buckets[b] = new LongAdder();
+        sum = new LongAdder();
+        max = new LongAccumulator(Math::max, 0);
+    }
+
+    public void record(long value) {
+        value = Math.max(0, value);
+        buckets[64 - Long.numberOfLeadingZeros(value)].increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for(LongAdder bucket : buckets)
+            count += bucket.sum();
+        return count;
+    }
+
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) sum.sum() / count;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /* An upper bound on the given quantile (from 0 to 1) - the top of the bucket it falls in, capped at the largest value recorded */
+    public long getQuantile(double quantile) {
+        long count = getCount(), target = (long) Math.ceil(quantile * count), seen = 0;
+        if(count == 0)
+            return 0;
+        for(int b = 0; b < buckets.length; b++) {
+            seen += buckets[b].sum();
+            if(seen >= Math.max(1, target))
+                return Math.min(b == 0 ? 0 : b == 64 ? Long.MAX_VALUE : (1L << b) - 1, getMax());
+        }
+        return getMax();
+    }
+
+    public void reset() {
+        for(LongAdder bucket : buckets)
+            bucket.reset();
+        sum.reset();
+        max.reset();
+    }
+
+}
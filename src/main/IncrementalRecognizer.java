@@ -0,0 +1,131 @@
+package main;
+
+import java.util.*;
+
+/* Fills a CYK chart one column (span end position) at a time, so appending a symbol only fills the cells ending at it instead of the whole triangle.
+   Alongside the chart it keeps, for each start position, the non-terminals that derive some string the rest of the input is a prefix of, which tells whether the input can still be extended to a member */
+public class IncrementalRecognizer {
+
+    private final CompiledGrammar grammar;
+
+    private final int words;
+
+    private int[] tokens;
+
+    private int length;
+
+    /* columns[j] holds the cells (i, j) for every start i < j, each cell being words long at offset i * words */
+    private long[][] columns;
+
+    /* prefixes[j] holds, for every start i < j, the non-terminals deriving some string that input[i..j) is a prefix of, laid out like columns[j] */
+    private long[][] prefixes;
+
+    public IncrementalRecognizer(CompiledGrammar grammar) {
+        this.grammar = grammar;
+        words = grammar.getWords();
+        tokens = new int[16];
+        columns = new long[17][];
+        prefixes = new long[17][];
+    }
+
+    public void append(String symbols) {
+        for(int token : grammar.tokenize(symbols))
+            append(token);
+    }
+
+    /* Append one symbol, given as a dense terminal index (or -1 for a symbol not in the grammar), filling the column of cells ending after it */
+    public void append(int token) {
+        if(length == tokens.length) {
+            tokens = Arrays.copyOf(tokens, length * 2);
+            columns = Arrays.copyOf(columns, length * 2 + 1);
+            prefixes = Arrays.copyOf(prefixes, length * 2 + 1);
+        }
+        tokens[length++] = token;
+        int j = length;
+        long[] column = new long[j * words], prefix = new long[j * words];
+        long[] left = new long[words], right = new long[words], cell = new long[words];
+        grammar.loadTerminal(token, cell);
+        System.arraycopy(cell, 0, column, (j - 1) * words, words);
+        grammar.closeLeftAncestors(cell);
+        System.arraycopy(cell, 0, prefix, (j - 1) * words, words);
+        for(int i = j - 2; i >= 0; i--) { // cells (k, j) for k > i are filled before (i, j) needs them
+            Arrays.fill(cell, 0);
+            for(int k = i + 1; k < j; k++) {
+                System.arraycopy(columns[k], i * words, left, 0, words);
+                System.arraycopy(column, k * words, right, 0, words);
+                grammar.combine(left, right, cell);
+            }
+            System.arraycopy(cell, 0, column, i * words, words);
+            for(int k = i + 1; k < j; k++) { // input[i..k) derived by a left child followed by a prefix of the right child's strings
+                System.arraycopy(columns[k], i * words, left, 0, words);
+                System.arraycopy(prefix, k * words, right, 0, words);
+                grammar.combine(left, right, cell);
+            }
+            grammar.closeLeftAncestors(cell);
+            System.arraycopy(cell, 0, prefix, i * words, words);
+        }
+        columns[j] = column;
+        prefixes[j] = prefix;
+    }
+
+    /* Drop every symbol after the given length, keeping the columns before it */
+    public void truncate(int length) {
+        for(int j = length + 1; j <= this.length; j++) {
+            columns[j] = null;
+            prefixes[j] = null;
+        }
+        this.length = Math.min(this.length, length);
+    }
+
+    /* Change the input to the given one, only refilling the columns after the prefix it shares with the current input */
+    public void reset(String input) {
+        reset(grammar.tokenize(input));
+    }
+
+    public void reset(int[] input) {
+        int shared = 0;
+        while(shared < length && shared < input.length && tokens[shared] == input[shared])
+            shared++;
+        truncate(shared);
+        for(int i = shared; i < input.length; i++)
+            append(input[i]);
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /* Check if the start symbol derives the current input */
+    public boolean isMember() {
+        return length > 0 && grammar.getStartId() >= 0 && CompiledGrammar.get(columns[length], grammar.getStartId());
+    }
+
+    /* Check if the current input is a prefix of some member, i.e. if it could still be extended to one */
+    public boolean isViablePrefix() {
+        int start = grammar.getStartId();
+        if(start < 0)
+            return false;
+        if(length == 0)
+            return grammar.isProductive(start);
+        return CompiledGrammar.get(prefixes[length], start);
+    }
+
+    /* Check every input, visiting them in sorted order so each one reuses the columns of the prefix it shares with the one before it - the order of a walk over their trie */
+    public static boolean[] checkAll(CompiledGrammar grammar, List<String> inputs) {
+        int[][] tokens = new int[inputs.size()][];
+        Integer[] order = new Integer[inputs.size()];
+        for(int i = 0; i < tokens.length; i++) {
+            tokens[i] = grammar.tokenize(inputs.get(i));
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Arrays.compare(tokens[a], tokens[b]));
+        IncrementalRecognizer recognizer = new IncrementalRecognizer(grammar);
+        boolean[] results = new boolean[tokens.length];
+        for(int i : order) {
+            recognizer.reset(tokens[i]);
+            results[i] = recognizer.isMember();
+        }
+        return results;
+    }
+
+}
@@ -0,0 +1,179 @@
+package main;
+
+import java.util.*;
+
+/* A table-driven LL(1) parser for a CFG (before it's converted to CNF form), over the dense terminal indexes of the grammar's compiled form - each step either matches a terminal or expands the non-terminal on top of the stack by the one production the next symbol predicts, so an input is checked in linear time */
+public final class LL1Recognizer {
+
+    /* The number of lookahead columns - every terminal of the compiled grammar, then any terminals only the CFG has, then the end of the input */
+    private final int columns;
+
+    /* The production to expand for each non-terminal id and lookahead, at id * columns + lookahead, or -1 for none */
+    private final int[] table;
+
+    /* The symbols of each production, with terminals as their index and non-terminals as ~id */
+    private final int[][] productions;
+
+    private final int startId;
+
+    /* Build the parser of the given LL(1) CFG, reading the terminals of its compiled form */
+    public LL1Recognizer(CFG source, CompiledGrammar grammar) {
+        Map<Integer, Integer> terminalIndexes = new HashMap<>();
+        int extra = grammar.getTerminalCount();
+        for(int symbol : source.getSymbols())
+            if(source.isTerminal(symbol)) {
+                int index = grammar.getTerminalIndex(source.getSymbolTable().getName(symbol));
+                terminalIndexes.put(symbol, index >= 0 ? index : extra++); // a terminal the compiled grammar doesn't have is never read, but still has to be told apart
+            }
+        Analysis analysis = new Analysis(source, terminalIndexes, extra);
+        if(analysis.table == null)
+            throw new RuntimeException("The grammar isn't LL(1).");
+        columns = analysis.columns;
+        table = analysis.table;
+        productions = analysis.productions;
+        startId = analysis.startId;
+    }
+
+    /* Check if one symbol of lookahead always picks the production to expand, i.e. the LL(1) table has no conflicts */
+    public static boolean isLL1(CFG source) {
+        Map<Integer, Integer> terminalIndexes = new HashMap<>();
+        for(int symbol : source.getSymbols())
+            if(source.isTerminal(symbol))
+                terminalIndexes.put(symbol, terminalIndexes.size());
+        return new Analysis(source, terminalIndexes, terminalIndexes.size()).table != null;
+    }
+
+    /* Check the input, given as dense terminal indexes (-1 for a symbol not in the grammar) */
+    public boolean recognize(int[] tokens) {
+        if(startId < 0)
+            return false;
+        int[] stack = new int[16];
+        int top = 0, position = 0;
+        stack[top++] = ~startId;
+        while(top > 0) {
+            int symbol = stack[--top];
+            int lookahead = position < tokens.length ? tokens[position] : columns - 1;
+            if(lookahead < 0)
+                return false;
+            if(symbol >= 0) { // a terminal, which has to be the next symbol of the input
+                if(symbol != lookahead)
+                    return false;
+                position++;
+                continue;
+            }
+            int production = table[~symbol * columns + lookahead];
+            if(production < 0)
+                return false;
+            int[] symbols = productions[production];
+            if(top + symbols.length > stack.length)
+                stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + symbols.length));
+            for(int i = symbols.length - 1; i >= 0; i--) // pushed in reverse, so the first symbol is expanded or matched next
+                stack[top++] = symbols[i];
+        }
+        return position == tokens.length;
+    }
+
+    /* The nullable, FIRST and FOLLOW sets of a CFG and the LL(1) table built from them */
+    private static final class Analysis {
+
+        private final int columns;
+
+        private final int[][] productions;
+
+        private final int startId;
+
+        /* null if two productions of a non-terminal are predicted by the same lookahead */
+        private int[] table;
+
+        Analysis(CFG source, Map<Integer, Integer> terminalIndexes, int terminalCount) {
+            columns = terminalCount + 1;
+            Map<Integer, Integer> ids = new HashMap<>();
+            for(NonTerminal n : source.getNonTerminals())
+                ids.put(n.getSymbol(), ids.size());
+            List<int[]> encoded = new ArrayList<>();
+            List<Integer> heads = new ArrayList<>();
+            for(NonTerminal n : source.getNonTerminals())
+                for(Production p : n.getProductionList()) {
+                    int[] symbols = new int[p.length()];
+                    for(int i = 0; i < symbols.length; i++) {
+                        int symbol = p.getSymbols()[i];
+                        symbols[i] = source.isTerminal(symbol) ? terminalIndexes.get(symbol) : ~ids.computeIfAbsent(symbol, k -> ids.size()); // a non-terminal without productions gets an id with no table entries
+                    }
+                    encoded.add(symbols);
+                    heads.add(ids.get(n.getSymbol()));
+                }
+            productions = encoded.toArray(new int[0][]);
+            startId = ids.getOrDefault(source.getStartSymbol(), -1);
+
+            int count = ids.size();
+            boolean[] nullable = new boolean[count];
+            BitSet[] first = new BitSet[count], follow = new BitSet[count];
+            for(int id = 0; id < count; id++) {
+                first[id] = new BitSet();
+                follow[id] = new BitSet();
+            }
+            if(startId >= 0)
+                follow[startId].set(terminalCount); // the end of the input follows the start symbol
+            for(boolean changed = true; changed; ) { // nullable and FIRST sets, until nothing changes
+                changed = false;
+                for(int r = 0; r < productions.length; r++) {
+                    int head = heads.get(r);
+                    BitSet before = (BitSet) first[head].clone();
+                    boolean derivesLambda = firstOf(productions[r], 0, nullable, first, first[head]);
+                    if(derivesLambda && !nullable[head]) {
+                        nullable[head] = true;
+                        changed = true;
+                    }
+                    changed |= !first[head].equals(before);
+                }
+            }
+            for(boolean changed = true; changed; ) { // FOLLOW sets - whatever can start the rest of a production follows each non-terminal in it, and if the rest can vanish so does whatever follows the head
+                changed = false;
+                for(int r = 0; r < productions.length; r++) {
+                    int[] symbols = productions[r];
+                    for(int i = 0; i < symbols.length; i++) {
+                        if(symbols[i] >= 0)
+                            continue;
+                        BitSet target = follow[~symbols[i]];
+                        int before = target.cardinality();
+                        if(firstOf(symbols, i + 1, nullable, first, target))
+                            target.or(follow[heads.get(r)]);
+                        changed |= target.cardinality() != before;
+                    }
+                }
+            }
+
+            table = new int[count * columns];
+            Arrays.fill(table, -1);
+            for(int r = 0; r < productions.length; r++) {
+                BitSet predicts = new BitSet();
+                if(firstOf(productions[r], 0, nullable, first, predicts))
+                    predicts.or(follow[heads.get(r)]);
+                for(int t = predicts.nextSetBit(0); t >= 0; t = predicts.nextSetBit(t + 1)) {
+                    int cell = heads.get(r) * columns + t;
+                    if(table[cell] >= 0) { // a conflict
+                        table = null;
+                        return;
+                    }
+                    table[cell] = r;
+                }
+            }
+        }
+
+        /* Add the FIRST set of the symbols from the given index on to the result, returning whether they can all vanish */
+        private static boolean firstOf(int[] symbols, int from, boolean[] nullable, BitSet[] first, BitSet result) {
+            for(int i = from; i < symbols.length; i++) {
+                if(symbols[i] >= 0) {
+                    result.set(symbols[i]);
+                    return false;
+                }
+                result.or(first[~symbols[i]]);
+                if(!nullable[~symbols[i]])
+                    return false;
+            }
+            return true;
+        }
+
+    }
+
+}
@@ -1,38 +1,32 @@
 package main;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.Scanner;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
 
 public class Main {
 
     public static final char LAMBDA = 'λ', ARROW = '→';
 
-    public static void main(String[] args) throws FileNotFoundException {
-        File file = new File("./data/input.txt");
-        Scanner scanner = new Scanner(file);
-
-        CFG cfg = new CFG();
-        while(scanner.hasNext()) {
-            String line = scanner.nextLine();
-            char symbol = line.charAt(0);
-            NonTerminal nonTerminal = cfg.addNonTerminal(symbol); // takes care of any productions under the same non-terminal symbol
-            int arrowIndex = line.indexOf(ARROW); // index of the special arrow, but searches for -> instead if not found
-            String[] productions = line.substring(arrowIndex == -1 ? line.indexOf("->") + 2 : arrowIndex + 1).split("\\|"); // split's everything after the arrow by the vertical bar
-            for(String production : productions) {
-                production = production.trim();
-                nonTerminal.addProduction(production);
-                for(char c : production.toCharArray())
-                    if(Character.isDigit(c) || !Character.isUpperCase(c)) // terminals are either lowercase letters or any number
-                        cfg.addTerminal(c);
-            }
+    public static void main(String[] args) throws IOException {
+        if(args.length > 0) {
+            runCommand(args);
+            return;
         }
+        CFG cfg = readGrammar(new File("./data/input.txt"));
         System.out.println("Original: \n" + cfg.toString());
+        CFG original = cfg.copy(); // classified before conversion, which turns every grammar into a general one
         cfg.convertToCNF('Z');
         System.out.println("CNF Form: \n" + cfg.toString());
 
         String input;
-        scanner = new Scanner(System.in);
+        Scanner scanner = new Scanner(System.in);
+        MembershipRouter router = new MembershipRouter(original, cfg.compile(), cfg.getOptions());
+        System.out.println("Grammar class: " + router.getGrammarClass() + "\n");
+        IncrementalRecognizer recognizer = new IncrementalRecognizer(cfg.compile()); // only used to tell non-members that are a viable prefix - consecutive inputs often share a prefix, so only the columns after it are refilled
 
         while(true) {
 
@@ -44,8 +38,164 @@ public class Main {
                 break;
             }
 
-            System.out.println("-> Is \"" + input + "\" a member of the given language?: " + (cfg.runCYK(input) ? "Yes" : "No") + "\n");
+            boolean member = router.recognize(input);
+            if(!member)
+                recognizer.reset(input);
+            System.out.println("-> Is \"" + input + "\" a member of the given language?: " + (member ? "Yes" : recognizer.isViablePrefix() ? "No (but it can be extended to one)" : "No") + "\n");
+        }
+        scanner.close();
+    }
+
+    /* The command line modes for batch jobs, which skip the interactive output:
+       compile <grammar> <compiled> - convert the grammar to CNF form once and write it to the compiled grammar file
+       check <compiled> [<grammar>] - check every line of standard input against the compiled grammar, printing Yes or No and the line, after recompiling it if the grammar is given and has changed since
+       server (--port <n> | --socket <file>) [--workers <n>] [--queue <n>] [--reload <ms>] [--time-limit <ms>] [--load-dir <dir>] <name>=<grammar>... - serve the named grammars until killed, as described in MembershipServer
+       client (--port <n> | --socket <file>) <name> - check every line of standard input against a grammar on a running server, printing the same output as check */
+    private static void runCommand(String[] args) throws IOException {
+        if(args[0].equals("compile") && args.length == 3)
+            compileGrammar(Paths.get(args[1]), Paths.get(args[2]));
+        else if(args[0].equals("check") && (args.length == 2 || args.length == 3)) {
+            Path compiled = Paths.get(args[1]);
+            if(args.length == 3 && !isUpToDate(compiled, Paths.get(args[2])))
+                compileGrammar(Paths.get(args[2]), compiled);
+            CompiledGrammar grammar = GrammarFile.read(compiled);
+            PrintStream out = new PrintStream(new BufferedOutputStream(System.out), false, "UTF-8");
+            BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            new MembershipBatch(grammar, new MembershipOptions()).checkAll(reader.lines(), (input, member) -> out.println((member ? "Yes" : "No") + "\t" + input));
+            out.flush();
+        } else if(args[0].equals("server"))
+            runServer(args);
+        else if(args[0].equals("client") && args.length == 4 && (args[1].equals("--port") || args[1].equals("--socket")))
+            runClient(args);
+        else
+            throw new RuntimeException("Usage: compile <grammar> <compiled> | check <compiled> [<grammar>] | server (--port <n> | --socket <file>) [--workers <n>] [--queue <n>] [--reload <ms>] [--time-limit <ms>] [--load-dir <dir>] <name>=<grammar>... | client (--port <n> | --socket <file>) <name>");
+    }
+
+    private static void runServer(String[] args) throws IOException {
+        Map<String, String> flags = new HashMap<>();
+        Map<String, Path> grammars = new LinkedHashMap<>();
+        for(int i = 1; i < args.length; i++)
+            if(args[i].startsWith("--") && i + 1 < args.length)
+                flags.put(args[i], args[++i]);
+            else if(args[i].indexOf('=') > 0)
+                grammars.put(args[i].substring(0, args[i].indexOf('=')), Paths.get(args[i].substring(args[i].indexOf('=') + 1)));
+            else
+                throw new RuntimeException("Unexpected server argument: " + args[i]);
+        int workers = Integer.parseInt(flags.getOrDefault("--workers", Integer.toString(Runtime.getRuntime().availableProcessors())));
+        int queue = Integer.parseInt(flags.getOrDefault("--queue", Integer.toString(workers * 64)));
+        MembershipOptions options = new MembershipOptions().setTimeLimitMillis(Long.parseLong(flags.getOrDefault("--time-limit", "0")));
+        GrammarRegistry registry = new GrammarRegistry(options);
+        for(Map.Entry<String, Path> grammar : grammars.entrySet())
+            registry.load(grammar.getKey(), grammar.getValue());
+        registry.watch(Long.parseLong(flags.getOrDefault("--reload", "2000")));
+        MembershipServer server;
+        if(flags.containsKey("--socket"))
+            server = new MembershipServer(registry, Paths.get(flags.get("--socket")), workers, queue);
+        else if(flags.containsKey("--port"))
+            server = new MembershipServer(registry, Integer.parseInt(flags.get("--port")), workers, queue);
+        else
+            throw new RuntimeException("The server needs a --port or a --socket.");
+        if(flags.containsKey("--load-dir"))
+            server.setLoadDirectory(Paths.get(flags.get("--load-dir")));
+        System.err.println("Serving " + registry.getNames() + (server.getPort() >= 0 ? " on port " + server.getPort() : " on " + flags.get("--socket")));
+        try {
+            server.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            server.close();
+            registry.close();
+        }
+    }
+
+    private static void runClient(String[] args) throws IOException {
+        PrintStream out = new PrintStream(new BufferedOutputStream(System.out), false, "UTF-8");
+        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        try(MembershipClient client = args[1].equals("--port") ? new MembershipClient(Integer.parseInt(args[2])) : new MembershipClient(Paths.get(args[2]))) {
+            List<String> window = new ArrayList<>();
+            for(String line = reader.readLine(); line != null || !window.isEmpty(); line = line == null ? null : reader.readLine()) {
+                if(line != null)
+                    window.add(line);
+                if(window.size() == MembershipServer.MAX_PIPELINED || (line == null && !window.isEmpty())) { // sent a window at a time, so the client never holds all of standard input
+                    boolean[] results = client.checkAll(args[3], window);
+                    for(int i = 0; i < results.length; i++)
+                        out.println((results[i] ? "Yes" : "No") + "\t" + window.get(i));
+                    window.clear();
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /* Read the grammar, convert it to CNF form and write it in binary form along with the hash of the grammar file */
+    private static void compileGrammar(Path source, Path compiled) throws IOException {
+        CFG cfg = readGrammar(source.toFile());
+        cfg.convertToCNF(cfg.getNextUnusedSymbol(), null);
+        GrammarFile.write(cfg.compile(), GrammarFile.hash(source), compiled);
+    }
+
+    /* Check if the compiled grammar exists and was compiled from the grammar file's current contents (by the current format version) */
+    private static boolean isUpToDate(Path compiled, Path source) throws IOException {
+        if(!Files.exists(compiled))
+            return false;
+        try {
+            return GrammarFile.readSourceHash(compiled) == GrammarFile.hash(source);
+        } catch(RuntimeException e) { // an older version or a file that isn't a compiled grammar
+            return false;
+        }
+    }
+
+    /* Read a grammar with one non-terminal per line, written as "A -> x|y" (or with the special arrow). If every non-terminal name is a single character and no alternative has a space inside it, each character is a symbol, with uppercase letters being non-terminals and everything else a terminal. Otherwise symbols are separated by whitespace, and every symbol that doesn't appear on the left of an arrow is a terminal */
+    public static CFG readGrammar(File file) throws FileNotFoundException {
+        List<String> names = new ArrayList<>();
+        List<String[]> alternatives = new ArrayList<>();
+        Scanner scanner = new Scanner(file);
+        boolean tokens = false; // whether symbols are separated by whitespace rather than being single characters
+        for(int lineNumber = 1; scanner.hasNextLine(); lineNumber++) {
+            String line = scanner.nextLine();
+            if(line.trim().isEmpty())
+                continue;
+            int arrowIndex = line.indexOf(ARROW); // index of the special arrow, but searches for -> instead if not found
+            int arrowLength = arrowIndex == -1 ? 2 : 1;
+            if(arrowIndex == -1)
+                arrowIndex = line.indexOf("->");
+            if(arrowIndex == -1)
+                throw new RuntimeException("Missing arrow on line " + lineNumber + " of the grammar file."); // not the line itself, since the message can reach a server's clients
+            String name = line.substring(0, arrowIndex).trim();
+            String[] productions = line.substring(arrowIndex + arrowLength).split("\\|"); // split's everything after the arrow by the vertical bar
+            for(int i = 0; i < productions.length; i++) {
+                productions[i] = productions[i].trim();
+                tokens |= productions[i].matches(".*\\s.*");
+            }
+            tokens |= name.length() != 1;
+            names.add(name);
+            alternatives.add(productions);
         }
         scanner.close();
+
+        CFG cfg = tokens && !names.isEmpty() ? new CFG(names.get(0)) : new CFG(); // with named symbols the first non-terminal is the start, otherwise it's S
+        Set<String> nonTerminalNames = new HashSet<>(names);
+        for(int i = 0; i < names.size(); i++) {
+            NonTerminal nonTerminal = cfg.addNonTerminal(names.get(i)); // takes care of any productions under the same non-terminal symbol
+            for(String production : alternatives.get(i)) {
+                if(!tokens) {
+                    nonTerminal.addProduction(production);
+                    for(char c : production.toCharArray())
+                        if(c != LAMBDA && (Character.isDigit(c) || !Character.isUpperCase(c))) // terminals are either lowercase letters or any number
+                            cfg.addTerminal(c);
+                    continue;
+                }
+                List<Integer> symbols = new ArrayList<>();
+                for(String token : production.split("\\s+"))
+                    if(!token.isEmpty() && !token.equals(Character.toString(LAMBDA))) {
+                        if(!nonTerminalNames.contains(token))
+                            cfg.addTerminal(token);
+                        symbols.add(cfg.getSymbolTable().intern(token));
+                    }
+                nonTerminal.addProduction(symbols.stream().mapToInt(Integer::intValue).toArray());
+            }
+        }
+        cfg.setTokenMode(tokens);
+        return cfg;
     }
 }
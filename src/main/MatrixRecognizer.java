@@ -0,0 +1,132 @@
+package main;
+
+import java.util.Arrays;
+
+/* Recognizes inputs by keeping each non-terminal as a bit-packed boolean matrix over (start, end) positions, by row and by column.
+   A cell's splits for a rule A -> BC are found by AND-ing B's row with C's column, 64 split points a word, instead of one split at a time like the chart fill.
+   This is still the cubic CYK fill, not a sub-cubic matrix product: O(n^3 |G| / 64) word operations over all cells, with O(n^2 / 16) bytes per matrix (about 65MB per matrix at
+   n = 32k, 600MB at 100k), so in practice it reaches inputs of a few thousand symbols in seconds rather than 100k */
+class MatrixRecognizer {
+
+    private final CompiledGrammar grammar;
+
+    private final int n;
+
+    /* The words in a full row or column of bits over the positions 0 to n */
+    private final int width;
+
+    /* rows[x] holds, for each start i, the bits of every end j where x derives input[i..j) - only stored for left children */
+    private final long[][] rows;
+
+    /* columns[x] holds, for each end j, the bits of every start i where x derives input[i..j) - only stored for right children */
+    private final long[][] columns;
+
+    /* The offset of each row and column in its array - both are stored as triangles, since a row never has bits before its start and a column never has bits after its end */
+    private final int[] rowOffsets, columnOffsets;
+
+    /* Whether the start symbol derives the whole input, set once the top cell is filled */
+    private boolean accepted;
+
+    /* The stats of the check, or null if it isn't being instrumented */
+    private MembershipStats stats;
+
+    MatrixRecognizer(CompiledGrammar grammar, int n) {
+        this.grammar = grammar;
+        this.n = n;
+        width = (n >>> 6) + 1;
+        rowOffsets = new int[n + 1];
+        columnOffsets = new int[n + 1];
+        long rowSize = 0, columnSize = 0;
+        for(int i = 0; i <= n; i++) {
+            rowOffsets[i] = (int) rowSize;
+            columnOffsets[i] = (int) columnSize;
+            rowSize += width - (i >>> 6);
+            columnSize += (i >>> 6) + 1;
+        }
+        if(Math.max(rowSize, columnSize) > Integer.MAX_VALUE - 8) // the largest array the JVM can allocate
+            throw new RuntimeException("An input of length " + n + " is too long for the matrix engine.");
+        rows = new long[grammar.getNonTerminalCount()][];
+        columns = new long[grammar.getNonTerminalCount()][];
+        for(int x = 0; x < grammar.getNonTerminalCount(); x++) {
+            if(grammar.isLeftChild(x))
+                rows[x] = new long[(int) rowSize];
+            if(grammar.isRightChild(x))
+                columns[x] = new long[(int) columnSize];
+        }
+    }
+
+    /* The estimated peak number of bytes of row and column matrices for an input of the given length */
+    static long estimateBytes(CompiledGrammar grammar, int n) {
+        long width = (n >>> 6) + 1, triangle = 0;
+        for(int i = 0; i <= n; i++)
+            triangle += width - (i >>> 6);
+        int matrices = 0;
+        for(int x = 0; x < grammar.getNonTerminalCount(); x++)
+            matrices += (grammar.isLeftChild(x) ? 1 : 0) + (grammar.isRightChild(x) ? 1 : 0);
+        return 8 * (triangle + 2) * matrices + 8L * (n + 1);
+    }
+
+    /* Check the input, recording what it did in the given stats unless they're null and stopping once the token (if it isn't null) is cancelled */
+    boolean recognize(int[] tokens, MembershipOptions options, CancellationToken token, MembershipStats stats) {
+        this.stats = stats;
+        long[] cell = new long[grammar.getWords()];
+        for(int s = 0; s < n; s++) {
+            grammar.loadTerminal(tokens[s], cell);
+            record(cell, s, s + 1);
+        }
+        if(stats != null)
+            stats.endUnary();
+        if(n == 1) // the bottom row is the whole input, so there are no rows above it to fill
+            accepted = CompiledGrammar.get(cell, grammar.getStartId());
+        else
+            SpanTask.fillTriangle(this::fill, n, options, token); // a cell only writes its own row and column, so cells of the same length can be filled in parallel
+        if(stats != null)
+            stats.endBinary();
+        return accepted;
+    }
+
+    /* Fill the cells of the given length from start from (inclusive) to start to (exclusive) */
+    private void fill(int length, int from, int to) {
+        int[] heads = grammar.getBinaryHeads(), lefts = grammar.getBinaryLefts(), rights = grammar.getBinaryRights();
+        long[] cell = new long[grammar.getWords()];
+        long applied = 0;
+        for(int i = from; i < to; i++) {
+            int j = i + length;
+            Arrays.fill(cell, 0);
+            for(int r = 0; r < heads.length; r++)
+                if(!CompiledGrammar.get(cell, heads[r]) && splits(lefts[r], rights[r], i, j)) {
+                    CompiledGrammar.set(cell, heads[r]);
+                    applied++;
+                }
+            if(length == n) // the only cell of this length is the whole input
+                accepted = CompiledGrammar.get(cell, grammar.getStartId());
+            else
+                record(cell, i, j);
+        }
+        if(stats != null)
+            stats.addCells(to - from, applied);
+    }
+
+    /* Check if some split point k has b deriving input[i..k) and c deriving input[k..j), by AND-ing b's row i with c's column j */
+    private boolean splits(int b, int c, int i, int j) {
+        long[] row = rows[b], column = columns[c];
+        int rowBase = rowOffsets[i] - (i >>> 6), columnBase = columnOffsets[j];
+        for(int w = (i + 1) >>> 6, last = (j - 1) >>> 6; w <= last; w++) // only shorter spans have been recorded, so no bits outside (i, j) can be set
+            if((row[rowBase + w] & column[columnBase + w]) != 0)
+                return true;
+        return false;
+    }
+
+    /* Record every non-terminal in the cell for input[i..j) in its row and column */
+    private void record(long[] cell, int i, int j) {
+        for(int w = 0; w < cell.length; w++)
+            for(long bits = cell[w]; bits != 0; bits &= bits - 1) {
+                int x = (w << 6) + Long.numberOfTrailingZeros(bits);
+                if(rows[x] != null)
+                    rows[x][rowOffsets[i] + (j >>> 6) - (i >>> 6)] |= 1L << j;
+                if(columns[x] != null)
+                    columns[x][columnOffsets[j] + (i >>> 6)] |= 1L << i;
+            }
+    }
+
+}
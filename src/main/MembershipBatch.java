@@ -0,0 +1,78 @@
+package main;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/* Checks many inputs against one compiled grammar in parallel on the options' pool, with each worker thread reusing one small chart for all of its short inputs */
+public class MembershipBatch {
+
+    /* The number of inputs handed to a worker at a time, so short inputs aren't each paying for a task */
+    static final int BLOCK_SIZE = 256;
+
+    /* The largest chart a worker keeps between inputs - a longer input gets a chart of its own that's dropped once it's checked, so one long input doesn't leave every worker holding its chart for as long as the pool lives */
+    static final long REUSE_LIMIT = 4L << 20;
+
+    private final CompiledGrammar grammar;
+
+    private final MembershipOptions options;
+
+    /* The packed chart each worker thread reuses for every input short enough to fit in REUSE_LIMIT */
+    private final ThreadLocal<PackedChart> charts;
+
+    public MembershipBatch(CompiledGrammar grammar, MembershipOptions options) {
+        this.grammar = grammar;
+        this.options = options;
+        charts = ThreadLocal.withInitial(() -> new PackedChart(grammar.getWords(), 0));
+    }
+
+    /* Check every input, returning the results in the same order as the inputs */
+    public boolean[] checkAll(List<String> inputs) {
+        boolean[] results = new boolean[inputs.size()];
+        List<ForkJoinTask<?>> blocks = new ArrayList<>();
+        for(int from = 0; from < inputs.size(); from += BLOCK_SIZE) {
+            int start = from, end = Math.min(from + BLOCK_SIZE, inputs.size());
+            blocks.add(options.getPool().submit(() -> {
+                PackedChart chart = charts.get();
+                for(int i = start; i < end; i++) {
+                    int[] tokens = grammar.tokenize(inputs.get(i));
+                    results[i] = grammar.recognize(tokens, options, PackedChart.estimateBytes(grammar, tokens.length) <= REUSE_LIMIT ? chart : null);
+                }
+            }));
+        }
+        for(ForkJoinTask<?> block : blocks)
+            block.join(); // rethrows the first failure, e.g. an input over the chart memory limit
+        return results;
+    }
+
+    /* Check every input, passing each input and its result to the consumer on the calling thread in input order - inputs are read a window at a time, so the iterator can be far larger than memory */
+    public void checkAll(Iterator<String> inputs, BiConsumer<String, Boolean> consumer) {
+        int windowSize = BLOCK_SIZE * Math.max(1, options.getPool().getParallelism()) * 2; // enough blocks to keep every worker busy
+        List<String> window = new ArrayList<>(windowSize);
+        while(inputs.hasNext()) {
+            window.clear();
+            while(inputs.hasNext() && window.size() < windowSize)
+                window.add(inputs.next());
+            boolean[] results = checkAll(window);
+            for(int i = 0; i < results.length; i++)
+                consumer.accept(window.get(i), results[i]);
+        }
+    }
+
+    public void checkAll(Stream<String> inputs, BiConsumer<String, Boolean> consumer) {
+        checkAll(inputs.iterator(), consumer);
+    }
+
+    /* Check every line of the given file as an input */
+    public void checkFile(Path file, BiConsumer<String, Boolean> consumer) throws IOException {
+        try(Stream<String> lines = Files.lines(file, StandardCharsets.UTF_8)) {
+            checkAll(lines, consumer);
+        }
+    }
+
+}
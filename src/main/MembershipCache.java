@@ -0,0 +1,334 @@
+package main;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/* A size-bounded cache of membership results, shared by every check made with options that hold it (and safe to share between threads and grammars).
+   It holds whole-input verdicts and, optionally, the chart cells of substrings at least spanThreshold long, which new charts are seeded from so a substring seen before isn't filled again.
+   Entries are keyed by the fingerprint of the compiled grammar they came from, so a changed grammar never sees the old one's results, and each store evicts its least recently used entries to stay under its byte limit */
+public class MembershipCache {
+
+    /* The number of independently locked parts of each store, so parallel checks rarely wait on each other */
+    private static final int SEGMENTS = 16;
+
+    /* The estimated bytes of an entry apart from its tokens or cell - the map entry, the key and the value objects */
+    private static final int ENTRY_OVERHEAD = 96;
+
+    /* The modulus of the substring hashes, the Mersenne prime 2^61 - 1 */
+    private static final long MODULUS = (1L << 61) - 1;
+
+    private final Store<VerdictKey, Boolean> verdicts;
+
+    /* null when spans aren't cached */
+    private final Store<SpanKey, long[]> spans;
+
+    private final int spanThreshold;
+
+    /* The two bases of the polynomial substring hashes, picked at random so no input can be built to make them collide */
+    private final long base1, base2;
+
+    private final LongAdder verdictHits, verdictMisses, spanHits, spanMisses;
+
+    /* Cache only whole-input verdicts, in at most the given number of bytes */
+    public MembershipCache(long maxVerdictBytes) {
+        this(maxVerdictBytes, 0, Integer.MAX_VALUE);
+    }
+
+    /* Cache whole-input verdicts in at most maxVerdictBytes, and the cells of substrings at least spanThreshold long in at most maxSpanBytes (0 turns span caching off) */
+    public MembershipCache(long maxVerdictBytes, long maxSpanBytes, int spanThreshold) {
+        if(maxVerdictBytes < 0 || maxSpanBytes < 0 || spanThreshold < 2)
+            throw new RuntimeException("The cache limits can't be negative and the span threshold must be at least 2.");
+        verdicts = new Store<>(maxVerdictBytes);
+        spans = maxSpanBytes > 0 ? new Store<>(maxSpanBytes) : null;
+        this.spanThreshold = spanThreshold;
+        SplittableRandom random = new SplittableRandom();
+        base1 = 256 + random.nextLong(MODULUS - 512);
+        base2 = 256 + random.nextLong(MODULUS - 512);
+        verdictHits = new LongAdder();
+        verdictMisses = new LongAdder();
+        spanHits = new LongAdder();
+        spanMisses = new LongAdder();
+    }
+
+    /* The cached verdict for the input on the given grammar, or null if there isn't one */
+    Boolean getVerdict(CompiledGrammar grammar, int[] tokens) {
+        Boolean verdict = verdicts.get(new VerdictKey(grammar.getFingerprint(), tokens));
+        (verdict == null ? verdictMisses : verdictHits).increment();
+        return verdict;
+    }
+
+    void putVerdict(CompiledGrammar grammar, int[] tokens, boolean verdict) {
+        verdicts.put(new VerdictKey(grammar.getFingerprint(), tokens.clone()), verdict, ENTRY_OVERHEAD + 4L * tokens.length); // copied, since the caller owns the array
+    }
+
+    /* The span lookups for one input, or null if spans aren't cached or the input is too short to have a span worth caching */
+    Spans spans(CompiledGrammar grammar, int[] tokens) {
+        return spans == null || tokens.length <= spanThreshold ? null : new Spans(grammar.getFingerprint(), tokens);
+    }
+
+    /* Drop every entry for the grammar with the given fingerprint */
+    public void invalidate(long fingerprint) {
+        verdicts.removeIf(key -> key.fingerprint == fingerprint);
+        if(spans != null)
+            spans.removeIf(key -> key.fingerprint == fingerprint);
+    }
+
+    public void clear() {
+        verdicts.removeIf(key -> true);
+        if(spans != null)
+            spans.removeIf(key -> true);
+    }
+
+    public long getVerdictHits() {
+        return verdictHits.sum();
+    }
+
+    public long getVerdictMisses() {
+        return verdictMisses.sum();
+    }
+
+    public long getSpanHits() {
+        return spanHits.sum();
+    }
+
+    public long getSpanMisses() {
+        return spanMisses.sum();
+    }
+
+    /* The number of entries dropped to stay under the byte limits (not counting invalidated ones) */
+    public long getEvictions() {
+        return verdicts.evictions.sum() + (spans == null ? 0 : spans.evictions.sum());
+    }
+
+    public long getVerdictBytes() {
+        return verdicts.bytes();
+    }
+
+    public long getSpanBytes() {
+        return spans == null ? 0 : spans.bytes();
+    }
+
+    public int getSpanThreshold() {
+        return spanThreshold;
+    }
+
+    @Override
+    public String toString() {
+        return "verdicts " + getVerdictHits() + " hits / " + getVerdictMisses() + " misses (" + getVerdictBytes() + " bytes), spans " + getSpanHits() + " hits / " + getSpanMisses() + " misses (" + getSpanBytes() + " bytes), " + getEvictions() + " evictions";
+    }
+
+    /* a * b mod 2^61 - 1, for a and b below the modulus */
+    private static long multiply(long a, long b) {
+        long high = Math.multiplyHigh(a, b), low = a * b;
+        long result = (low & MODULUS) + ((low >>> 61) | (high << 3));
+        return result >= MODULUS ? result - MODULUS : result;
+    }
+
+    /* The prefix hashes of one input, giving the two hashes of any of its substrings in constant time - a substring is keyed by its hashes and length rather than its tokens, so entries don't hold on to inputs */
+    final class Spans {
+
+        private final long fingerprint;
+
+        /* The hashes of each prefix, and each base raised to each length */
+        private final long[] prefix1, prefix2, power1, power2;
+
+        private Spans(long fingerprint, int[] tokens) {
+            this.fingerprint = fingerprint;
+            int n = tokens.length;
+            prefix1 = new long[n + 1];
+            prefix2 = new long[n + 1];
+            power1 = new long[n + 1];
+            power2 = new long[n + 1];
+            power1[0] = power2[0] = 1;
+            for(int i = 0; i < n; i++) {
+                long symbol = tokens[i] + 2L; // never 0, so leading symbols still change the hash
+                prefix1[i + 1] = (multiply(prefix1[i], base1) + symbol) % MODULUS;
+                prefix2[i + 1] = (multiply(prefix2[i], base2) + symbol) % MODULUS;
+                power1[i + 1] = multiply(power1[i], base1);
+                power2[i + 1] = multiply(power2[i], base2);
+            }
+        }
+
+        /* Copy the cached cell of the substring into the given bitset, returning false (and leaving it alone) if it isn't cached */
+        boolean load(int start, int length, long[] cell) {
+            if(length < spanThreshold)
+                return false;
+            long[] cached = spans.get(key(start, length));
+            if(cached == null) {
+                spanMisses.increment();
+                return false;
+            }
+            spanHits.increment();
+            System.arraycopy(cached, 0, cell, 0, cell.length);
+            return true;
+        }
+
+        void store(int start, int length, long[] cell) {
+            if(length >= spanThreshold)
+                spans.put(key(start, length), cell.clone(), ENTRY_OVERHEAD + 8L * cell.length);
+        }
+
+        private SpanKey key(int start, int length) {
+            return new SpanKey(fingerprint, length, substring(prefix1, power1, start, length), substring(prefix2, power2, start, length));
+        }
+
+        private long substring(long[] prefix, long[] power, int start, int length) {
+            long hash = prefix[start + length] - multiply(prefix[start], power[length]);
+            return hash < 0 ? hash + MODULUS : hash;
+        }
+
+    }
+
+    private static final class VerdictKey {
+
+        private final long fingerprint;
+
+        private final int[] tokens;
+
+        private final int hash;
+
+        VerdictKey(long fingerprint, int[] tokens) {
+            this.fingerprint = fingerprint;
+            this.tokens = tokens;
+            hash = Long.hashCode(fingerprint) * 31 + Arrays.hashCode(tokens);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof VerdictKey && ((VerdictKey) o).fingerprint == fingerprint && Arrays.equals(((VerdictKey) o).tokens, tokens);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+    }
+
+    private static final class SpanKey {
+
+        private final long fingerprint, hash1, hash2;
+
+        private final int length;
+
+        SpanKey(long fingerprint, int length, long hash1, long hash2) {
+            this.fingerprint = fingerprint;
+            this.length = length;
+            this.hash1 = hash1;
+            this.hash2 = hash2;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof SpanKey))
+                return false;
+            SpanKey other = (SpanKey) o;
+            return other.fingerprint == fingerprint && other.length == length && other.hash1 == hash1 && other.hash2 == hash2;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hash1 ^ fingerprint) * 31 + length;
+        }
+
+    }
+
+    /* An LRU map split into segments by key hash, each locked on its own and given an equal share of the byte limit */
+    static final class Store<K, V> {
+
+        private final List<Segment<K, V>> segments;
+
+        private final LongAdder evictions = new LongAdder();
+
+        Store(long maxBytes) {
+            segments = new ArrayList<>(SEGMENTS);
+            for(int i = 0; i < SEGMENTS; i++)
+                segments.add(new Segment<>(maxBytes / SEGMENTS));
+        }
+
+        /* The segment of a key with the given hash */
+        static int segmentOf(int h) {
+            return (h ^ (h >>> 16)) & (SEGMENTS - 1);
+        }
+
+        private Segment<K, V> segment(K key) {
+            return segments.get(segmentOf(key.hashCode()));
+        }
+
+        V get(K key) {
+            Segment<K, V> segment = segment(key);
+            synchronized(segment) {
+                Entry<V> entry = segment.map.get(key); // moves the entry to the most recently used end
+                return entry == null ? null : entry.value;
+            }
+        }
+
+        void put(K key, V value, long bytes) {
+            Segment<K, V> segment = segment(key);
+            if(bytes > segment.maxBytes) // it would evict everything and still not fit
+                return;
+            synchronized(segment) {
+                Entry<V> old = segment.map.put(key, new Entry<>(value, bytes));
+                segment.bytes += bytes - (old == null ? 0 : old.bytes);
+                for(Iterator<Entry<V>> it = segment.map.values().iterator(); segment.bytes > segment.maxBytes && it.hasNext(); ) { // oldest first
+                    segment.bytes -= it.next().bytes;
+                    it.remove();
+                    evictions.increment();
+                }
+            }
+        }
+
+        void removeIf(Predicate<K> condition) {
+            for(Segment<K, V> segment : segments)
+                synchronized(segment) {
+                    for(Iterator<Map.Entry<K, Entry<V>>> it = segment.map.entrySet().iterator(); it.hasNext(); ) {
+                        Map.Entry<K, Entry<V>> entry = it.next();
+                        if(condition.test(entry.getKey())) {
+                            segment.bytes -= entry.getValue().bytes;
+                            it.remove();
+                        }
+                    }
+                }
+        }
+
+        long bytes() {
+            long total = 0;
+            for(Segment<K, V> segment : segments)
+                synchronized(segment) {
+                    total += segment.bytes;
+                }
+            return total;
+        }
+
+    }
+
+    private static final class Segment<K, V> {
+
+        /* In access order, so iteration starts at the least recently used entry */
+        private final LinkedHashMap<K, Entry<V>> map = new LinkedHashMap<>(16, 0.75f, true);
+
+        private final long maxBytes;
+
+        private long bytes;
+
+        Segment(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+    }
+
+    private static final class Entry<V> {
+
+        private final V value;
+
+        private final long bytes;
+
+        Entry(V value, long bytes) {
+            this.value = value;
+            this.bytes = bytes;
+        }
+
+    }
+
+}
@@ -0,0 +1,126 @@
+package main;
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+
+/* A client for MembershipServer's line protocol - one request at a time, or a whole list of checks pipelined over the connection */
+public class MembershipClient implements AutoCloseable {
+
+    private final SocketChannel channel;
+
+    private final BufferedReader in;
+
+    private final Writer out;
+
+    /* Connect to a server on the given TCP port of the loopback address */
+    public MembershipClient(int port) throws IOException {
+        this(SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port)));
+    }
+
+    /* Connect to a server on the given Unix socket file */
+    public MembershipClient(Path socketFile) throws IOException {
+        this(SocketChannel.open(UnixDomainSocketAddress.of(socketFile)));
+    }
+
+    private MembershipClient(SocketChannel channel) {
+        this.channel = channel;
+        in = new BufferedReader(new InputStreamReader(MembershipServer.inputStream(channel), StandardCharsets.UTF_8));
+        out = new BufferedWriter(new OutputStreamWriter(MembershipServer.outputStream(channel), StandardCharsets.UTF_8));
+    }
+
+    public boolean check(String grammar, String input) throws IOException {
+        return isMember(request("CHECK " + grammar + " " + input));
+    }
+
+    /* Check every input, sending requests on another thread while the responses are read, so the connection never waits on a round trip. If any check fails, the first failure is thrown once every response has been read, so the connection is left ready for the next request */
+    public synchronized boolean[] checkAll(String grammar, List<String> inputs) throws IOException {
+        Thread sender = new Thread(() -> {
+            try {
+                for(String input : inputs)
+                    out.write("CHECK " + grammar + " " + input + "\n");
+                out.flush();
+            } catch(IOException e) { // the server went away, which the reads below report
+            }
+        }, "membership-client-sender");
+        sender.setDaemon(true);
+        sender.start();
+        boolean[] results = new boolean[inputs.size()];
+        RuntimeException failure = null;
+        for(int i = 0; i < results.length; i++)
+            try {
+                results[i] = isMember(readResponse());
+            } catch(RuntimeException e) { // an error response, whose request's successors still have to be read
+                if(failure == null)
+                    failure = e;
+            }
+        try {
+            sender.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if(failure != null)
+            throw failure;
+        return results;
+    }
+
+    /* Load or reload a grammar file (a path on the server's machine) under the given name, returning its class */
+    public GrammarClass load(String grammar, String file) throws IOException {
+        return GrammarClass.valueOf(ok(request("LOAD " + grammar + " " + file)));
+    }
+
+    public void drop(String grammar) throws IOException {
+        ok(request("DROP " + grammar));
+    }
+
+    public List<String> list() throws IOException {
+        String names = ok(request("LIST"));
+        return names.isEmpty() ? new ArrayList<>() : Arrays.asList(names.split(" "));
+    }
+
+    public String stats() throws IOException {
+        return ok(request("STATS"));
+    }
+
+    /* Send one request line and wait for its response line */
+    public synchronized String request(String line) throws IOException {
+        out.write(line + "\n");
+        out.flush();
+        return readResponse();
+    }
+
+    private String readResponse() throws IOException {
+        String response = in.readLine();
+        if(response == null)
+            throw new IOException("The server closed the connection.");
+        if(response.startsWith("ERROR"))
+            throw new RuntimeException("The server couldn't handle the request: " + response.substring(5).trim());
+        return response;
+    }
+
+    private static boolean isMember(String response) {
+        if(!response.equals("YES") && !response.equals("NO"))
+            throw new RuntimeException("Unexpected response: " + response);
+        return response.equals("YES");
+    }
+
+    /* The rest of an OK response */
+    private static String ok(String response) {
+        if(!response.startsWith("OK"))
+            throw new RuntimeException("Unexpected response: " + response);
+        return response.substring(2).trim();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            request("QUIT");
+        } catch(IOException | RuntimeException e) { // closing anyway
+        }
+        channel.close();
+    }
+
+}
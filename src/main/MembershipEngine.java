@@ -0,0 +1,18 @@
+package main;
+
+/* The algorithm used for a membership check - all but EARLEY fill the CYK triangle */
+public enum MembershipEngine {
+
+    /* Pick CHART or MATRIX from the input's length */
+    AUTO,
+
+    /* The chart fill, checking each split of each span one at a time */
+    CHART,
+
+    /* The bit-packed boolean matrix fill, checking 64 splits of a span at once - still cubic time, just with a 64 times smaller constant */
+    MATRIX,
+
+    /* The Earley recognizer over the grammar before CNF conversion, which doesn't fill the CYK triangle at all - only engines that have the original grammar (MembershipRouter) can use it */
+    EARLEY
+
+}
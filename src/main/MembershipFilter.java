@@ -0,0 +1,252 @@
+package main;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/* Cheap O(n) checks built from a compiled grammar that reject most non-members before a chart is allocated, counting how many inputs each check rejects */
+public class MembershipFilter {
+
+    /* The reasons an input can be rejected, in the order they're checked */
+    public enum Rejection {
+        EMPTY, ALPHABET, MIN_LENGTH, MAX_LENGTH, FIRST, LAST, COUNTS
+    }
+
+    /* The counts of the terminal alphabet above which the per-terminal minimum counts aren't worth computing */
+    static final long MAX_COUNT_WORK = 1L << 22;
+
+    /* The length of the shortest and longest strings the start symbol derives, with maxLength being Integer.MAX_VALUE when there's no limit */
+    private final int minLength, maxLength;
+
+    /* The bitsets (over dense terminal indexes) of terminals that can begin and end a member */
+    private final long[] first, last;
+
+    /* The terminals every member has to contain at least once, along with how many times each has to appear */
+    private final int[] requiredTerminals, requiredCounts;
+
+    /* For each dense terminal index, its position in requiredTerminals, or -1 if it isn't required */
+    private final int[] requiredIndexes;
+
+    private final LongAdder passed = new LongAdder();
+
+    /* The number of inputs each check has rejected, indexed by the rejection's ordinal */
+    private final LongAdder[] rejected = counters(Rejection.values().length);
+
+    MembershipFilter(CompiledGrammar grammar) {
+        int count = grammar.getNonTerminalCount(), terminals = grammar.getTerminalCount(), start = grammar.getStartId();
+        int[] heads = grammar.getBinaryHeads(), lefts = grammar.getBinaryLefts(), rights = grammar.getBinaryRights();
+        List<Integer> usable = new ArrayList<>(); // the binary productions with two productive children, since no others can be used in a derivation
+        for(int r = 0; r < heads.length; r++)
+            if(grammar.isProductive(lefts[r]) && grammar.isProductive(rights[r]))
+                usable.add(r);
+
+        long[] shortest = new long[count]; // the length of the shortest string each non-terminal derives
+        Arrays.fill(shortest, Long.MAX_VALUE);
+        int termWords = Math.max(1, (terminals + 63) >>> 6);
+        long[][] firsts = new long[count][termWords], lasts = new long[count][termWords];
+        for(int t = 0; t < terminals; t++)
+            for(int a : grammar.getTerminalNonTerminals(t)) {
+                shortest[a] = 1;
+                CompiledGrammar.set(firsts[a], t);
+                CompiledGrammar.set(lasts[a], t);
+            }
+        for(boolean changed = true; changed; ) { // relax shortest lengths and first / last sets through binary productions until nothing changes
+            changed = false;
+            for(int r : usable) {
+                long length = Math.max(shortest[lefts[r]], shortest[rights[r]]) == Long.MAX_VALUE ? Long.MAX_VALUE : shortest[lefts[r]] + shortest[rights[r]]; // a child with no length yet mustn't overflow
+                if(length < shortest[heads[r]]) {
+                    shortest[heads[r]] = length;
+                    changed = true;
+                }
+                changed |= or(firsts[heads[r]], firsts[lefts[r]]);
+                changed |= or(lasts[heads[r]], lasts[rights[r]]);
+            }
+        }
+        boolean productiveStart = start >= 0 && grammar.isProductive(start);
+        minLength = productiveStart ? (int) Math.min(shortest[start], Integer.MAX_VALUE) : Integer.MAX_VALUE;
+        maxLength = productiveStart ? longestLength(grammar, usable, shortest, start) : 0;
+        first = productiveStart ? firsts[start] : new long[termWords];
+        last = productiveStart ? lasts[start] : new long[termWords];
+
+        requiredIndexes = new int[terminals];
+        Arrays.fill(requiredIndexes, -1);
+        List<int[]> required = new ArrayList<>();
+        int[] terminalProductions = new int[count]; // the number of productions to a terminal each non-terminal has
+        for(int t = 0; t < terminals; t++)
+            for(int a : grammar.getTerminalNonTerminals(t))
+                terminalProductions[a]++;
+        if(productiveStart && (long) terminals * (usable.size() + count) <= MAX_COUNT_WORK)
+            for(int t = 0; t < terminals; t++) {
+                int least = leastCount(grammar, usable, terminalProductions, t)[start];
+                if(least > 0) {
+                    requiredIndexes[t] = required.size();
+                    required.add(new int[] {t, least});
+                }
+            }
+        requiredTerminals = new int[required.size()];
+        requiredCounts = new int[required.size()];
+        for(int i = 0; i < required.size(); i++) {
+            requiredTerminals[i] = required.get(i)[0];
+            requiredCounts[i] = required.get(i)[1];
+        }
+    }
+
+    /* Rebuild a filter from the bounds another one computed (as GrammarFile stores them) for a grammar with the given number of terminals, without analysing the grammar again */
+    MembershipFilter(int terminals, int minLength, int maxLength, long[] first, long[] last, int[] requiredTerminals, int[] requiredCounts) {
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+        this.first = first;
+        this.last = last;
+        this.requiredTerminals = requiredTerminals;
+        this.requiredCounts = requiredCounts;
+        requiredIndexes = new int[terminals];
+        Arrays.fill(requiredIndexes, -1);
+        for(int i = 0; i < requiredTerminals.length; i++)
+            requiredIndexes[requiredTerminals[i]] = i;
+    }
+
+    private static LongAdder[] counters(int count) {
+        LongAdder[] counters = new LongAdder[count];
+        for(int i = 0; i < count; i++)
+            counters[i] = new LongAdder();
+        return counters;
+    }
+
+    /* OR the source bitset into the target one, returning true if the target changed */
+    private static boolean or(long[] target, long[] source) {
+        boolean changed = false;
+        for(int w = 0; w < target.length; w++)
+            if((source[w] & ~target[w]) != 0) {
+                target[w] |= source[w];
+                changed = true;
+            }
+        return changed;
+    }
+
+    /* The length of the longest string the start symbol derives, or Integer.MAX_VALUE if it derives arbitrarily long strings */
+    private static int longestLength(CompiledGrammar grammar, List<Integer> usable, long[] shortest, int start) {
+        int count = grammar.getNonTerminalCount();
+        List<List<Integer>> rules = new ArrayList<>(); // the usable binary productions of each non-terminal
+        for(int i = 0; i < count; i++)
+            rules.add(new ArrayList<>());
+        for(int r : usable)
+            rules.get(grammar.getBinaryHeads()[r]).add(r);
+        long[] longest = new long[count];
+        byte[] state = new byte[count]; // 0 = unvisited, 1 = on the current path, 2 = finished
+        Deque<int[]> stack = new ArrayDeque<>(); // {non-terminal, index of the next rule to visit}
+        stack.push(new int[] {start, 0});
+        state[start] = 1;
+        while(!stack.isEmpty()) { // a depth-first walk over the reachable part of the grammar, finishing each non-terminal after its children
+            int[] top = stack.peek();
+            List<Integer> own = rules.get(top[0]);
+            if(top[1] < own.size() * 2) {
+                int r = own.get(top[1] / 2);
+                int child = top[1] % 2 == 0 ? grammar.getBinaryLefts()[r] : grammar.getBinaryRights()[r];
+                top[1]++;
+                if(state[child] == 1) // a cycle among reachable, productive non-terminals means there's no longest string
+                    return Integer.MAX_VALUE;
+                if(state[child] == 0) {
+                    state[child] = 1;
+                    stack.push(new int[] {child, 0});
+                }
+                continue;
+            }
+            long length = shortest[top[0]] == 1 ? 1 : 0; // only a production to a terminal derives a string of length 1
+            for(int r : own)
+                length = Math.max(length, Math.min(Integer.MAX_VALUE, longest[grammar.getBinaryLefts()[r]] + longest[grammar.getBinaryRights()[r]]));
+            longest[top[0]] = length;
+            state[top[0]] = 2;
+            stack.pop();
+        }
+        return (int) longest[start];
+    }
+
+    /* The fewest times each non-terminal's strings contain the given terminal */
+    private static int[] leastCount(CompiledGrammar grammar, List<Integer> usable, int[] terminalProductions, int terminal) {
+        int[] least = new int[grammar.getNonTerminalCount()];
+        for(int a = 0; a < least.length; a++)
+            least[a] = terminalProductions[a] > 0 ? 0 : Integer.MAX_VALUE;
+        for(int a : grammar.getTerminalNonTerminals(terminal))
+            if(terminalProductions[a] == 1) // the only terminal it produces is this one
+                least[a] = 1;
+        for(boolean changed = true; changed; ) {
+            changed = false;
+            for(int r : usable) {
+                long sum = (long) least[grammar.getBinaryLefts()[r]] + least[grammar.getBinaryRights()[r]];
+                if(sum < least[grammar.getBinaryHeads()[r]]) {
+                    least[grammar.getBinaryHeads()[r]] = (int) sum;
+                    changed = true;
+                }
+            }
+        }
+        return least;
+    }
+
+    /* Check the tokens against every filter, returning the first one that rejects them or null if the input has to go through the chart */
+    public Rejection check(int[] tokens) {
+        Rejection rejection = findRejection(tokens);
+        if(rejection == null)
+            passed.increment();
+        else
+            rejected[rejection.ordinal()].increment();
+        return rejection;
+    }
+
+    private Rejection findRejection(int[] tokens) {
+        int n = tokens.length;
+        if(n == 0) // CNF form can't derive the empty string
+            return Rejection.EMPTY;
+        int[] counts = new int[requiredTerminals.length];
+        for(int token : tokens) {
+            if(token < 0) // no non-terminal derives an unknown symbol
+                return Rejection.ALPHABET;
+            if(requiredIndexes[token] >= 0)
+                counts[requiredIndexes[token]]++;
+        }
+        if(n < minLength)
+            return Rejection.MIN_LENGTH;
+        if(n > maxLength)
+            return Rejection.MAX_LENGTH;
+        if(!CompiledGrammar.get(first, tokens[0]))
+            return Rejection.FIRST;
+        if(!CompiledGrammar.get(last, tokens[n - 1]))
+            return Rejection.LAST;
+        for(int i = 0; i < counts.length; i++)
+            if(counts[i] < requiredCounts[i])
+                return Rejection.COUNTS;
+        return null;
+    }
+
+    public int getMinLength() {
+        return minLength;
+    }
+
+    /* The length of the longest member, or Integer.MAX_VALUE if members can be arbitrarily long */
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    long[] getFirst() {
+        return first;
+    }
+
+    long[] getLast() {
+        return last;
+    }
+
+    int[] getRequiredTerminals() {
+        return requiredTerminals;
+    }
+
+    int[] getRequiredCounts() {
+        return requiredCounts;
+    }
+
+    public long getPassed() {
+        return passed.sum();
+    }
+
+    public long getRejected(Rejection rejection) {
+        return rejected[rejection.ordinal()].sum();
+    }
+
+}
@@ -0,0 +1,13 @@
+package main;
+
+/* Told about every membership check and CNF conversion made with options that hold it - called on the thread that made the call, so it must be safe to use from several threads at once */
+public interface MembershipListener {
+
+    /* Called once a check has finished, been answered from the cache or filters, or been cancelled */
+    void membershipChecked(MembershipStats stats);
+
+    /* Called once a CFG has been converted to CNF form, with the time spent simplifying it and then splitting up its productions */
+    default void grammarConverted(CFG grammar, long simplifyNanos, long cnfNanos) {
+    }
+
+}
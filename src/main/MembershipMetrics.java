@@ -0,0 +1,197 @@
+package main;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/* A listener that aggregates every check into counters and histograms, readable directly or over JMX once registered */
+public class MembershipMetrics implements MembershipListener, MembershipMetricsMBean {
+
+    private final LongAdder accepted, cacheHits, filtered, cancelled;
+
+    /* Latency and the per-phase times are recorded in nanoseconds */
+    private final Histogram latency, setup, unary, binary, inputLength, cellsFilled, ruleApplications, chartBytes, conversion;
+
+    public MembershipMetrics() {
+        accepted = new LongAdder();
+        cacheHits = new LongAdder();
+        filtered = new LongAdder();
+        cancelled = new LongAdder();
+        latency = new Histogram();
+        setup = new Histogram();
+        unary = new Histogram();
+        binary = new Histogram();
+        inputLength = new Histogram();
+        cellsFilled = new Histogram();
+        ruleApplications = new Histogram();
+        chartBytes = new Histogram();
+        conversion = new Histogram();
+    }
+
+    @Override
+    public void membershipChecked(MembershipStats stats) {
+        latency.record(stats.getTotalNanos());
+        inputLength.record(stats.getLength());
+        if(stats.isCancelled())
+            cancelled.increment();
+        else if(stats.getVerdict())
+            accepted.increment();
+        if(stats.isCacheHit())
+            cacheHits.increment();
+        if(stats.getRejection() != null)
+            filtered.increment();
+        if(stats.getEngine() != null) { // an engine ran, so the phases and chart counts mean something
+            setup.record(stats.getSetupNanos());
+            unary.record(stats.getUnaryNanos());
+            binary.record(stats.getBinaryNanos());
+            cellsFilled.record(stats.getCellsFilled());
+            ruleApplications.record(stats.getRuleApplications());
+            chartBytes.record(stats.getChartBytes());
+        }
+    }
+
+    @Override
+    public void grammarConverted(CFG grammar, long simplifyNanos, long cnfNanos) {
+        conversion.record(simplifyNanos + cnfNanos);
+    }
+
+    /* Register with the platform MBean server as main:type=MembershipMetrics,name=<name>, returning the name it was registered under */
+    public ObjectName register(String name) {
+        try {
+            ObjectName objectName = new ObjectName("main:type=MembershipMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch(JMException e) {
+            throw new RuntimeException("Couldn't register the membership metrics as " + name + ".", e);
+        }
+    }
+
+    public void unregister(ObjectName objectName) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if(server.isRegistered(objectName))
+                server.unregisterMBean(objectName);
+        } catch(JMException e) {
+            throw new RuntimeException("Couldn't unregister the membership metrics " + objectName + ".", e);
+        }
+    }
+
+    public Histogram getLatency() {
+        return latency;
+    }
+
+    public Histogram getCellsFilled() {
+        return cellsFilled;
+    }
+
+    public Histogram getRuleApplications() {
+        return ruleApplications;
+    }
+
+    public Histogram getChartBytes() {
+        return chartBytes;
+    }
+
+    @Override
+    public long getChecks() {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getFiltered() {
+        return filtered.sum();
+    }
+
+    @Override
+    public long getCancelled() {
+        return cancelled.sum();
+    }
+
+    @Override
+    public long getLatencyP50Micros() {
+        return latency.getQuantile(0.5) / 1000;
+    }
+
+    @Override
+    public long getLatencyP99Micros() {
+        return latency.getQuantile(0.99) / 1000;
+    }
+
+    @Override
+    public long getLatencyMaxMicros() {
+        return latency.getMax() / 1000;
+    }
+
+    @Override
+    public double getMeanSetupMicros() {
+        return setup.getMean() / 1000;
+    }
+
+    @Override
+    public double getMeanUnaryMicros() {
+        return unary.getMean() / 1000;
+    }
+
+    @Override
+    public double getMeanBinaryMicros() {
+        return binary.getMean() / 1000;
+    }
+
+    @Override
+    public long getInputLengthP99() {
+        return inputLength.getQuantile(0.99);
+    }
+
+    @Override
+    public long getCellsFilledP99() {
+        return cellsFilled.getQuantile(0.99);
+    }
+
+    @Override
+    public long getRuleApplicationsP99() {
+        return ruleApplications.getQuantile(0.99);
+    }
+
+    @Override
+    public long getChartBytesP99() {
+        return chartBytes.getQuantile(0.99);
+    }
+
+    @Override
+    public long getChartBytesMax() {
+        return chartBytes.getMax();
+    }
+
+    @Override
+    public long getConversions() {
+        return conversion.getCount();
+    }
+
+    @Override
+    public long getConversionP99Micros() {
+        return conversion.getQuantile(0.99) / 1000;
+    }
+
+    @Override
+    public void reset() {
+        accepted.reset();
+        cacheHits.reset();
+        filtered.reset();
+        cancelled.reset();
+        for(Histogram histogram : new Histogram[] {latency, setup, unary, binary, inputLength, cellsFilled, ruleApplications, chartBytes, conversion})
+            histogram.reset();
+    }
+
+}
@@ -0,0 +1,44 @@
+package main;
+
+/* The JMX view of MembershipMetrics - times are in microseconds, and quantiles are upper bounds to within a factor of two */
+public interface MembershipMetricsMBean {
+
+    long getChecks();
+
+    long getAccepted();
+
+    long getCacheHits();
+
+    long getFiltered();
+
+    long getCancelled();
+
+    long getLatencyP50Micros();
+
+    long getLatencyP99Micros();
+
+    long getLatencyMaxMicros();
+
+    double getMeanSetupMicros();
+
+    double getMeanUnaryMicros();
+
+    double getMeanBinaryMicros();
+
+    long getInputLengthP99();
+
+    long getCellsFilledP99();
+
+    long getRuleApplicationsP99();
+
+    long getChartBytesP99();
+
+    long getChartBytesMax();
+
+    long getConversions();
+
+    long getConversionP99Micros();
+
+    void reset();
+
+}
@@ -0,0 +1,125 @@
+package main;
+
+import java.util.concurrent.ForkJoinPool;
+
+/* Settings for a membership check, shared by every call made with the same options */
+public class MembershipOptions {
+
+    /* The most memory a single chart may use before the check is rejected */
+    private long maxChartBytes;
+
+    /* Inputs at least this long fill each anti-diagonal of the chart in parallel on the pool */
+    private int parallelThreshold;
+
+    private ForkJoinPool pool;
+
+    private MembershipEngine engine;
+
+    /* Inputs at least this long use the matrix engine when the engine is AUTO, as long as its matrices fit within maxChartBytes */
+    private int matrixThreshold;
+
+    /* The cache of verdicts and span cells consulted before filling a chart, or null for none */
+    private MembershipCache cache;
+
+    /* Told about every check and conversion made with these options, or null for none - without one nothing is timed or counted */
+    private MembershipListener listener;
+
+    /* Cancels every running check made with these options when it's cancelled, or null for none */
+    private CancellationToken cancellationToken;
+
+    /* The longest a single check may run before it's cancelled, or 0 for no limit */
+    private long timeLimitMillis;
+
+    public MembershipOptions() {
+        maxChartBytes = Runtime.getRuntime().maxMemory() / 2; // leave room for everything else on the heap
+        parallelThreshold = 256;
+        pool = ForkJoinPool.commonPool();
+        engine = MembershipEngine.AUTO;
+        matrixThreshold = 64; // MatrixCrossoverBenchmark has the matrix engine overtaking the chart at about 48 symbols on the Dyck and arithmetic grammars, but only at about 1000 on the 64 non-terminal random one, whose rules the chart skips more of - so grammars like that one are better off with a higher threshold
+    }
+
+    public long getMaxChartBytes() {
+        return maxChartBytes;
+    }
+
+    public MembershipOptions setMaxChartBytes(long maxChartBytes) {
+        this.maxChartBytes = maxChartBytes;
+        return this;
+    }
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /* Set the shortest input length that runs in parallel - Integer.MAX_VALUE keeps every check single-threaded */
+    public MembershipOptions setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+        return this;
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public MembershipOptions setPool(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    public MembershipEngine getEngine() {
+        return engine;
+    }
+
+    public MembershipOptions setEngine(MembershipEngine engine) {
+        this.engine = engine;
+        return this;
+    }
+
+    public int getMatrixThreshold() {
+        return matrixThreshold;
+    }
+
+    public MembershipOptions setMatrixThreshold(int matrixThreshold) {
+        this.matrixThreshold = matrixThreshold;
+        return this;
+    }
+
+    public MembershipCache getCache() {
+        return cache;
+    }
+
+    /* Set the cache shared by every check with these options - while it caches spans, AUTO always picks the chart engine so new charts can be seeded from it */
+    public MembershipOptions setCache(MembershipCache cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    public MembershipListener getListener() {
+        return listener;
+    }
+
+    public MembershipOptions setListener(MembershipListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    public CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+
+    public MembershipOptions setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+        return this;
+    }
+
+    public long getTimeLimitMillis() {
+        return timeLimitMillis;
+    }
+
+    /* Set the longest a single check may run, counted from when it starts, before it throws a CancellationException - 0 for no limit */
+    public MembershipOptions setTimeLimitMillis(long timeLimitMillis) {
+        this.timeLimitMillis = timeLimitMillis;
+        return this;
+    }
+
+}
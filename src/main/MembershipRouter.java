@@ -0,0 +1,93 @@
+package main;
+
+/* Checks membership with the cheapest engine that's exact for the grammar - a DFA for right or left-linear grammars, an LL(1) parser for LL(1) grammars, and CYK over the CNF form for everything else, unless the options ask for the Earley engine (per router or per input).
+   Every engine reads the tokens of the CNF form's tokenizer, and like CYK the empty string is never a member (the CNF form can't derive it), so all of them give the same answers */
+public class MembershipRouter {
+
+    private final GrammarClass grammarClass;
+
+    private final CompiledGrammar grammar;
+
+    private final MembershipOptions options;
+
+    /* Only the engine for the grammar's class is built, the other is null */
+    private final DFARecognizer dfa;
+
+    private final LL1Recognizer ll1;
+
+    /* Runs on the grammar before conversion, so it's always available */
+    private final EarleyRecognizer earley;
+
+    /* Route the given CFG's inputs, converting a copy of it to CNF form for the fallback - the CFG must declare its terminals, as convertToCNF needs */
+    public MembershipRouter(CFG source, MembershipOptions options) {
+        this(source, convert(source), options);
+    }
+
+    /* Route the given CFG's inputs, where grammar is the compiled CNF form of the same CFG (so it can be shared with other recognizers) and source is the CFG before it was converted -
+       a linear grammar whose DFA would have more than DFARecognizer.MAX_STATES states is routed as if it weren't linear */
+    public MembershipRouter(CFG source, CompiledGrammar grammar, MembershipOptions options) {
+        this.grammar = grammar;
+        this.options = options;
+        GrammarClass grammarClass = source.classify();
+        DFARecognizer dfa = null;
+        if(grammarClass == GrammarClass.RIGHT_LINEAR || grammarClass == GrammarClass.LEFT_LINEAR)
+            try {
+                dfa = new DFARecognizer(source, grammar);
+            } catch(DFARecognizer.StateLimitException e) {
+                grammarClass = LL1Recognizer.isLL1(source) ? GrammarClass.LL1 : GrammarClass.GENERAL;
+            }
+        this.grammarClass = grammarClass;
+        this.dfa = dfa;
+        ll1 = grammarClass == GrammarClass.LL1 ? new LL1Recognizer(source, grammar) : null;
+        earley = new EarleyRecognizer(source, grammar);
+    }
+
+    private static CompiledGrammar convert(CFG source) {
+        CFG copy = source.copy();
+        copy.convertToCNF(copy.getNextUnusedSymbol(), null);
+        return copy.compile();
+    }
+
+    public boolean recognize(String input) {
+        return recognize(grammar.tokenize(input), options);
+    }
+
+    public boolean recognize(String input, MembershipOptions options) {
+        return recognize(grammar.tokenize(input), options);
+    }
+
+    public boolean recognize(int[] tokens) {
+        return recognize(tokens, options);
+    }
+
+    /* Check the input, given as dense terminal indexes of the compiled grammar (-1 for a symbol not in the grammar), with the given options in place of the router's */
+    public boolean recognize(int[] tokens, MembershipOptions options) {
+        if(tokens.length == 0)
+            return false;
+        if(options.getEngine() == MembershipEngine.EARLEY)
+            return earley.recognize(tokens, options);
+        if(dfa == null && ll1 == null)
+            return grammar.recognize(tokens, options);
+        CancellationToken token = CancellationToken.forCall(options);
+        if(token != null) // the DFA and LL(1) engines run in linear time, so the token is only checked before they start
+            token.throwIfCancelled();
+        MembershipListener listener = options.getListener();
+        if(listener == null)
+            return dfa != null ? dfa.recognize(tokens) : ll1.recognize(tokens);
+        MembershipStats stats = new MembershipStats(tokens.length);
+        boolean result = dfa != null ? dfa.recognize(tokens) : ll1.recognize(tokens);
+        stats.setVerdict(result);
+        stats.finish();
+        listener.membershipChecked(stats);
+        return result;
+    }
+
+    public GrammarClass getGrammarClass() {
+        return grammarClass;
+    }
+
+    public CompiledGrammar getCompiledGrammar() {
+        return grammar;
+    }
+
+}
@@ -0,0 +1,294 @@
+package main;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/* A long-running membership server on a local TCP port or Unix socket, speaking a line protocol (UTF-8, one request per line, one response per request in request order):
+     CHECK <grammar> <input>  - YES or NO
+     LOAD <grammar> <file>    - load or reload a grammar file from the load directory, OK <class> (refused unless the server has a load directory)
+     DROP <grammar>           - OK
+     LIST                     - OK followed by the grammar names
+     STATS                    - OK followed by the server's counters (connections counts every connection accepted, open those still being served)
+     QUIT                     - OK, then the connection is closed once every earlier response is sent
+   with ERROR <message> for a request that fails. Each connection has its own thread (a virtual thread where the JVM has them), and clients can pipeline requests without waiting for responses.
+   Checks run on a fixed pool of worker threads behind a bounded queue - once the queue is full, connections stop reading requests until there's room, which pushes back on clients through the socket */
+public class MembershipServer implements AutoCloseable {
+
+    /* The most responses a connection can have outstanding before it stops reading requests */
+    static final int MAX_PIPELINED = 1024;
+
+    /* Marks the end of a connection's responses */
+    private static final Future<String> END = CompletableFuture.completedFuture(null);
+
+    private final GrammarRegistry registry;
+
+    private final ServerSocketChannel server;
+
+    /* The socket file, or null when listening on a TCP port */
+    private final Path socketFile;
+
+    private final ThreadPoolExecutor workers;
+
+    private final ExecutorService connections;
+
+    private final Thread acceptor;
+
+    private final LongAdder checks, errors, connectionCount, openConnections;
+
+    private volatile boolean closed;
+
+    /* The only directory LOAD may read grammar files from (with symbolic links resolved), or null to refuse every LOAD - anyone who can reach the port can send one */
+    private volatile Path loadDirectory;
+
+    /* Listen on the given TCP port of the loopback address (0 picks a free one), running checks on the given number of workers behind a queue of the given capacity */
+    public MembershipServer(GrammarRegistry registry, int port, int workerCount, int queueCapacity) throws IOException {
+        this(registry, ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port)), null, workerCount, queueCapacity);
+    }
+
+    /* Listen on the given Unix socket file, replacing any stale socket left there */
+    public MembershipServer(GrammarRegistry registry, Path socketFile, int workerCount, int queueCapacity) throws IOException {
+        this(registry, bindUnix(socketFile), socketFile, workerCount, queueCapacity);
+    }
+
+    private MembershipServer(GrammarRegistry registry, ServerSocketChannel server, Path socketFile, int workerCount, int queueCapacity) {
+        this.registry = registry;
+        this.server = server;
+        this.socketFile = socketFile;
+        checks = new LongAdder();
+        errors = new LongAdder();
+        connectionCount = new LongAdder();
+        openConnections = new LongAdder();
+        workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), daemonThreads("membership-worker"), (task, executor) -> {
+            try {
+                executor.getQueue().put(task); // wait for room instead of rejecting, so a full queue blocks the connection submitting to it
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException(e);
+            }
+        });
+        connections = newConnectionExecutor();
+        acceptor = daemonThreads("membership-acceptor").newThread(this::acceptLoop);
+        acceptor.start();
+    }
+
+    private static ServerSocketChannel bindUnix(Path socketFile) throws IOException {
+        Files.deleteIfExists(socketFile);
+        return ServerSocketChannel.open(StandardProtocolFamily.UNIX).bind(UnixDomainSocketAddress.of(socketFile));
+    }
+
+    /* One virtual thread per connection when the JVM has them (Java 21 and up), otherwise a cached pool of platform threads - looked up reflectively, so the server still builds and runs on Java 17 */
+    static ExecutorService newConnectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch(ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(daemonThreads("membership-connection"));
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /* Let LOAD read grammar files inside the given directory, given relative to it - files outside it (including through symbolic links) are refused */
+    public void setLoadDirectory(Path directory) throws IOException {
+        if(!Files.isDirectory(directory))
+            throw new RuntimeException("The load directory " + directory + " isn't a directory.");
+        loadDirectory = directory.toRealPath();
+    }
+
+    /* The real path of a grammar file a LOAD asks for, checking it's a regular file inside the load directory */
+    private Path resolveLoad(String file) throws IOException {
+        Path directory = loadDirectory;
+        if(directory == null)
+            throw new RuntimeException("LOAD is disabled on this server.");
+        Path path = directory.resolve(file).normalize();
+        if(!path.startsWith(directory) || !Files.isRegularFile(path) || !path.toRealPath().startsWith(directory)) // checked before touching the file, then again once links are followed
+            throw new RuntimeException("No grammar file " + file + " in the load directory.");
+        return path.toRealPath();
+    }
+
+    /* The TCP port the server is listening on, or -1 when it's on a Unix socket */
+    public int getPort() throws IOException {
+        SocketAddress address = server.getLocalAddress();
+        return address instanceof InetSocketAddress ? ((InetSocketAddress) address).getPort() : -1;
+    }
+
+    /* Wait until the server is closed */
+    public void join() throws InterruptedException {
+        acceptor.join();
+    }
+
+    private void acceptLoop() {
+        while(!closed)
+            try {
+                SocketChannel channel = server.accept();
+                connectionCount.increment();
+                connections.execute(() -> serve(channel));
+            } catch(IOException e) {
+                if(!closed)
+                    System.err.println("Couldn't accept a connection: " + e.getMessage());
+            }
+    }
+
+    /* Read requests on this thread and write their responses in order on another, so requests keep being read while earlier checks run */
+    private void serve(SocketChannel channel) {
+        BlockingQueue<Future<String>> responses = new ArrayBlockingQueue<>(MAX_PIPELINED);
+        openConnections.increment();
+        Future<?> writer = connections.submit(() -> writeResponses(channel, responses));
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream(channel), StandardCharsets.UTF_8))) {
+            for(String line; (line = reader.readLine()) != null; )
+                if(!enqueue(responses, handle(line), writer) || line.trim().equalsIgnoreCase("QUIT"))
+                    break;
+        } catch(IOException e) { // the client went away, so there's nobody to answer
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                if(enqueue(responses, END, writer))
+                    writer.get();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch(ExecutionException e) { // already reported by the writer
+            }
+            try {
+                channel.close();
+            } catch(IOException e) { // nothing left to do with it
+            }
+            openConnections.decrement();
+        }
+    }
+
+    /* Queue a response for the writer, waiting while the queue is full - false once the writer has stopped, since then nothing will ever make room */
+    private static boolean enqueue(BlockingQueue<Future<String>> responses, Future<String> response, Future<?> writer) throws InterruptedException {
+        while(!responses.offer(response, 100, TimeUnit.MILLISECONDS))
+            if(writer.isDone())
+                return false;
+        return true;
+    }
+
+    /* Write responses in order until the end marker - if a write fails, the input is shut down too, so the reader stops at its next read instead of waiting on a client nobody can answer */
+    private void writeResponses(SocketChannel channel, BlockingQueue<Future<String>> responses) {
+        try(Writer out = new BufferedWriter(new OutputStreamWriter(outputStream(channel), StandardCharsets.UTF_8))) {
+            for(Future<String> response; (response = responses.take()) != END; ) {
+                out.write(response(response));
+                out.write('\n');
+                if(responses.isEmpty()) // flush once the client has no more pipelined requests waiting, so a burst of responses goes out together
+                    out.flush();
+            }
+        } catch(IOException e) { // the client went away
+            try {
+                channel.shutdownInput();
+            } catch(IOException ignored) { // already closed
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String response(Future<String> response) throws InterruptedException {
+        try {
+            return response.get();
+        } catch(ExecutionException e) {
+            errors.increment();
+            Throwable cause = e.getCause();
+            return "ERROR " + (cause instanceof CancellationException ? "the check was cancelled" : String.valueOf(cause.getMessage()).replace('\n', ' '));
+        }
+    }
+
+    /* Start handling a request, returning its response - checks are queued for the workers, and everything else is answered straight away so later requests on the connection see its effect */
+    private Future<String> handle(String line) {
+        String[] parts = line.split(" ", 3);
+        String command = parts[0].toUpperCase();
+        try {
+            if(command.equals("CHECK") && parts.length >= 2) {
+                GrammarSnapshot grammar = registry.get(parts[1]); // looked up now, so the check uses the grammar as it was when the request arrived
+                if(grammar == null)
+                    throw new RuntimeException("No grammar named " + parts[1] + ".");
+                String input = parts.length == 3 ? parts[2] : "";
+                checks.increment();
+                return workers.submit(() -> grammar.recognize(input) ? "YES" : "NO");
+            } else if(command.equals("LOAD") && parts.length == 3) {
+                Path file = resolveLoad(parts[2]);
+                try {
+                    return done("OK " + registry.load(parts[1], file).getGrammarClass());
+                } catch(IOException | RuntimeException e) { // only the file's name goes back to the client, never what's in it
+                    System.err.println("Couldn't load grammar " + parts[1] + " from " + file + ": " + e.getMessage());
+                    throw new RuntimeException("Couldn't load " + parts[2] + " as a grammar.", e);
+                }
+            }
+            else if(command.equals("DROP") && parts.length == 2) {
+                if(!registry.drop(parts[1]))
+                    throw new RuntimeException("No grammar named " + parts[1] + ".");
+                return done("OK");
+            } else if(command.equals("LIST") && parts.length == 1)
+                return done("OK" + (registry.getNames().isEmpty() ? "" : " " + String.join(" ", registry.getNames())));
+            else if(command.equals("STATS") && parts.length == 1)
+                return done("OK checks=" + checks.sum() + " errors=" + errors.sum() + " connections=" + connectionCount.sum() + " open=" + openConnections.sum() + " queued=" + workers.getQueue().size() + " active=" + workers.getActiveCount());
+            else if(command.equals("QUIT") && parts.length == 1)
+                return done("OK");
+            throw new RuntimeException("Unknown request: " + line);
+        } catch(IOException | RuntimeException e) {
+            CompletableFuture<String> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    private static Future<String> done(String response) {
+        return CompletableFuture.completedFuture(response);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        connections.shutdownNow();
+        workers.shutdownNow();
+        if(socketFile != null)
+            Files.deleteIfExists(socketFile);
+    }
+
+    /* Channels.newInputStream and newOutputStream share the channel's blocking lock, so a read waiting for the next request would stop responses from being written - these read and write the channel directly */
+    static InputStream inputStream(ReadableByteChannel channel) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                return length == 0 ? 0 : channel.read(ByteBuffer.wrap(bytes, offset, length));
+            }
+        };
+    }
+
+    static OutputStream outputStream(WritableByteChannel channel) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+                while(buffer.hasRemaining())
+                    channel.write(buffer);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,147 @@
+package main;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/* What a single membership check did, filled in as it runs - only created when the options have a listener, so checks without one pay nothing for it */
+public final class MembershipStats {
+
+    private final int length;
+
+    /* The engine that filled the triangle (or EARLEY), or null if the check was answered before one ran or by the router's DFA or LL(1) engine */
+    private MembershipEngine engine;
+
+    /* The filter that rejected the input, or null if none did */
+    private MembershipFilter.Rejection rejection;
+
+    private boolean cacheHit, verdict, cancelled;
+
+    /* Added to by every thread filling part of the triangle */
+    private final LongAdder cellsFilled, ruleApplications;
+
+    private long chartBytes;
+
+    /* The time spent before the bottom row (cache lookup, filters and chart allocation), on the bottom row, on the rows above it, and in total */
+    private long setupNanos, unaryNanos, binaryNanos, totalNanos;
+
+    private final long startTime;
+
+    /* When the current phase began */
+    private long mark;
+
+    MembershipStats(int length) {
+        this.length = length;
+        cellsFilled = new LongAdder();
+        ruleApplications = new LongAdder();
+        startTime = mark = System.nanoTime();
+    }
+
+    /* The time since the current phase began, starting the next one */
+    private long lap() {
+        long now = System.nanoTime(), elapsed = now - mark;
+        mark = now;
+        return elapsed;
+    }
+
+    void endSetup(MembershipEngine engine) {
+        this.engine = engine;
+        setupNanos = lap();
+    }
+
+    void endUnary() {
+        unaryNanos = lap();
+    }
+
+    void endBinary() {
+        binaryNanos = lap();
+    }
+
+    void addCells(long cells, long rules) {
+        cellsFilled.add(cells);
+        ruleApplications.add(rules);
+    }
+
+    void setChartBytes(long chartBytes) {
+        this.chartBytes = chartBytes;
+    }
+
+    void setCacheHit() {
+        cacheHit = true;
+    }
+
+    void setRejection(MembershipFilter.Rejection rejection) {
+        this.rejection = rejection;
+    }
+
+    void setVerdict(boolean verdict) {
+        this.verdict = verdict;
+    }
+
+    void setCancelled() {
+        cancelled = true;
+    }
+
+    void finish() {
+        totalNanos = System.nanoTime() - startTime;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public MembershipEngine getEngine() {
+        return engine;
+    }
+
+    public MembershipFilter.Rejection getRejection() {
+        return rejection;
+    }
+
+    public boolean isCacheHit() {
+        return cacheHit;
+    }
+
+    public boolean getVerdict() {
+        return verdict;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /* The cells filled above the bottom row, not counting ones seeded from the span cache - for the Earley engine, the Earley sets built */
+    public long getCellsFilled() {
+        return cellsFilled.sum();
+    }
+
+    /* The number of times a binary production added its head to a cell - for the Earley engine, the items in its sets */
+    public long getRuleApplications() {
+        return ruleApplications.sum();
+    }
+
+    public long getChartBytes() {
+        return chartBytes;
+    }
+
+    public long getSetupNanos() {
+        return setupNanos;
+    }
+
+    public long getUnaryNanos() {
+        return unaryNanos;
+    }
+
+    public long getBinaryNanos() {
+        return binaryNanos;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "length " + length + ", engine " + engine + (cacheHit ? ", cache hit" : "") + (rejection != null ? ", rejected by " + rejection : "") + (cancelled ? ", cancelled" : ", verdict " + verdict)
+                + ", " + getCellsFilled() + " cells, " + getRuleApplications() + " rule applications, " + chartBytes + " chart bytes, setup/unary/binary " + setupNanos / 1000 + "/" + unaryNanos / 1000 + "/" + binaryNanos / 1000 + "us";
+    }
+
+}
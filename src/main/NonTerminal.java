@@ -1,36 +1,89 @@
 package main;
 
-import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.*;
+import java.util.function.Predicate;
 
 public class NonTerminal {
 
-    private char symbol;
+    private int symbol;
+
+    private SymbolTable symbolTable;
 
     private List<Production> productionList;
 
-    public NonTerminal(char symbol) {
+    /* The same productions as the list, so duplicates can be found without scanning it */
+    private Set<Production> productionSet;
+
+    /* Run whenever a production is added, removed or changed, so the CFG holding this non-terminal can drop what it compiled from the old productions */
+    private final Runnable onChange;
+
+    public NonTerminal(SymbolTable symbolTable, int symbol) {
+        this(symbolTable, symbol, () -> {});
+    }
+
+    NonTerminal(SymbolTable symbolTable, int symbol, Runnable onChange) {
+        this.symbolTable = symbolTable;
         this.symbol = symbol;
-        productionList = new CopyOnWriteArrayList<>(); // CopyOnWriteArrayList so we can modify while iterating
+        this.onChange = onChange;
+        productionList = new ArrayList<>();
+        productionSet = new HashSet<>();
+    }
+
+    public void addProduction(int[] symbols) {
+        Production production = new Production(this, symbols);
+        if(productionSet.add(production)) { // can't be a duplicate
+            productionList.add(production);
+            onChange.run();
+        }
     }
 
+    /* Add a production written one character per symbol, interning each character as a symbol name (lambda characters are left out) */
     public void addProduction(String expression) {
-        for(Production existing : productionList)
-            if(existing.getExpression().equals(expression)) // can't be a duplicate
-                return;
-        productionList.add(new Production(this, expression));
+        int[] symbols = new int[expression.length()];
+        int count = 0;
+        for(char c : expression.toCharArray())
+            if(c != Main.LAMBDA)
+                symbols[count++] = symbolTable.intern(Character.toString(c));
+        addProduction(Arrays.copyOf(symbols, count));
     }
 
     public void removeProduction(Production production) {
-        productionList.remove(production);
+        if(productionSet.remove(production)) {
+            productionList.remove(production);
+            onChange.run();
+        }
     }
 
-    public char getSymbol() {
+    /* Remove every production matching the filter in one pass over the list */
+    public void removeProductionsIf(Predicate<Production> filter) {
+        if(productionList.removeIf(production -> filter.test(production) && productionSet.remove(production)))
+            onChange.run();
+    }
+
+    /* Change a production's symbols, dropping the production if the change makes it a duplicate of another one */
+    void symbolsChanged(Production production, int[] symbols) {
+        productionSet.remove(production); // its hash is about to change
+        production.replaceSymbols(symbols);
+        if(!productionSet.add(production))
+            productionList.remove(production);
+        onChange.run();
+    }
+
+    public int getSymbol() {
         return symbol;
     }
 
+    public String getName() {
+        return symbolTable.getName(symbol);
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    /* The productions, read-only - they're changed through this non-terminal so the change is seen */
     public List<Production> getProductionList() {
-        return productionList;
+        return Collections.unmodifiableList(productionList);
     }
 
     public String productionsToString() {
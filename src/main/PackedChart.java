@@ -0,0 +1,68 @@
+package main;
+
+/* A chart holding only the n(n+1)/2 cells of the triangle in one flat array, with every cell being a fixed-width bitset */
+public class PackedChart implements Chart {
+
+    private final int words;
+
+    private int length;
+
+    /* The cells of the triangle, stored row by row (all cells of length 1, then of length 2, etc.) - may be longer than needed when the chart is reused */
+    private long[] data;
+
+    public PackedChart(int words, int length) {
+        this.words = words;
+        data = new long[0];
+        reset(length);
+    }
+
+    /* Reuse this chart for an input of the given length, only allocating if it's longer than any input before it - every cell is stored before it's read, so nothing needs clearing */
+    public void reset(int length) {
+        long size = Chart.cellCount(length) * words;
+        if(size > Integer.MAX_VALUE - 8) // the largest array the JVM can allocate
+            throw new RuntimeException("An input of length " + length + " is too long for a packed chart.");
+        if(size > data.length)
+            data = new long[(int) size];
+        this.length = length;
+    }
+
+    /* The index of the first word of the cell at (start, length) */
+    private int offset(int start, int length) {
+        long row = (long) (length - 1) * (this.length + 1) - (long) (length - 1) * length / 2; // the number of cells in all shorter rows
+        return (int) ((row + start) * words);
+    }
+
+    @Override
+    public void load(int start, int length, long[] into) {
+        System.arraycopy(data, offset(start, length), into, 0, words);
+    }
+
+    @Override
+    public void store(int start, int length, long[] cell) {
+        System.arraycopy(cell, 0, data, offset(start, length), words);
+    }
+
+    @Override
+    public boolean contains(int start, int length, int id) {
+        return (data[offset(start, length) + (id >>> 6)] & (1L << id)) != 0;
+    }
+
+    @Override
+    public boolean isEmpty(int start, int length) {
+        int offset = offset(start, length);
+        for(int w = 0; w < words; w++)
+            if(data[offset + w] != 0)
+                return false;
+        return true;
+    }
+
+    @Override
+    public long getBytes() {
+        return 16 + 8L * data.length;
+    }
+
+    public static long estimateBytes(CompiledGrammar grammar, int length) {
+        return 16 + 8 * Chart.cellCount(length) * grammar.getWords();
+    }
+
+}
@@ -0,0 +1,208 @@
+package main;
+
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/* A shared packed parse forest over the CYK triangle, recorded while the triangle is filled - each (non-terminal, span) node is stored once, with a packed entry for every (split, binary production) that derives it,
+   so the forest's size is bounded by the number of entries rather than the number of parses. Trees and derivation counts are only worked out when they're asked for */
+public class ParseForest {
+
+    private final CompiledGrammar grammar;
+
+    private final int[] tokens;
+
+    private final int n;
+
+    /* The packed entries of each cell above the bottom row, indexed by cellIndex, as (head, split, left, right) quadruples - split is the length of the left child's span */
+    private final int[][] entries;
+
+    /* Which non-terminals derive each span, for telling which nodes exist */
+    private final PackedChart chart;
+
+    /* Maps trees back to the productions convertToCNF split up, or null to return trees over the CNF form */
+    private final CNFOrigins origins;
+
+    private final long packedCount, bytes;
+
+    /* The number of derivations of each node, indexed by cellIndex and worked out for every node the first time a count is asked for */
+    private List<Map<Integer, BigInteger>> counts;
+
+    /* The trees found so far for each node, and how many were asked for when they were found (more can't exist if fewer were found) */
+    private final Map<Long, List<ParseTree>> trees;
+
+    private final Map<Long, Integer> treeLimits;
+
+    /* Fill the triangle for the input (as dense terminal indexes) and record the forest, rejecting it once the forest grows over the options' chart memory limit */
+    ParseForest(CompiledGrammar grammar, int[] tokens, MembershipOptions options, CNFOrigins origins) {
+        this.grammar = grammar;
+        this.tokens = tokens.clone();
+        this.origins = origins;
+        n = tokens.length;
+        if(Chart.cellCount(n) > Integer.MAX_VALUE - 8) // the largest array the JVM can allocate
+            throw new RuntimeException("An input of length " + n + " is too long to record a parse forest for.");
+        long estimate = PackedChart.estimateBytes(grammar, n) + 8 * Chart.cellCount(n); // the chart and the entry array references, before any entries
+        if(estimate > options.getMaxChartBytes())
+            throw new RuntimeException("An input of length " + n + " needs at least " + estimate + " bytes for its parse forest, over the limit of " + options.getMaxChartBytes() + " bytes.");
+        entries = new int[(int) Chart.cellCount(n)][];
+        chart = new PackedChart(grammar.getWords(), n);
+        trees = new HashMap<>();
+        treeLimits = new HashMap<>();
+        if(n == 0 || Arrays.stream(tokens).anyMatch(token -> token < 0)) { // a symbol outside the grammar means nothing derives the input or any span over it
+            packedCount = 0;
+            bytes = estimate;
+            return;
+        }
+        long[] cell = new long[grammar.getWords()];
+        for(int s = 0; s < n; s++) {
+            grammar.loadTerminal(tokens[s], cell);
+            chart.store(s, 1, cell);
+        }
+        LongAdder packed = new LongAdder(), used = new LongAdder();
+        used.add(estimate);
+        SpanTask.fillTriangle((length, from, to) -> {
+            long[] left = new long[grammar.getWords()], right = new long[grammar.getWords()], filled = new long[grammar.getWords()];
+            int[] buffer = new int[64];
+            for(int s = from; s < to; s++) {
+                int size = fillCell(s, length, left, right, filled, buffer);
+                if(size > buffer.length) { // the buffer was too small, so grow it and fill the cell again
+                    buffer = new int[Integer.highestOneBit(size) << 1];
+                    size = fillCell(s, length, left, right, filled, buffer);
+                }
+                if(size > 0) {
+                    entries[cellIndex(s, length)] = Arrays.copyOf(buffer, size);
+                    packed.add(size / 4);
+                    used.add(16 + 4L * size);
+                }
+            }
+            if(used.sum() > options.getMaxChartBytes())
+                throw new RuntimeException("The parse forest of an input of length " + n + " grew past the limit of " + options.getMaxChartBytes() + " bytes.");
+        }, n, options, CancellationToken.forCall(options));
+        packedCount = packed.sum();
+        bytes = used.sum();
+    }
+
+    /* Fill the cell at (start, length) into the chart and write its packed entries to the buffer, returning how many ints they take - if that's more than the buffer holds, only the count is right */
+    private int fillCell(int start, int length, long[] left, long[] right, long[] cell, int[] buffer) {
+        Arrays.fill(cell, 0);
+        int size = 0;
+        for(int p = 1; p <= length - 1; p++) {
+            if(chart.isEmpty(start, p) || chart.isEmpty(start + p, length - p))
+                continue;
+            chart.load(start, p, left);
+            chart.load(start + p, length - p, right);
+            for(int w = 0; w < left.length; w++)
+                for(long bits = left[w]; bits != 0; bits &= bits - 1) {
+                    int b = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    if(!CompiledGrammar.intersects(grammar.getRightMask(b), right))
+                        continue;
+                    int[] children = grammar.getRightChildren(b), heads = grammar.getHeads(b);
+                    for(int r = 0; r < children.length; r++)
+                        if(CompiledGrammar.get(right, children[r])) {
+                            CompiledGrammar.set(cell, heads[r]);
+                            if(size + 4 <= buffer.length) {
+                                buffer[size] = heads[r];
+                                buffer[size + 1] = p;
+                                buffer[size + 2] = b;
+                                buffer[size + 3] = children[r];
+                            }
+                            size += 4;
+                        }
+                }
+        }
+        chart.store(start, length, cell);
+        return size;
+    }
+
+    /* The index of the cell at (start, length) in entries, with the cells of each length following those of the length below - worked out in longs, since the products overflow an int well before the index does */
+    private int cellIndex(int start, int length) {
+        return (int) ((long) (length - 1) * n - (long) (length - 1) * (length - 2) / 2 + start);
+    }
+
+    public boolean isMember() {
+        return n > 0 && grammar.getStartId() >= 0 && chart.contains(0, n, grammar.getStartId());
+    }
+
+    /* The number of packed entries recorded, i.e. the number of ways some node is split into two children */
+    public long getPackedCount() {
+        return packedCount;
+    }
+
+    /* The estimated bytes held by the forest */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /* The number of derivations of the whole input from the start symbol in the CNF form - this isn't the number over the grammar as written once convertToCNF has removed lambda or unit productions,
+       since those can merge several original derivations into one CNF derivation (or, with a cycle of unit productions, stand for infinitely many) */
+    public synchronized BigInteger countDerivations() {
+        if(!isMember())
+            return BigInteger.ZERO;
+        if(counts == null)
+            countAll();
+        return counts.get(cellIndex(0, n)).getOrDefault(grammar.getStartId(), BigInteger.ZERO);
+    }
+
+    /* Count the derivations of every node, shortest spans first so each node's children are counted before it - which is also the order of cellIndex, so each cell's counts are added at its index */
+    private void countAll() {
+        counts = new ArrayList<>(entries.length);
+        for(int s = 0; s < n; s++) {
+            Map<Integer, BigInteger> cell = new HashMap<>();
+            for(int id : grammar.getTerminalNonTerminals(tokens[s]))
+                cell.put(id, BigInteger.ONE);
+            counts.add(cell);
+        }
+        for(int length = 2; length <= n; length++)
+            for(int s = 0; s + length <= n; s++) {
+                Map<Integer, BigInteger> cell = new HashMap<>();
+                int[] packed = entries[cellIndex(s, length)];
+                for(int e = 0; packed != null && e < packed.length; e += 4) {
+                    BigInteger left = counts.get(cellIndex(s, packed[e + 1])).get(packed[e + 2]), right = counts.get(cellIndex(s + packed[e + 1], length - packed[e + 1])).get(packed[e + 3]);
+                    cell.merge(packed[e], left.multiply(right), BigInteger::add);
+                }
+                counts.add(cell);
+            }
+    }
+
+    /* The first derivation tree of the input, or null if it isn't a member */
+    public ParseTree firstTree() {
+        List<ParseTree> first = trees(1);
+        return first.isEmpty() ? null : first.get(0);
+    }
+
+    /* Up to k derivation trees of the input, in the order of their packed entries (shortest left child first at each node) - only the nodes these trees use are visited */
+    public synchronized List<ParseTree> trees(int k) {
+        if(!isMember() || k <= 0)
+            return new ArrayList<>();
+        List<ParseTree> result = new ArrayList<>(trees(grammar.getStartId(), 0, n, k));
+        if(origins != null)
+            result.replaceAll(origins::restore);
+        return result;
+    }
+
+    /* Up to k trees of the node for the given non-terminal id over the span (start, length), found at most once per node for each k */
+    private List<ParseTree> trees(int id, int start, int length, int k) {
+        long key = (long) cellIndex(start, length) * grammar.getNonTerminalCount() + id;
+        List<ParseTree> found = trees.get(key);
+        if(found != null && (treeLimits.get(key) >= k || found.size() < treeLimits.get(key)))
+            return found.size() > k ? found.subList(0, k) : found;
+        found = new ArrayList<>();
+        String name = grammar.getNonTerminalName(id);
+        if(length == 1)
+            found.add(new ParseTree(name, start, start + 1, Collections.singletonList(ParseTree.leaf(grammar.getTerminalName(tokens[start]), start))));
+        int[] packed = entries[cellIndex(start, length)];
+        for(int e = 0; length > 1 && packed != null && e < packed.length && found.size() < k; e += 4) {
+            if(packed[e] != id)
+                continue;
+            int split = packed[e + 1];
+            List<ParseTree> lefts = trees(packed[e + 2], start, split, k), rights = trees(packed[e + 3], start + split, length - split, k);
+            for(int l = 0; l < lefts.size() && found.size() < k; l++)
+                for(int r = 0; r < rights.size() && found.size() < k; r++)
+                    found.add(new ParseTree(name, start, start + length, Arrays.asList(lefts.get(l), rights.get(r))));
+        }
+        trees.put(key, found);
+        treeLimits.put(key, k);
+        return found;
+    }
+
+}
@@ -0,0 +1,69 @@
+package main;
+
+import java.util.*;
+
+/* An immutable derivation tree over a span of the input - subtrees are shared between the trees taken from one forest, so many trees cost little more than one */
+public final class ParseTree {
+
+    private final String symbol;
+
+    /* The tokens [start, end) of the input the tree derives */
+    private final int start, end;
+
+    /* Empty for a terminal leaf */
+    private final List<ParseTree> children;
+
+    ParseTree(String symbol, int start, int end, List<ParseTree> children) {
+        this.symbol = symbol;
+        this.start = start;
+        this.end = end;
+        this.children = Collections.unmodifiableList(children);
+    }
+
+    /* A leaf for the terminal at the given token position */
+    static ParseTree leaf(String terminal, int position) {
+        return new ParseTree(terminal, position, position + 1, new ArrayList<>());
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    public List<ParseTree> getChildren() {
+        return children;
+    }
+
+    public boolean isTerminal() {
+        return children.isEmpty();
+    }
+
+    /* The tree in bracketed form, e.g. S(a S(a b) b) */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        append(builder);
+        return builder.toString();
+    }
+
+    private void append(StringBuilder builder) {
+        builder.append(symbol);
+        if(children.isEmpty())
+            return;
+        builder.append('(');
+        for(int i = 0; i < children.size(); i++) {
+            if(i > 0)
+                builder.append(' ');
+            children.get(i).append(builder);
+        }
+        builder.append(')');
+    }
+
+}
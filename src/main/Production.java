@@ -1,41 +1,63 @@
 package main;
 
+import java.util.Arrays;
+
 public class Production {
 
     private NonTerminal nonTerminal;
 
-    private String expression;
+    /* The ids of the symbols this production derives, with an empty array being a lambda production */
+    private int[] symbols;
 
-    public Production(NonTerminal nonTerminal, String expression) {
+    public Production(NonTerminal nonTerminal, int[] symbols) {
         this.nonTerminal = nonTerminal;
-        this.expression = expression;
+        this.symbols = symbols;
     }
 
     public NonTerminal getNonTerminal() {
         return nonTerminal;
     }
 
+    /* The symbol ids of this production - the array is shared, so it mustn't be changed */
+    public int[] getSymbols() {
+        return symbols;
+    }
+
+    public int length() {
+        return symbols.length;
+    }
+
+    /* The text of this production's expression, for displaying */
     public String getExpression() {
-        return expression;
+        return nonTerminal.getSymbolTable().toString(symbols);
+    }
+
+    public void setSymbols(int[] symbols) {
+        nonTerminal.symbolsChanged(this, symbols);
+    }
+
+    /* Only called by the non-terminal, once it has taken this production out of its set of productions */
+    void replaceSymbols(int[] symbols) {
+        this.symbols = symbols;
     }
 
-    /* Replaces the expression with a string with the character at the given index being replaced with another given character */
-    public void replaceChar(int index, char c) {
-        expression = expression.substring(0, index) + c + expression.substring(index + 1);
+    /* Check if this production contains the given symbol */
+    public boolean contains(int symbol) {
+        for(int s : symbols)
+            if(s == symbol)
+                return true;
+        return false;
     }
 
-    /* Replaces the expression with a string with the first occurrence of the given pair being replaced with a given character */
-    public void replaceFirstPairWithChar(String pair, char c) {
-        expression = expression.replaceFirst(pair, Character.toString(c));
+    /* Productions are equal when they belong to the same non-terminal and derive the same symbols, which is how duplicates are found */
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Production && ((Production) o).nonTerminal == nonTerminal && Arrays.equals(((Production) o).symbols, symbols);
     }
 
-    /* Check if this production's expression is in CNF form */
-    public boolean satisfiesCNF() {
-        char c = expression.charAt(0);
-        if(expression.length() == 1 && (Character.isDigit(c) || !Character.isUpperCase(c))) // expression with a single terminal character
-            return true;
-        else
-            return expression.length() == 2 && Character.isUpperCase(c) && Character.isUpperCase(expression.charAt(1)); // expression with 2 non-terminal characters
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(symbols);
     }
 
 }
@@ -0,0 +1,61 @@
+package main;
+
+import java.util.concurrent.RecursiveAction;
+
+/* Fills a range of cells on one anti-diagonal of the CYK triangle, splitting itself across the pool - cells of the same length only read shorter ones, so they're independent */
+class SpanTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /* The rough number of cell splits a task should handle on its own before it's worth forking */
+    static final int MIN_WORK = 4096;
+
+    /* Fills the cells of the given length starting at from (inclusive) to to (exclusive) on the calling thread */
+    interface Filler {
+        void fill(int length, int from, int to);
+    }
+
+    private final Filler filler;
+
+    /* Checked before each range of cells is filled, or null if the check can't be cancelled */
+    private final CancellationToken token;
+
+    private final int length, from, to;
+
+    SpanTask(Filler filler, CancellationToken token, int length, int from, int to) {
+        this.filler = filler;
+        this.token = token;
+        this.length = length;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+        if((long) (to - from) * (length - 1) > MIN_WORK && to - from > 1) { // each cell takes length - 1 splits
+            int middle = (from + to) >>> 1;
+            invokeAll(new SpanTask(filler, token, length, from, middle), new SpanTask(filler, token, length, middle, to));
+        } else {
+            if(token != null)
+                token.throwIfCancelled();
+            filler.fill(length, from, to);
+        }
+    }
+
+    /* Fill every anti-diagonal above the bottom row, in parallel on the pool if the options allow it for this length, throwing a CancellationException once the token (if it isn't null) is cancelled */
+    static void fillTriangle(Filler filler, int n, MembershipOptions options, CancellationToken token) {
+        if(n >= options.getParallelThreshold() && options.getPool().getParallelism() > 1)
+            for(int l = 2; l <= n; l++) // each anti-diagonal only depends on the ones below it, so they're run one after another
+                options.getPool().invoke(new SpanTask(filler, token, l, 0, n - l + 1));
+        else if(token == null)
+            for(int l = 2; l <= n; l++)
+                filler.fill(l, 0, n - l + 1);
+        else
+            for(int l = 2; l <= n; l++)
+                for(int from = 0, step = Math.max(1, MIN_WORK / (l - 1)); from < n - l + 1; from += step) { // checked about as often as a parallel task would be
+                    token.throwIfCancelled();
+                    filler.fill(l, from, Math.min(n - l + 1, from + step));
+                }
+    }
+
+}
@@ -0,0 +1,87 @@
+package main;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/* A chart holding each non-empty cell as a sorted array of non-terminal ids, for grammars too wide for a bitset per cell */
+public class SparseChart implements Chart {
+
+    private final int length;
+
+    /* The bytes this chart may grow to before the fill is aborted */
+    private final long maxBytes;
+
+    /* The cells of the triangle, stored row by row like in PackedChart, with null for empty cells */
+    private final int[][] cells;
+
+    /* Atomic since cells may be stored from several threads at once */
+    private final AtomicLong bytes;
+
+    public SparseChart(int length, long maxBytes) {
+        long size = Chart.cellCount(length);
+        if(size > Integer.MAX_VALUE - 8) // the largest array the JVM can allocate
+            throw new RuntimeException("An input of length " + length + " is too long for a sparse chart.");
+        this.length = length;
+        this.maxBytes = maxBytes;
+        cells = new int[(int) size][];
+        bytes = new AtomicLong(16 + 8 * size);
+    }
+
+    private int index(int start, int length) {
+        long row = (long) (length - 1) * (this.length + 1) - (long) (length - 1) * length / 2; // the number of cells in all shorter rows
+        return (int) (row + start);
+    }
+
+    @Override
+    public void load(int start, int length, long[] into) {
+        Arrays.fill(into, 0);
+        int[] cell = cells[index(start, length)];
+        if(cell != null)
+            for(int id : cell)
+                CompiledGrammar.set(into, id);
+    }
+
+    @Override
+    public void store(int start, int length, long[] cell) {
+        int count = 0;
+        for(long word : cell)
+            count += Long.bitCount(word);
+        int index = index(start, length);
+        if(cells[index] != null)
+            bytes.addAndGet(-16 - 4L * cells[index].length);
+        if(count == 0) {
+            cells[index] = null;
+            return;
+        }
+        int[] ids = new int[count];
+        count = 0;
+        for(int w = 0; w < cell.length; w++)
+            for(long bits = cell[w]; bits != 0; bits &= bits - 1)
+                ids[count++] = (w << 6) + Long.numberOfTrailingZeros(bits); // ids come out in ascending order
+        cells[index] = ids;
+        if(bytes.addAndGet(16 + 4L * count) > maxBytes) // the estimate was too optimistic for this input, so stop before the JVM runs out of memory
+            throw new RuntimeException("An input of length " + this.length + " needs more than " + maxBytes + " bytes of chart memory.");
+    }
+
+    @Override
+    public boolean contains(int start, int length, int id) {
+        int[] cell = cells[index(start, length)];
+        return cell != null && Arrays.binarySearch(cell, id) >= 0;
+    }
+
+    @Override
+    public boolean isEmpty(int start, int length) {
+        return cells[index(start, length)] == null;
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public static long estimateBytes(CompiledGrammar grammar, int length) {
+        long cells = Chart.cellCount(length);
+        return 16 + 8 * cells + cells * (16 + 4L * Math.min(grammar.getNonTerminalCount(), SPARSE_EXPECTED_MEMBERS));
+    }
+
+}
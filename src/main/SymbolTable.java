@@ -0,0 +1,64 @@
+package main;
+
+import java.util.*;
+
+/* Interns the names of a grammar's symbols to dense ints, so productions can be stored and compared as int arrays */
+public class SymbolTable {
+
+    /* The name of each symbol, indexed by its id */
+    private final List<String> names;
+
+    private final Map<String, Integer> ids;
+
+    public SymbolTable() {
+        names = new ArrayList<>();
+        ids = new HashMap<>();
+    }
+
+    /* A copy of the given table, which can then intern new names without changing it */
+    public SymbolTable(SymbolTable other) {
+        names = new ArrayList<>(other.names);
+        ids = new HashMap<>(other.ids);
+    }
+
+    /* Get the id of the symbol with the given name, giving it the next unused id if it hasn't been seen before */
+    public int intern(String name) {
+        Integer id = ids.get(name);
+        if(id == null) {
+            id = names.size();
+            names.add(name);
+            ids.put(name, id);
+        }
+        return id;
+    }
+
+    /* Get the id of the symbol with the given name, or -1 if it hasn't been interned */
+    public int getId(String name) {
+        return ids.getOrDefault(name, -1);
+    }
+
+    public String getName(int id) {
+        return names.get(id);
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    /* Join the names of the given symbols into the text of an expression, separating them with spaces unless every name is a single character */
+    public String toString(int[] symbols) {
+        if(symbols.length == 0)
+            return Character.toString(Main.LAMBDA);
+        boolean spaced = false;
+        for(int symbol : symbols)
+            spaced |= names.get(symbol).length() != 1;
+        StringBuilder result = new StringBuilder();
+        for(int symbol : symbols) {
+            if(spaced && result.length() > 0)
+                result.append(' ');
+            result.append(names.get(symbol));
+        }
+        return result.toString();
+    }
+
+}
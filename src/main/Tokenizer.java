@@ -0,0 +1,85 @@
+package main;
+
+import java.util.*;
+
+/* Splits input text into the dense indexes of a grammar's terminals. In token mode whitespace separates tokens, and within a run of other characters the longest terminal name matching at each position is taken, so single character terminals can still be written without spaces. Otherwise every character is a token, as in the original CYK, so a space is a character no terminal matches */
+public final class Tokenizer {
+
+    /* The name of each terminal, indexed by its dense terminal index */
+    private final String[] terminalNames;
+
+    /* A map from each terminal name to its dense terminal index */
+    private final Map<String, Integer> terminalIndexes;
+
+    /* The same map for terminals whose name is a single character, so the common case of tokenizing doesn't build substrings */
+    private final Map<Character, Integer> charIndexes;
+
+    /* The length of the longest terminal name, which bounds the greedy match */
+    private final int maxTerminalLength;
+
+    /* Whether whitespace separates tokens rather than being read as a character */
+    private final boolean tokenMode;
+
+    public Tokenizer(String[] terminalNames, boolean tokenMode) {
+        this.terminalNames = terminalNames;
+        this.tokenMode = tokenMode;
+        terminalIndexes = new HashMap<>();
+        charIndexes = new HashMap<>();
+        int longest = 1;
+        for(int t = 0; t < terminalNames.length; t++) {
+            if(terminalIndexes.put(terminalNames[t], t) != null)
+                throw new RuntimeException("Duplicate terminal: " + terminalNames[t] + ".");
+            if(terminalNames[t].length() == 1)
+                charIndexes.put(terminalNames[t].charAt(0), t);
+            longest = Math.max(longest, terminalNames[t].length());
+        }
+        maxTerminalLength = longest;
+    }
+
+    /* Map the input to dense terminal indexes, with -1 for a character that doesn't start any terminal */
+    public int[] tokenize(String input) {
+        int[] tokens = new int[input.length()];
+        int count = 0;
+        for(int i = 0; i < input.length(); ) {
+            if(tokenMode && Character.isWhitespace(input.charAt(i))) {
+                i++;
+                continue;
+            }
+            int end = i + 1; // the end of the longest name that could start here, stopping at whitespace
+            while(end < input.length() && end - i < maxTerminalLength && !Character.isWhitespace(input.charAt(end)))
+                end++;
+            int matched = -1, length = 1;
+            if(maxTerminalLength > 1) // only look for longer names if the grammar has any
+                for(int l = end - i; l > 1 && matched < 0; l--) {
+                    Integer terminal = terminalIndexes.get(input.substring(i, i + l));
+                    if(terminal != null) {
+                        matched = terminal;
+                        length = l;
+                    }
+                }
+            if(matched < 0)
+                matched = charIndexes.getOrDefault(input.charAt(i), -1);
+            tokens[count++] = matched;
+            i += length;
+        }
+        return count == tokens.length ? tokens : Arrays.copyOf(tokens, count);
+    }
+
+    public int getTerminalCount() {
+        return terminalNames.length;
+    }
+
+    public String getTerminalName(int token) {
+        return terminalNames[token];
+    }
+
+    public boolean isTokenMode() {
+        return tokenMode;
+    }
+
+    /* The dense index of the terminal with the given name, or -1 if it isn't one */
+    public int getTerminalIndex(String name) {
+        return terminalIndexes.getOrDefault(name, -1);
+    }
+
+}
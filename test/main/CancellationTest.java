@@ -0,0 +1,69 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/* Checks that every engine the router can pick stops at the options' time limit and reports to their listener */
+public class CancellationTest {
+
+    /* Far longer than a 20ms limit should let any engine run past it, but short enough to tell a limit that's ignored from one that isn't */
+    private static final long SLACK_MILLIS = 1000;
+
+    /* S -> SS | a, whose inputs of a's are all members with a huge number of derivations, so every engine takes about cubic time on them */
+    private static CFG ambiguous() {
+        CFG cfg = new CFG();
+        cfg.addTerminal('a');
+        cfg.addNonTerminal('S').addProduction("SS");
+        cfg.addNonTerminal('S').addProduction("a");
+        return cfg;
+    }
+
+    @Test
+    public void timeLimitStopsEveryCubicEngine() {
+        MembershipRouter router = new MembershipRouter(ambiguous(), new MembershipOptions());
+        for(MembershipEngine engine : new MembershipEngine[] {MembershipEngine.CHART, MembershipEngine.MATRIX, MembershipEngine.EARLEY}) {
+            List<MembershipStats> checked = new ArrayList<>();
+            MembershipOptions options = new MembershipOptions().setEngine(engine).setTimeLimitMillis(20).setListener(checked::add);
+            long start = System.nanoTime();
+            assertThrows(CancellationException.class, () -> router.recognize("a".repeat(3000), options), engine + " ran past its time limit");
+            assertTrue((System.nanoTime() - start) / 1_000_000 < SLACK_MILLIS, engine + " took too long to notice its time limit");
+            assertEquals(1, checked.size());
+            assertTrue(checked.get(0).isCancelled());
+            assertEquals(engine, checked.get(0).getEngine());
+        }
+    }
+
+    @Test
+    public void earleyReportsToTheListener() {
+        MembershipRouter router = new MembershipRouter(ambiguous(), new MembershipOptions());
+        List<MembershipStats> checked = new ArrayList<>();
+        assertTrue(router.recognize("a".repeat(50), new MembershipOptions().setEngine(MembershipEngine.EARLEY).setListener(checked::add)));
+        assertEquals(1, checked.size());
+        assertEquals(MembershipEngine.EARLEY, checked.get(0).getEngine());
+        assertTrue(checked.get(0).getVerdict());
+        assertEquals(51, checked.get(0).getCellsFilled()); // one Earley set per position
+    }
+
+    @Test
+    public void cancelledTokenStopsLinearEngines() {
+        CFG cfg = new CFG();
+        cfg.addTerminal('a');
+        cfg.addTerminal('b');
+        cfg.addNonTerminal('S').addProduction("aS");
+        cfg.addNonTerminal('S').addProduction("b");
+        MembershipRouter router = new MembershipRouter(cfg, new MembershipOptions());
+        assertEquals(GrammarClass.RIGHT_LINEAR, router.getGrammarClass());
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        assertThrows(CancellationException.class, () -> router.recognize("aab", new MembershipOptions().setCancellationToken(token)));
+        List<MembershipStats> checked = new ArrayList<>();
+        assertTrue(router.recognize("aab", new MembershipOptions().setListener(checked::add)));
+        assertEquals(1, checked.size());
+    }
+
+}
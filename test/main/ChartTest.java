@@ -0,0 +1,88 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/* Checks the choice between the packed and sparse chart layouts, and that both hold the same cells */
+public class ChartTest {
+
+    @Test
+    public void narrowCellsStayPacked() {
+        CompiledGrammar grammar = GrammarGenerator.randomCNF(100, 200, 3, 1).compile(); // 2 words a cell
+        assertEquals(2, grammar.getWords());
+        for(int length : new int[] {10, 3000, 10000}) {
+            assertFalse(Chart.useSparse(grammar, length), "a sparse chart for an input of length " + length);
+            assertEquals(PackedChart.estimateBytes(grammar, length), Chart.estimateBytes(grammar, length));
+        }
+        assertTrue(SparseChart.estimateBytes(grammar, 3000) > PackedChart.estimateBytes(grammar, 3000)); // the layout the old choice took, at more than twice the size
+    }
+
+    @Test
+    public void wideCellsGoSparseOnceLarge() {
+        CompiledGrammar grammar = GrammarGenerator.randomCNF(1000, 2000, 3, 1).compile(); // 16 words a cell
+        assertFalse(Chart.useSparse(grammar, 100), "a chart under the dense limit is always packed");
+        assertTrue(Chart.useSparse(grammar, 3000));
+        assertEquals(SparseChart.estimateBytes(grammar, 3000), Chart.estimateBytes(grammar, 3000));
+        assertTrue(Chart.estimateBytes(grammar, 3000) < PackedChart.estimateBytes(grammar, 3000));
+        assertTrue(Chart.create(grammar, 3000, Long.MAX_VALUE) instanceof SparseChart);
+        assertTrue(Chart.create(grammar, 100, Long.MAX_VALUE) instanceof PackedChart);
+    }
+
+    @Test
+    public void rejectsChartsOverTheLimitBeforeAllocating() {
+        CompiledGrammar grammar = GrammarGenerator.randomCNF(100, 200, 3, 1).compile();
+        RuntimeException e = assertThrows(RuntimeException.class, () -> Chart.create(grammar, 100000, 1L << 30));
+        assertTrue(e.getMessage().contains("over the limit"), e.getMessage());
+    }
+
+    @Test
+    public void layoutsHoldTheSameCells() {
+        int words = 3, length = 40;
+        Random random = new Random(7);
+        PackedChart packed = new PackedChart(words, length);
+        SparseChart sparse = new SparseChart(length, Long.MAX_VALUE);
+        for(int l = 1; l <= length; l++)
+            for(int s = 0; s + l <= length; s++) {
+                long[] cell = new long[words];
+                if(random.nextInt(3) > 0) // a third of the cells left empty
+                    for(int i = random.nextInt(8); i >= 0; i--)
+                        CompiledGrammar.set(cell, random.nextInt(64 * words));
+                packed.store(s, l, cell);
+                sparse.store(s, l, cell);
+            }
+        long[] fromPacked = new long[words], fromSparse = new long[words];
+        for(int l = 1; l <= length; l++)
+            for(int s = 0; s + l <= length; s++) {
+                packed.load(s, l, fromPacked);
+                sparse.load(s, l, fromSparse);
+                assertArrayEquals(fromPacked, fromSparse);
+                assertEquals(packed.isEmpty(s, l), sparse.isEmpty(s, l));
+                for(int id = 0; id < 64 * words; id++)
+                    assertEquals(packed.contains(s, l, id), sparse.contains(s, l, id));
+            }
+    }
+
+    @Test
+    public void sparseChartStopsPastItsLimit() {
+        SparseChart sparse = new SparseChart(10, 1000);
+        long[] full = {-1L, -1L};
+        assertThrows(RuntimeException.class, () -> {
+            for(int s = 0; s < 10; s++)
+                sparse.store(s, 1, full);
+        });
+    }
+
+    @Test
+    public void packedChartIsReusedForShorterInputs() {
+        PackedChart chart = new PackedChart(2, 100);
+        long bytes = chart.getBytes();
+        chart.reset(50);
+        assertEquals(bytes, chart.getBytes());
+        chart.reset(200);
+        assertTrue(chart.getBytes() > bytes);
+    }
+
+}
@@ -0,0 +1,180 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/* Checks the compiled, bitset-celled engine against the original CYK over the CFG's productions, and that the compiled form follows the CFG it came from */
+public class CompiledGrammarTest {
+
+    private static final int GRAMMARS = 20, INPUTS = 10, MAX_LENGTH = 30;
+
+    /* The original CYK, with a set of symbols for each cell and every production checked at every split */
+    private static boolean originalCYK(CFG cnf, int[] symbols) {
+        int n = symbols.length;
+        if(n == 0)
+            return false;
+        List<Set<Integer>> table = new ArrayList<>(); // the cell for (s, l) at (l - 1) * n + s
+        for(int i = 0; i < n * n; i++)
+            table.add(new HashSet<>());
+        for(int s = 0; s < n; s++)
+            for(NonTerminal a : cnf.getNonTerminals())
+                for(Production p : a.getProductionList())
+                    if(p.getSymbols().length == 1 && p.getSymbols()[0] == symbols[s])
+                        table.get(s).add(a.getSymbol());
+        for(int l = 2; l <= n; l++)
+            for(int s = 0; s + l <= n; s++)
+                for(int p = 1; p < l; p++)
+                    for(NonTerminal a : cnf.getNonTerminals())
+                        for(Production production : a.getProductionList()) {
+                            int[] children = production.getSymbols();
+                            if(children.length == 2 && table.get((p - 1) * n + s).contains(children[0]) && table.get((l - p - 1) * n + s + p).contains(children[1]))
+                                table.get((l - 1) * n + s).add(a.getSymbol());
+                        }
+        return table.get((n - 1) * n).contains(cnf.getStartSymbol());
+    }
+
+    private static void check(CFG cnf, long seed) {
+        CompiledGrammar grammar = cnf.compile();
+        InputGenerator generator = new InputGenerator(grammar, MAX_LENGTH, seed);
+        Random random = new Random(seed);
+        MembershipOptions options = new MembershipOptions().setEngine(MembershipEngine.CHART);
+        int checked = 0;
+        for(int i = 0; i < INPUTS; i++) {
+            List<int[]> inputs = new ArrayList<>();
+            inputs.add(generator.member(1 + random.nextInt(MAX_LENGTH)));
+            try {
+                inputs.add(generator.nonMember(1 + random.nextInt(MAX_LENGTH / 2)));
+            } catch(RuntimeException e) { // every string of that length is a member
+            }
+            int[] noise = new int[1 + random.nextInt(MAX_LENGTH)];
+            for(int j = 0; j < noise.length; j++)
+                noise[j] = random.nextInt(grammar.getTerminalCount());
+            inputs.add(noise);
+            for(int[] tokens : inputs) {
+                if(tokens == null)
+                    continue;
+                int[] symbols = new int[tokens.length];
+                for(int j = 0; j < tokens.length; j++)
+                    symbols[j] = cnf.getSymbolTable().getId(grammar.getTerminalName(tokens[j]));
+                assertEquals(originalCYK(cnf, symbols), grammar.recognize(tokens, options), () -> "grammar " + seed + " on " + generator.toString(tokens));
+                checked++;
+            }
+        }
+        assertTrue(checked > INPUTS, "only " + checked + " inputs were checked");
+    }
+
+    @Test
+    public void matchesTheOriginalCYK() {
+        for(int seed = 0; seed < GRAMMARS; seed++) {
+            CFG cnf = GrammarGenerator.random(5, 3, 3, 4, seed);
+            cnf.convertToCNF(cnf.getNextUnusedSymbol(), null);
+            check(cnf, seed);
+        }
+    }
+
+    /* Over 64 non-terminals, so cells take more than one word and ids cross word boundaries */
+    @Test
+    public void matchesTheOriginalCYKWithWideCells() {
+        for(int seed = 0; seed < 3; seed++) {
+            CFG cnf = GrammarGenerator.randomCNF(150, 400, 4, seed);
+            assertEquals(3, cnf.compile().getWords());
+            check(cnf, seed);
+        }
+    }
+
+    @Test
+    public void keepsTheCompiledFormUntilTheCFGChanges() {
+        CFG cfg = new CFG();
+        cfg.addTerminal('a');
+        cfg.addTerminal('b');
+        cfg.addNonTerminal('S').addProduction("AB");
+        cfg.addNonTerminal('A').addProduction("a");
+        cfg.addNonTerminal('B').addProduction("a");
+        CompiledGrammar compiled = cfg.compile();
+        assertSame(compiled, cfg.compile());
+        assertTrue(cfg.runCYK("aa"));
+        assertFalse(cfg.runCYK("ab"));
+        assertSame(compiled, cfg.compile());
+
+        cfg.addNonTerminal('B').addProduction("b");
+        assertNotSame(compiled, cfg.compile());
+        assertTrue(cfg.runCYK("ab"));
+        assertFalse(cfg.runCYK("ba"));
+        assertFalse(cfg.runCYK(""));
+        assertFalse(cfg.runCYK("ac"));
+    }
+
+    @Test
+    public void buildsTheRuleTables() {
+        CFG cfg = new CFG();
+        cfg.addTerminal('a');
+        cfg.addTerminal('b');
+        cfg.addNonTerminal('S').addProduction("AB");
+        cfg.addNonTerminal('S').addProduction("a");
+        cfg.addNonTerminal('A').addProduction("a");
+        cfg.addNonTerminal('B').addProduction("b");
+        cfg.addNonTerminal('C').addProduction("CC"); // derives nothing
+        CompiledGrammar grammar = cfg.compile();
+        int s = grammar.getStartId(), a = grammar.getTerminalIndex("a"), b = grammar.getTerminalIndex("b");
+        assertEquals("S", grammar.getNonTerminalName(s));
+        assertEquals(new HashSet<>(Arrays.asList(s, 1)), toSet(grammar.getTerminalNonTerminals(a)));
+        assertArrayEquals(new int[] {2}, grammar.getTerminalNonTerminals(b));
+        assertEquals(-1, grammar.getTerminalIndex("c"));
+        assertArrayEquals(new int[] {2}, grammar.getRightChildren(1));
+        assertArrayEquals(new int[] {s}, grammar.getHeads(1));
+        assertTrue(grammar.isLeftChild(1));
+        assertTrue(grammar.isRightChild(2));
+        assertFalse(grammar.isLeftChild(2));
+        assertTrue(grammar.isProductive(s));
+        assertFalse(grammar.isProductive(3));
+
+        cfg.addNonTerminal('S').addProduction("ABA");
+        RuntimeException e = assertThrows(RuntimeException.class, cfg::compile);
+        assertTrue(e.getMessage().contains("not in CNF form"), e.getMessage());
+    }
+
+    /* The closure over strongly connected components matches closing the left child graph by repeating until nothing changes, with wide cells, cycles and a right child that derives nothing */
+    @Test
+    public void leftAncestorsMatchARepeatedClosure() {
+        for(int seed = 0; seed < 5; seed++) {
+            CFG cnf = GrammarGenerator.randomCNF(150, 150 + 40 * seed, 3, seed); // from sparse graphs of many small components to dense ones of a few large ones
+            NonTerminal useless = cnf.addNonTerminal("U");
+            useless.addProduction(new int[] {useless.getSymbol(), useless.getSymbol()});
+            Random random = new Random(seed);
+            List<NonTerminal> nonTerminals = new ArrayList<>(cnf.getNonTerminals());
+            for(int i = 0; i < 20; i++)
+                nonTerminals.get(random.nextInt(150)).addProduction(new int[] {nonTerminals.get(random.nextInt(150)).getSymbol(), useless.getSymbol()});
+            CompiledGrammar grammar = cnf.compile();
+            int count = grammar.getNonTerminalCount(), words = grammar.getWords();
+            long[][] expected = new long[count][words];
+            int[] heads = grammar.getBinaryHeads(), lefts = grammar.getBinaryLefts(), rights = grammar.getBinaryRights();
+            for(int r = 0; r < heads.length; r++)
+                if(grammar.isProductive(rights[r]))
+                    expected[lefts[r]][heads[r] >>> 6] |= 1L << heads[r];
+            for(boolean changed = true; changed; ) {
+                changed = false;
+                for(long[] ancestors : expected)
+                    for(int id = 0; id < count; id++)
+                        if((ancestors[id >>> 6] & 1L << id) != 0)
+                            for(int w = 0; w < words; w++)
+                                if((expected[id][w] & ~ancestors[w]) != 0) {
+                                    ancestors[w] |= expected[id][w];
+                                    changed = true;
+                                }
+            }
+            for(int id = 0; id < count; id++)
+                assertArrayEquals(expected[id], grammar.getLeftAncestors(id), "grammar " + seed + " non-terminal " + grammar.getNonTerminalName(id));
+        }
+    }
+
+    private static Set<Integer> toSet(int[] ids) {
+        Set<Integer> set = new HashSet<>();
+        for(int id : ids)
+            set.add(id);
+        return set;
+    }
+
+}
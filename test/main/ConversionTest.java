@@ -0,0 +1,162 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/* Checks that simplification and CNF conversion keep the language, leave nothing that isn't in CNF form, and stay linear on grammars whose naive conversion blows up */
+public class ConversionTest {
+
+    private static final int GRAMMARS = 40, MAX_LENGTH = 7;
+
+    /* Every production is a single terminal or two non-terminals */
+    private static void assertCNF(CFG cnf) {
+        for(NonTerminal n : cnf.getNonTerminals())
+            for(Production p : n.getProductionList()) {
+                int[] symbols = p.getSymbols();
+                boolean cnfForm = symbols.length == 1 ? cnf.isTerminal(symbols[0]) : symbols.length == 2 && !cnf.isTerminal(symbols[0]) && !cnf.isTerminal(symbols[1]);
+                assertTrue(cnfForm, n.getName() + " " + Main.ARROW + " " + p.getExpression() + " isn't in CNF form");
+            }
+    }
+
+    /* Every non-empty string of up to MAX_LENGTH symbols over the grammar's terminals is checked by Earley on the grammar as written and by the chart on its CNF form */
+    @Test
+    public void keepsTheLanguage() {
+        MembershipOptions options = new MembershipOptions().setEngine(MembershipEngine.CHART);
+        int members = 0;
+        for(int seed = 0; seed < GRAMMARS; seed++) {
+            CFG source = GrammarGenerator.random(4, 3, 2, 3, seed);
+            CFG cnf = source.copy();
+            cnf.convertToCNF(cnf.getNextUnusedSymbol(), null);
+            assertCNF(cnf);
+            CompiledGrammar grammar = cnf.compile();
+            EarleyRecognizer earley = new EarleyRecognizer(source, grammar);
+            int terminals = grammar.getTerminalCount();
+            for(int length = 1; length <= MAX_LENGTH; length++) {
+                int[] tokens = new int[length];
+                for(long index = 0; index < Math.pow(terminals, length); index++) {
+                    long rest = index;
+                    for(int i = 0; i < length; i++, rest /= terminals)
+                        tokens[i] = (int) (rest % terminals);
+                    boolean member = earley.recognize(tokens);
+                    assertEquals(member, grammar.recognize(tokens, options), "grammar " + seed + " on " + Arrays.toString(tokens));
+                    members += member ? 1 : 0;
+                }
+            }
+        }
+        assertTrue(members > GRAMMARS, "only " + members + " members were found");
+    }
+
+    @Test
+    public void simplifyRemovesLambdaUnitAndUselessProductions() {
+        CFG cfg = new CFG();
+        for(char c : "abc".toCharArray())
+            cfg.addTerminal(c);
+        cfg.addNonTerminal('S').addProduction("A");
+        cfg.addNonTerminal('S').addProduction("aB");
+        cfg.addNonTerminal('S').addProduction("D");
+        cfg.addNonTerminal('A').addProduction("B");
+        cfg.addNonTerminal('A').addProduction("b");
+        cfg.addNonTerminal('B').addProduction("c");
+        cfg.addNonTerminal('B').addProduction("λ");
+        cfg.addNonTerminal('D').addProduction("DD"); // derives nothing
+        cfg.addNonTerminal('U').addProduction("a"); // unreachable
+        cfg.simplify();
+        Set<String> names = new HashSet<>();
+        for(NonTerminal n : cfg.getNonTerminals()) {
+            names.add(n.getName());
+            for(Production p : n.getProductionList())
+                assertTrue(p.length() > 0, n.getName() + " still has a lambda production");
+        }
+        assertTrue(cfg.getUnitProductions().isEmpty(), cfg.toString());
+        assertFalse(names.contains("D"), cfg.toString());
+        assertFalse(names.contains("U"), cfg.toString());
+        Set<String> start = new HashSet<>();
+        for(Production p : cfg.getNonTerminals().iterator().next().getProductionList())
+            start.add(p.getExpression());
+        assertEquals(new HashSet<>(Arrays.asList("b", "c", "a", "aB")), start);
+    }
+
+    /* Names handed out one after another are all unused and distinct, skipping names already taken by terminals and non-terminals - and a name isn't used up until it's added */
+    @Test
+    public void givesOutUniqueHelperNames() {
+        CFG cfg = new CFG();
+        cfg.addTerminal('B');
+        cfg.addTerminal("D3");
+        cfg.addNonTerminal('S').addProduction("B");
+        cfg.addNonTerminal("A1").addProduction("B");
+        Set<String> names = new HashSet<>(Arrays.asList("S", "B", "D3", "A1"));
+        assertEquals("A", cfg.getNextUnusedSymbol());
+        for(int i = 0; i < 5000; i++) {
+            String name = cfg.getNextUnusedSymbol();
+            assertEquals(name, cfg.getNextUnusedSymbol());
+            assertTrue(names.add(name), name + " was given out twice");
+            cfg.addNonTerminal(name).addProduction("B");
+        }
+        assertEquals(5000 + 4, names.size());
+        assertEquals(5000 + 2, cfg.getNonTerminals().size());
+        CFG copy = cfg.copy();
+        assertFalse(names.contains(copy.getNextUnusedSymbol()));
+    }
+
+    private static int productions(CFG cfg) {
+        int productions = 0;
+        for(NonTerminal n : cfg.getNonTerminals())
+            productions += n.getProductionList().size();
+        return productions;
+    }
+
+    /* S → X^n with X → a | λ has 2^n lambda-free copies if every combination is spelled out - splitting it into pairs first leaves the unit closure of the pairs' chain, which is quadratic at worst */
+    @Test
+    public void splitsLongNullableProductions() {
+        int length = 200;
+        CFG cfg = new CFG();
+        cfg.addTerminal('a');
+        NonTerminal start = cfg.addNonTerminal("S"), x = cfg.addNonTerminal("X");
+        int[] symbols = new int[length];
+        Arrays.fill(symbols, x.getSymbol());
+        start.addProduction(symbols);
+        x.addProduction(new int[] {cfg.getSymbolTable().getId("a")});
+        x.addProduction(new int[0]);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(20), () -> cfg.convertToCNF(cfg.getNextUnusedSymbol(), null));
+        assertCNF(cfg);
+        assertTrue(productions(cfg) <= length * length, productions(cfg) + " productions from a production of length " + length);
+        CompiledGrammar grammar = cfg.compile();
+        assertTrue(grammar.recognize("a"));
+        assertTrue(grammar.recognize("a".repeat(length)));
+        assertFalse(grammar.recognize("a".repeat(length + 1)));
+    }
+
+    /* A cycle of 3000 unit productions has a quadratic closure if each non-terminal follows it separately, rather than the cycle being expanded once */
+    @Test
+    public void expandsUnitCyclesOnce() {
+        int chain = 3000;
+        CFG cfg = new CFG();
+        cfg.addTerminal('a');
+        cfg.addTerminal('b');
+        NonTerminal start = cfg.addNonTerminal("S");
+        start.addProduction("a");
+        NonTerminal previous = start;
+        NonTerminal[] units = new NonTerminal[chain];
+        for(int i = 0; i < chain; i++) {
+            units[i] = cfg.addNonTerminal("N" + i);
+            previous.addProduction(new int[] {units[i].getSymbol()});
+            previous = units[i];
+        }
+        previous.addProduction(new int[] {units[0].getSymbol()}); // back to the start of the chain
+        previous.addProduction(new int[] {cfg.getSymbolTable().getId("b")});
+        int size = chain + 3;
+
+        assertTimeoutPreemptively(Duration.ofSeconds(20), () -> cfg.convertToCNF(cfg.getNextUnusedSymbol(), null));
+        assertCNF(cfg);
+        assertTrue(productions(cfg) < 4 * size, productions(cfg) + " productions from a grammar of size " + size);
+        assertTrue(cfg.runCYK("a"));
+        assertTrue(cfg.runCYK("b"));
+        assertFalse(cfg.runCYK("ab"));
+    }
+
+}
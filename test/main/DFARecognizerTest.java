@@ -0,0 +1,67 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/* Checks the DFA engine's size on grammars whose DFA grows exponentially, and that the router leaves those past the state limit to the general engines */
+public class DFARecognizerTest {
+
+    /* A right-linear grammar for (a|b)*a(a|b)^k - S → aS | bS | aA1, Ai → aAi+1 | bAi+1 and Ak → a | b - whose minimal DFA has 2^(k+1) states, one for each of the last k+1 symbols read */
+    private static CFG lastSymbols(int k) {
+        CFG cfg = new CFG();
+        cfg.addTerminal('a');
+        cfg.addTerminal('b');
+        NonTerminal start = cfg.addNonTerminal("S");
+        start.addProduction(new int[] {symbol(cfg, "a"), start.getSymbol()});
+        start.addProduction(new int[] {symbol(cfg, "b"), start.getSymbol()});
+        NonTerminal previous = start;
+        for(int i = 1; i <= k; i++) {
+            NonTerminal next = cfg.addNonTerminal("A" + i);
+            previous.addProduction(new int[] {symbol(cfg, "a"), next.getSymbol()});
+            if(i > 1) // S only moves on to A1 on an a
+                previous.addProduction(new int[] {symbol(cfg, "b"), next.getSymbol()});
+            previous = next;
+        }
+        previous.addProduction(new int[] {symbol(cfg, "a")});
+        previous.addProduction(new int[] {symbol(cfg, "b")});
+        return cfg;
+    }
+
+    private static int symbol(CFG cfg, String name) {
+        return cfg.getSymbolTable().getId(name);
+    }
+
+    /* (a|b)*a(a|b)^k with the given symbols before the last k+1 */
+    private static String member(String prefix, int k) {
+        return prefix + "a" + "b".repeat(k);
+    }
+
+    @Test
+    public void buildsTheMinimalDFA() {
+        CFG source = lastSymbols(3);
+        CFG cnf = source.copy();
+        cnf.convertToCNF(cnf.getNextUnusedSymbol(), null);
+        DFARecognizer dfa = new DFARecognizer(source, cnf.compile());
+        assertEquals(16, dfa.getStateCount());
+        MembershipRouter router = new MembershipRouter(source, cnf.compile(), new MembershipOptions());
+        assertEquals(GrammarClass.RIGHT_LINEAR, router.getGrammarClass());
+        assertTrue(router.recognize(member("abba", 3)));
+        assertFalse(router.recognize("abbbabb"));
+    }
+
+    @Test
+    public void routesGrammarsPastTheStateLimitToTheGeneralEngines() {
+        int k = 22; // 2^23 states, far past the limit
+        CFG source = lastSymbols(k);
+        CFG cnf = source.copy();
+        cnf.convertToCNF(cnf.getNextUnusedSymbol(), null);
+        assertThrows(DFARecognizer.StateLimitException.class, () -> new DFARecognizer(source, cnf.compile()));
+        MembershipRouter router = new MembershipRouter(source, cnf.compile(), new MembershipOptions());
+        assertEquals(GrammarClass.GENERAL, router.getGrammarClass());
+        assertTrue(router.recognize(member("ba", k)));
+        assertFalse(router.recognize(member("ba", k) + "a".repeat(k)));
+        assertFalse(router.recognize("b".repeat(2 * k)));
+    }
+
+}
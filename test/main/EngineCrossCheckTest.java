@@ -0,0 +1,120 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/* Cross-checks every engine against runCYK on generated grammars, over members and non-members of each */
+public class EngineCrossCheckTest {
+
+    private static final int GRAMMARS = 25, INPUTS = 12, MAX_LENGTH = 48;
+
+    /* Non-members are kept shorter than members, since random grammars tend to derive nearly every long string */
+    private static final int MAX_NON_MEMBER_LENGTH = 16;
+
+    /* The number of grammars each of the DFA and LL(1) engines was checked on, so a generator change that stops them being reached fails the test rather than passing it vacuously */
+    private int dfaGrammars, ll1Grammars;
+
+    @Test
+    public void generalGrammars() {
+        for(int seed = 0; seed < GRAMMARS; seed++)
+            check(GrammarGenerator.random(5, 3, 3, 4, seed), seed);
+    }
+
+    @Test
+    public void cnfGrammars() {
+        for(int seed = 0; seed < GRAMMARS; seed++)
+            check(GrammarGenerator.randomCNF(6, 14, 3, seed), seed);
+    }
+
+    @Test
+    public void linearGrammars() {
+        for(int seed = 0; seed < GRAMMARS; seed++) {
+            check(GrammarGenerator.randomLinear(4, 2, 3, 3, true, seed), seed);
+            check(GrammarGenerator.randomLinear(4, 2, 3, 3, false, seed), seed);
+        }
+        assertEquals(2 * GRAMMARS, dfaGrammars);
+    }
+
+    @Test
+    public void ll1Grammars() {
+        for(int seed = 0; seed < GRAMMARS; seed++)
+            check(GrammarGenerator.randomLL1(4, 3, 3, 3, seed), seed);
+        assertTrue(ll1Grammars > GRAMMARS / 2, "only " + ll1Grammars + " of the LL(1) grammars were routed to the LL(1) engine");
+    }
+
+    @Test
+    public void fixedGrammars() {
+        check(GrammarGenerator.dyck(2), 1);
+        check(GrammarGenerator.arithmetic(), 2);
+    }
+
+    /* AUTO runs the chart when the matrices would be over the memory limit but the chart isn't, where MATRIX is rejected outright */
+    @Test
+    public void autoFallsBackToTheChartOverTheMatrixLimit() {
+        CompiledGrammar grammar = GrammarGenerator.compile("random"); // 64 non-terminals, nearly all of them both left and right children, in a single word of chart cell
+        int[] member = new InputGenerator(grammar, 400, 5).member(400);
+        long chart = grammar.estimateChartBytes(member.length), matrix = grammar.estimateMatrixBytes(member.length);
+        assertTrue(chart < matrix, chart + " bytes of chart against " + matrix + " bytes of matrices");
+        List<MembershipEngine> engines = new ArrayList<>();
+        MembershipOptions auto = new MembershipOptions().setMaxChartBytes((chart + matrix) / 2).setListener(stats -> engines.add(stats.getEngine()));
+        assertTrue(member.length >= auto.getMatrixThreshold());
+        assertTrue(grammar.recognize(member, auto));
+        assertEquals(List.of(MembershipEngine.CHART), engines);
+        MembershipOptions explicit = new MembershipOptions().setEngine(MembershipEngine.MATRIX).setMaxChartBytes((chart + matrix) / 2);
+        RuntimeException e = assertThrows(RuntimeException.class, () -> grammar.recognize(member, explicit));
+        assertTrue(e.getMessage().contains("matrix memory"), e.getMessage());
+        engines.clear();
+        assertTrue(grammar.recognize(member, auto.setMaxChartBytes(matrix)));
+        assertEquals(List.of(MembershipEngine.MATRIX), engines);
+    }
+
+    /* Check members and non-members of the grammar with every engine that can run on it, expecting each to agree with runCYK on the CNF form */
+    private void check(CFG source, long seed) {
+        CFG cnf = source.copy();
+        cnf.convertToCNF(cnf.getNextUnusedSymbol(), null);
+        CompiledGrammar grammar = cnf.compile();
+        MembershipRouter router = new MembershipRouter(source, grammar, new MembershipOptions());
+        GrammarClass grammarClass = source.classify();
+        DFARecognizer dfa = grammarClass == GrammarClass.RIGHT_LINEAR || grammarClass == GrammarClass.LEFT_LINEAR ? new DFARecognizer(source, grammar) : null;
+        LL1Recognizer ll1 = grammarClass == GrammarClass.LL1 ? new LL1Recognizer(source, grammar) : null;
+        dfaGrammars += dfa == null ? 0 : 1;
+        ll1Grammars += ll1 == null ? 0 : 1;
+
+        InputGenerator generator = new InputGenerator(grammar, MAX_LENGTH, seed);
+        Random random = new Random(seed);
+        List<int[]> members = new ArrayList<>(), nonMembers = new ArrayList<>();
+        for(int i = 0; i < INPUTS; i++) {
+            int[] member = generator.member(1 + random.nextInt(MAX_LENGTH));
+            if(member != null)
+                members.add(member);
+            try {
+                nonMembers.add(generator.nonMember(1 + random.nextInt(MAX_NON_MEMBER_LENGTH)));
+            } catch(RuntimeException e) { // every string of that length over the grammar's terminals is a member
+            }
+        }
+        for(int[] tokens : members)
+            check(cnf, grammar, router, dfa, ll1, generator.toString(tokens), tokens, true);
+        assertFalse(members.isEmpty() && nonMembers.isEmpty(), "no inputs were generated");
+        for(int[] tokens : nonMembers)
+            check(cnf, grammar, router, dfa, ll1, generator.toString(tokens), tokens, false);
+    }
+
+    private static void check(CFG cnf, CompiledGrammar grammar, MembershipRouter router, DFARecognizer dfa, LL1Recognizer ll1, String input, int[] tokens, boolean member) {
+        boolean expected = cnf.runCYK(input);
+        assertEquals(member, expected, "runCYK on " + (member ? "member " : "non-member ") + input);
+        assertEquals(expected, router.recognize(input), "AUTO router on " + input);
+        assertEquals(expected, grammar.recognize(tokens, new MembershipOptions().setEngine(MembershipEngine.CHART)), "CHART on " + input);
+        assertEquals(expected, grammar.recognize(tokens, new MembershipOptions().setEngine(MembershipEngine.MATRIX)), "MATRIX on " + input);
+        assertEquals(expected, router.recognize(tokens, new MembershipOptions().setEngine(MembershipEngine.EARLEY)), "EARLEY on " + input);
+        if(dfa != null)
+            assertEquals(expected, dfa.recognize(tokens), "DFA on " + input);
+        if(ll1 != null)
+            assertEquals(expected, ll1.recognize(tokens), "LL1 on " + input);
+    }
+
+}
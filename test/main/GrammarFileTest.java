@@ -0,0 +1,98 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/* Checks that compiled grammars survive being written and mapped back in, analysis included, and that damaged files are refused */
+public class GrammarFileTest {
+
+    @TempDir
+    Path directory;
+
+    /* a^n b^n for n >= 1, S → aSb | ab - every member needs an a and a b, so the filter has required counts to store */
+    private static CompiledGrammar anbn() {
+        CFG cfg = new CFG();
+        cfg.addTerminal('a');
+        cfg.addTerminal('b');
+        cfg.addNonTerminal('S').addProduction("aSb");
+        cfg.addNonTerminal('S').addProduction("ab");
+        cfg.convertToCNF(cfg.getNextUnusedSymbol(), null);
+        return cfg.compile();
+    }
+
+    private static CompiledGrammar[] grammars() {
+        return new CompiledGrammar[] {GrammarGenerator.compile("dyck"), GrammarGenerator.compile("arithmetic"), GrammarGenerator.compile("random"), anbn()};
+    }
+
+    @Test
+    public void roundTripGivesTheSameAnswersAndFingerprint() throws IOException {
+        Path file = directory.resolve("grammar.cfgb");
+        for(CompiledGrammar grammar : grammars()) {
+            GrammarFile.write(grammar, 42, file);
+            assertEquals(42, GrammarFile.readSourceHash(file));
+            CompiledGrammar loaded = GrammarFile.read(file);
+            assertEquals(grammar.getFingerprint(), loaded.getFingerprint());
+            assertEquals(grammar.getStartId(), loaded.getStartId());
+            for(int id = 0; id < grammar.getNonTerminalCount(); id++) {
+                assertEquals(grammar.isProductive(id), loaded.isProductive(id));
+                assertArrayEquals(grammar.getLeftAncestors(id), loaded.getLeftAncestors(id));
+            }
+            MembershipFilter filter = grammar.getFilter(), loadedFilter = loaded.getFilter();
+            assertEquals(filter.getMinLength(), loadedFilter.getMinLength());
+            assertEquals(filter.getMaxLength(), loadedFilter.getMaxLength());
+            assertArrayEquals(filter.getFirst(), loadedFilter.getFirst());
+            assertArrayEquals(filter.getLast(), loadedFilter.getLast());
+            assertArrayEquals(filter.getRequiredTerminals(), loadedFilter.getRequiredTerminals());
+            assertArrayEquals(filter.getRequiredCounts(), loadedFilter.getRequiredCounts());
+
+            InputGenerator generator = new InputGenerator(grammar, 40, 5);
+            Random random = new Random(5);
+            MembershipOptions options = new MembershipOptions();
+            for(int i = 0; i < 40; i++) {
+                int[] tokens = random.nextBoolean() ? generator.member(1 + random.nextInt(30)) : generator.nonMember(1 + random.nextInt(30));
+                if(tokens == null)
+                    continue;
+                assertEquals(grammar.recognize(tokens, options), loaded.recognize(tokens, options), () -> generator.toString(tokens));
+                assertEquals(filter.check(tokens), loadedFilter.check(tokens), () -> generator.toString(tokens));
+            }
+        }
+        assertFalse(anbn().getFilter().getRequiredTerminals().length == 0, "no required counts were stored");
+    }
+
+    @Test
+    public void rejectsACorruptedFile() throws IOException {
+        Path file = directory.resolve("grammar.cfgb");
+        GrammarFile.write(anbn(), 0, file);
+        byte[] bytes = Files.readAllBytes(file);
+        for(int position : new int[] {20, bytes.length / 2, bytes.length - 12, bytes.length - 1}) { // a name, a rule, the analysis and the checksum itself
+            byte[] corrupted = bytes.clone();
+            corrupted[position] ^= 0x10;
+            Files.write(file, corrupted);
+            RuntimeException e = assertThrows(RuntimeException.class, () -> GrammarFile.read(file));
+            assertTrue(e.getMessage().contains("corrupt"), e.getMessage());
+        }
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 8));
+        assertThrows(RuntimeException.class, () -> GrammarFile.read(file));
+    }
+
+    @Test
+    public void rejectsOtherVersions() throws IOException {
+        Path file = directory.resolve("grammar.cfgb");
+        GrammarFile.write(anbn(), 0, file);
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer.wrap(bytes).putInt(4, GrammarFile.VERSION - 1);
+        Files.write(file, bytes);
+        RuntimeException e = assertThrows(RuntimeException.class, () -> GrammarFile.read(file));
+        assertTrue(e.getMessage().contains("version"), e.getMessage());
+    }
+
+}
@@ -0,0 +1,169 @@
+package main;
+
+import java.util.*;
+
+/* Builds synthetic grammars for the benchmarks and tests - the fixed ones are written the way a user would write them (not in CNF form), while the random ones come from a seed so every run measures the same grammar */
+public final class GrammarGenerator {
+
+    /* The bracket pairs used by the Dyck grammars, in order */
+    private static final String BRACKETS = "()[]{}<>";
+
+    private GrammarGenerator() {
+    }
+
+    /* The Dyck language of balanced brackets with the given number of bracket types (1 to 4): S → SS | (S) | () and the same for each other type */
+    public static CFG dyck(int types) {
+        if(types < 1 || types > BRACKETS.length() / 2)
+            throw new RuntimeException("A Dyck grammar needs between 1 and " + BRACKETS.length() / 2 + " bracket types.");
+        CFG cfg = new CFG();
+        NonTerminal start = cfg.addNonTerminal('S');
+        start.addProduction("SS");
+        for(int i = 0; i < types; i++) {
+            char open = BRACKETS.charAt(2 * i), close = BRACKETS.charAt(2 * i + 1);
+            cfg.addTerminal(open);
+            cfg.addTerminal(close);
+            start.addProduction(open + "S" + close);
+            start.addProduction("" + open + close);
+        }
+        return cfg;
+    }
+
+    /* Arithmetic expressions over x and y with + and * at their usual precedence and brackets: S → S+T | T, T → T*F | F, F → (S) | x | y */
+    public static CFG arithmetic() {
+        CFG cfg = new CFG();
+        for(char c : "+*()xy".toCharArray())
+            cfg.addTerminal(c);
+        cfg.addNonTerminal('S').addProduction("S+T");
+        cfg.addNonTerminal('S').addProduction("T");
+        cfg.addNonTerminal('T').addProduction("T*F");
+        cfg.addNonTerminal('T').addProduction("F");
+        cfg.addNonTerminal('F').addProduction("(S)");
+        cfg.addNonTerminal('F').addProduction("x");
+        cfg.addNonTerminal('F').addProduction("y");
+        return cfg;
+    }
+
+    /* A random grammar already in CNF form, with non-terminals N0 (the start) to N(n-1) and the given number of rules in total - every non-terminal gets one rule to a terminal (so it derives something), and the rest are rules to two random non-terminals */
+    public static CFG randomCNF(int nonTerminals, int rules, int terminals, long seed) {
+        if(rules < nonTerminals)
+            throw new RuntimeException("A random CNF grammar needs at least one rule per non-terminal.");
+        Random random = new Random(seed);
+        CFG cfg = new CFG("N0");
+        int[] terminalSymbols = addTerminals(cfg, terminals);
+        List<NonTerminal> symbols = addNonTerminals(cfg, nonTerminals);
+        for(NonTerminal n : symbols)
+            n.addProduction(new int[] {terminalSymbols[random.nextInt(terminals)]});
+        for(int r = nonTerminals; r < rules; r++) // duplicates are dropped by addProduction, so a small grammar may end up with fewer rules
+            symbols.get(random.nextInt(nonTerminals)).addProduction(new int[] {symbols.get(random.nextInt(nonTerminals)).getSymbol(), symbols.get(random.nextInt(nonTerminals)).getSymbol()});
+        return cfg;
+    }
+
+    /* A random grammar in no particular form, for timing simplify and convertToCNF - each non-terminal gets one production of terminals (so the start symbol terminates) and the given number of other productions, each of up to maxLength random symbols, so lambda, unit and long productions all turn up */
+    public static CFG random(int nonTerminals, int productionsPerNonTerminal, int terminals, int maxLength, long seed) {
+        Random random = new Random(seed);
+        CFG cfg = new CFG("N0");
+        int[] terminalSymbols = addTerminals(cfg, terminals);
+        List<NonTerminal> symbols = addNonTerminals(cfg, nonTerminals);
+        for(NonTerminal n : symbols) {
+            int[] terminating = new int[1 + random.nextInt(maxLength)];
+            for(int i = 0; i < terminating.length; i++)
+                terminating[i] = terminalSymbols[random.nextInt(terminals)];
+            n.addProduction(terminating);
+            for(int p = 0; p < productionsPerNonTerminal; p++) {
+                int[] production = new int[random.nextInt(maxLength + 1)];
+                for(int i = 0; i < production.length; i++)
+                    production[i] = random.nextBoolean() ? terminalSymbols[random.nextInt(terminals)] : symbols.get(random.nextInt(nonTerminals)).getSymbol();
+                n.addProduction(production);
+            }
+        }
+        return cfg;
+    }
+
+    /* A random right-linear (or left-linear) grammar - every production is up to maxLength random terminals, with a random non-terminal after them (or before them) in all but the one production each non-terminal gets of terminals only */
+    public static CFG randomLinear(int nonTerminals, int productionsPerNonTerminal, int terminals, int maxLength, boolean right, long seed) {
+        Random random = new Random(seed);
+        CFG cfg = new CFG("N0");
+        int[] terminalSymbols = addTerminals(cfg, terminals);
+        List<NonTerminal> symbols = addNonTerminals(cfg, nonTerminals);
+        for(NonTerminal n : symbols)
+            for(int p = 0; p <= productionsPerNonTerminal; p++) {
+                int[] production = new int[(p == 0 ? 1 : 0) + random.nextInt(maxLength + 1)];
+                for(int i = 0; i < production.length; i++)
+                    production[i] = terminalSymbols[random.nextInt(terminals)];
+                if(p > 0) { // add the non-terminal at the end (or the start)
+                    production = Arrays.copyOf(production, production.length + 1);
+                    if(!right)
+                        System.arraycopy(production, 0, production, 1, production.length - 1);
+                    production[right ? production.length - 1 : 0] = symbols.get(random.nextInt(nonTerminals)).getSymbol();
+                }
+                n.addProduction(production);
+            }
+        return cfg;
+    }
+
+    /* A random LL(1) grammar - each non-terminal's productions start with different terminals (so FIRST sets never overlap and nothing is nullable), followed by up to maxLength random symbols, with the first production of each being terminals only */
+    public static CFG randomLL1(int nonTerminals, int productionsPerNonTerminal, int terminals, int maxLength, long seed) {
+        if(productionsPerNonTerminal > terminals)
+            throw new RuntimeException("A random LL(1) grammar needs a different first terminal for each of a non-terminal's productions.");
+        Random random = new Random(seed);
+        CFG cfg = new CFG("N0");
+        int[] terminalSymbols = addTerminals(cfg, terminals);
+        List<NonTerminal> symbols = addNonTerminals(cfg, nonTerminals);
+        for(NonTerminal n : symbols) {
+            List<Integer> firsts = new ArrayList<>();
+            for(int symbol : terminalSymbols)
+                firsts.add(symbol);
+            Collections.shuffle(firsts, random);
+            for(int p = 0; p < productionsPerNonTerminal; p++) {
+                int[] production = new int[1 + random.nextInt(maxLength + 1)];
+                production[0] = firsts.get(p);
+                for(int i = 1; i < production.length; i++)
+                    production[i] = p > 0 && random.nextBoolean() ? symbols.get(random.nextInt(nonTerminals)).getSymbol() : terminalSymbols[random.nextInt(terminals)];
+                n.addProduction(production);
+            }
+        }
+        return cfg;
+    }
+
+    /* Add the terminals a, b, c and so on */
+    private static int[] addTerminals(CFG cfg, int terminals) {
+        if(terminals < 1 || terminals > 26)
+            throw new RuntimeException("A random grammar needs between 1 and 26 terminals.");
+        int[] symbols = new int[terminals];
+        for(int i = 0; i < terminals; i++) {
+            cfg.addTerminal((char) ('a' + i));
+            symbols[i] = cfg.getSymbolTable().getId(Character.toString((char) ('a' + i)));
+        }
+        return symbols;
+    }
+
+    private static List<NonTerminal> addNonTerminals(CFG cfg, int nonTerminals) {
+        List<NonTerminal> symbols = new ArrayList<>();
+        for(int i = 0; i < nonTerminals; i++)
+            symbols.add(cfg.addNonTerminal("N" + i));
+        return symbols;
+    }
+
+    /* Build one of the benchmark grammars by name (dyck, arithmetic or random), as written */
+    public static CFG source(String name) {
+        switch(name) {
+            case "dyck":
+                return dyck(2);
+            case "arithmetic":
+                return arithmetic();
+            case "random":
+                return randomCNF(64, 160, 8, 42);
+            default:
+                throw new RuntimeException("Unknown benchmark grammar: " + name + ".");
+        }
+    }
+
+    /* Build one of the benchmark grammars by name and compile it, converting it to CNF form first if needed */
+    public static CompiledGrammar compile(String name) {
+        CFG cfg = source(name);
+        if(!name.equals("random")) // already in CNF form
+            cfg.convertToCNF(cfg.getNextUnusedSymbol(), null);
+        return cfg.compile();
+    }
+
+}
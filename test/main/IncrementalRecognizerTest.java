@@ -0,0 +1,124 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/* Checks the column-by-column recognizer against full checks of every prefix, and its viable-prefix answers */
+public class IncrementalRecognizerTest {
+
+    private static final MembershipOptions CHART = new MembershipOptions().setEngine(MembershipEngine.CHART);
+
+    @Test
+    public void everyPrefixMatchesAFullCheck() {
+        for(String name : new String[] {"dyck", "arithmetic", "random"}) {
+            CompiledGrammar grammar = GrammarGenerator.compile(name);
+            InputGenerator generator = new InputGenerator(grammar, 80, 4);
+            Random random = new Random(4);
+            for(int i = 0; i < 10; i++) {
+                int[] tokens = i % 2 == 0 ? generator.member(20 + random.nextInt(60)) : generator.nonMember(1 + random.nextInt(20));
+                IncrementalRecognizer recognizer = new IncrementalRecognizer(grammar);
+                for(int j = 1; j <= tokens.length; j++) {
+                    recognizer.append(tokens[j - 1]);
+                    int[] prefix = Arrays.copyOf(tokens, j);
+                    assertEquals(j, recognizer.length());
+                    assertEquals(grammar.recognize(prefix, CHART), recognizer.isMember(), () -> name + " on " + generator.toString(prefix));
+                    if(i % 2 == 0) // every prefix of a member can be extended to it
+                        assertTrue(recognizer.isViablePrefix(), () -> name + " prefix " + generator.toString(prefix));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void viablePrefixes() {
+        CompiledGrammar grammar = GrammarGenerator.compile("arithmetic");
+        IncrementalRecognizer recognizer = new IncrementalRecognizer(grammar);
+        assertTrue(recognizer.isViablePrefix());
+        assertFalse(recognizer.isMember());
+        String[][] steps = {{"(", "viable"}, {"x", "viable"}, {"+", "viable"}, {"y", "viable"}, {")", "member"}, {"*", "viable"}, {"x", "member"}, {"(", "dead"}, {"x", "dead"}, {")", "dead"}};
+        for(String[] step : steps) {
+            recognizer.append(step[0]);
+            assertEquals(step[1].equals("member"), recognizer.isMember(), () -> "after " + step[0]);
+            assertEquals(!step[1].equals("dead"), recognizer.isViablePrefix(), () -> "after " + step[0]);
+        }
+        recognizer.reset("+");
+        assertFalse(recognizer.isViablePrefix());
+        recognizer.reset("x)");
+        assertFalse(recognizer.isViablePrefix());
+        recognizer.reset("x");
+        recognizer.append(-1); // a symbol the grammar doesn't have
+        assertFalse(recognizer.isMember());
+        assertFalse(recognizer.isViablePrefix());
+    }
+
+    /* Once a prefix can't be extended to a member, nothing appended to it is a member */
+    @Test
+    public void deadPrefixesStayDead() {
+        CompiledGrammar grammar = GrammarGenerator.compile("dyck");
+        Random random = new Random(9);
+        int dead = 0;
+        for(int i = 0; i < 200; i++) {
+            IncrementalRecognizer recognizer = new IncrementalRecognizer(grammar);
+            boolean viable = true;
+            for(int j = 0; j < 12; j++) {
+                recognizer.append(random.nextInt(grammar.getTerminalCount()));
+                if(!viable) {
+                    assertFalse(recognizer.isViablePrefix());
+                    assertFalse(recognizer.isMember());
+                }
+                viable = recognizer.isViablePrefix();
+                dead += viable ? 0 : 1;
+            }
+        }
+        assertTrue(dead > 0, "no prefix was ever dead");
+    }
+
+    @Test
+    public void truncateAndResetKeepTheSharedColumns() {
+        CompiledGrammar grammar = GrammarGenerator.compile("dyck");
+        IncrementalRecognizer recognizer = new IncrementalRecognizer(grammar);
+        recognizer.append("([])[](");
+        assertFalse(recognizer.isMember());
+        recognizer.truncate(6);
+        assertEquals(6, recognizer.length());
+        assertTrue(recognizer.isMember());
+        recognizer.truncate(10); // past the end, so nothing changes
+        assertEquals(6, recognizer.length());
+        recognizer.truncate(3);
+        assertFalse(recognizer.isMember());
+        assertTrue(recognizer.isViablePrefix());
+        recognizer.append(")");
+        assertTrue(recognizer.isMember());
+        recognizer.reset("([])()");
+        assertTrue(recognizer.isMember());
+        recognizer.reset("([)]");
+        assertFalse(recognizer.isMember());
+        assertFalse(recognizer.isViablePrefix());
+        recognizer.reset("");
+        assertEquals(0, recognizer.length());
+        assertFalse(recognizer.isMember());
+    }
+
+    @Test
+    public void batchesSharingPrefixesMatchFullChecks() {
+        CompiledGrammar grammar = GrammarGenerator.compile("arithmetic");
+        InputGenerator generator = new InputGenerator(grammar, 40, 6);
+        Random random = new Random(6);
+        List<String> inputs = new ArrayList<>();
+        for(int i = 0; i < 50; i++) {
+            String member = generator.toString(generator.member(1 + random.nextInt(40)));
+            inputs.add(member);
+            inputs.add(member.substring(0, random.nextInt(member.length() + 1))); // a prefix, maybe empty
+            inputs.add(member + "+x");
+            inputs.add(member + "+");
+        }
+        inputs.add(inputs.get(0)); // a duplicate
+        boolean[] results = IncrementalRecognizer.checkAll(grammar, inputs);
+        for(int i = 0; i < inputs.size(); i++)
+            assertEquals(grammar.recognize(inputs.get(i)), results[i], inputs.get(i));
+    }
+
+}
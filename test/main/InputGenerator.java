@@ -0,0 +1,129 @@
+package main;
+
+import java.util.*;
+
+/* Generates member and non-member inputs of a compiled grammar - members are derived at random from the grammar's rules, picking among only the rules and split points that can still produce the length asked for */
+public final class InputGenerator {
+
+    private final CompiledGrammar grammar;
+
+    private final Random random;
+
+    /* For each length up to the maximum, the bitset of non-terminals that derive some string of that length */
+    private final long[][] derives;
+
+    /* For each head id, the indexes of its binary rules */
+    private final int[][] rulesByHead;
+
+    public InputGenerator(CompiledGrammar grammar, int maxLength, long seed) {
+        if(maxLength < 1)
+            throw new RuntimeException("Inputs need a maximum length of at least 1.");
+        this.grammar = grammar;
+        random = new Random(seed);
+        int words = grammar.getWords();
+        int[] heads = grammar.getBinaryHeads(), lefts = grammar.getBinaryLefts(), rights = grammar.getBinaryRights();
+        derives = new long[maxLength + 1][words];
+        for(int t = 0; t < grammar.getTerminalCount(); t++)
+            for(int id : grammar.getTerminalNonTerminals(t))
+                CompiledGrammar.set(derives[1], id);
+        for(int length = 2; length <= maxLength; length++)
+            for(int p = 1; p < length; p++)
+                for(int r = 0; r < heads.length; r++)
+                    if(CompiledGrammar.get(derives[p], lefts[r]) && CompiledGrammar.get(derives[length - p], rights[r]))
+                        CompiledGrammar.set(derives[length], heads[r]);
+
+        int[] counts = new int[grammar.getNonTerminalCount()];
+        for(int head : heads)
+            counts[head]++;
+        rulesByHead = new int[counts.length][];
+        for(int id = 0; id < counts.length; id++)
+            rulesByHead[id] = new int[counts[id]];
+        for(int r = 0; r < heads.length; r++)
+            rulesByHead[heads[r]][--counts[heads[r]]] = r;
+    }
+
+    /* A random member of the shortest length from the given one up to the maximum that has any members, or null if there are none */
+    public int[] member(int minLength) {
+        for(int length = Math.max(1, minLength); length < derives.length; length++)
+            if(grammar.getStartId() >= 0 && CompiledGrammar.get(derives[length], grammar.getStartId()))
+                return derive(grammar.getStartId(), length);
+        return null;
+    }
+
+    /* A random non-member of the given length - a member with one terminal changed when there is one (so it gets past the cheap filters and exercises the chart), otherwise a random string */
+    public int[] nonMember(int length) {
+        int[] member = member(length);
+        MembershipOptions options = new MembershipOptions();
+        for(int attempt = 0; attempt < 1000; attempt++) {
+            int[] tokens;
+            if(member != null && attempt < 500) {
+                tokens = member.clone();
+                tokens[random.nextInt(tokens.length)] = random.nextInt(grammar.getTerminalCount());
+            } else {
+                tokens = new int[length];
+                for(int i = 0; i < length; i++)
+                    tokens[i] = random.nextInt(grammar.getTerminalCount());
+            }
+            if(!grammar.recognize(tokens, options))
+                return tokens;
+        }
+        throw new RuntimeException("Couldn't find a non-member of length " + length + ".");
+    }
+
+    /* The text of the given tokens, with the terminals separated by spaces unless every one is a single character */
+    public String toString(int[] tokens) {
+        boolean spaced = false;
+        for(int token : tokens)
+            spaced |= grammar.getTerminalName(token).length() != 1;
+        StringBuilder result = new StringBuilder();
+        for(int token : tokens) {
+            if(spaced && result.length() > 0)
+                result.append(' ');
+            result.append(grammar.getTerminalName(token));
+        }
+        return result.toString();
+    }
+
+    /* Derive a random string of the given length from the non-terminal, expanding the leftmost pending non-terminal each step instead of recursing so long inputs don't overflow the stack */
+    private int[] derive(int id, int length) {
+        int[] tokens = new int[length];
+        int count = 0;
+        Deque<int[]> pending = new ArrayDeque<>(); // {non-terminal, length} still to derive, leftmost first
+        pending.push(new int[] {id, length});
+        int[] lefts = grammar.getBinaryLefts(), rights = grammar.getBinaryRights();
+        while(!pending.isEmpty()) {
+            int[] next = pending.pop();
+            if(next[1] == 1) {
+                tokens[count++] = randomTerminal(next[0]);
+                continue;
+            }
+            int chosenRule = -1, chosenSplit = -1, seen = 0;
+            for(int r : rulesByHead[next[0]])
+                for(int p = 1; p < next[1]; p++)
+                    if(CompiledGrammar.get(derives[p], lefts[r]) && CompiledGrammar.get(derives[next[1] - p], rights[r]) && random.nextInt(++seen) == 0) { // reservoir sampling over every usable rule and split
+                        chosenRule = r;
+                        chosenSplit = p;
+                    }
+            pending.push(new int[] {rights[chosenRule], next[1] - chosenSplit});
+            pending.push(new int[] {lefts[chosenRule], chosenSplit});
+        }
+        return tokens;
+    }
+
+    /* A random terminal the non-terminal has a production to */
+    private int randomTerminal(int id) {
+        int chosen = -1, seen = 0;
+        for(int t = 0; t < grammar.getTerminalCount(); t++)
+            if(contains(grammar.getTerminalNonTerminals(t), id) && random.nextInt(++seen) == 0)
+                chosen = t;
+        return chosen;
+    }
+
+    private static boolean contains(int[] ids, int id) {
+        for(int i : ids)
+            if(i == id)
+                return true;
+        return false;
+    }
+
+}
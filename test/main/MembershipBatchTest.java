@@ -0,0 +1,110 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/* Checks that batches give each input the answer it gets on its own, in input order, and that reused charts don't carry anything over between inputs */
+public class MembershipBatchTest {
+
+    @TempDir
+    Path directory;
+
+    /* Members and non-members of the grammar, with every 500th of the given long length (long enough, say, that its chart isn't kept for reuse) */
+    private static List<String> inputs(CompiledGrammar grammar, int count, int longLength, long seed) {
+        InputGenerator generator = new InputGenerator(grammar, Math.max(longLength, 40) + 1, seed);
+        Random random = new Random(seed);
+        List<String> inputs = new ArrayList<>();
+        for(int i = 0; i < count; i++) {
+            int length = i % 500 == 7 ? longLength : 1 + random.nextInt(40);
+            int[] tokens = random.nextBoolean() ? generator.member(length) : generator.nonMember(Math.min(length, 30));
+            inputs.add(generator.toString(tokens));
+        }
+        return inputs;
+    }
+
+    @Test
+    public void givesEachInputItsOwnAnswerInOrder() {
+        CompiledGrammar grammar = GrammarGenerator.compile("dyck");
+        List<String> inputs = inputs(grammar, 3000, 1100, 1);
+        assertTrue(PackedChart.estimateBytes(grammar, 1100) > MembershipBatch.REUSE_LIMIT);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            boolean[] results = new MembershipBatch(grammar, new MembershipOptions().setPool(pool)).checkAll(inputs);
+            assertEquals(inputs.size(), results.length);
+            int members = 0;
+            for(int i = 0; i < results.length; i++) {
+                assertEquals(grammar.recognize(inputs.get(i)), results[i], inputs.get(i));
+                members += results[i] ? 1 : 0;
+            }
+            assertTrue(members > 0 && members < inputs.size(), members + " members");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void streamsIteratorsAndFilesInOrder() throws IOException {
+        CompiledGrammar grammar = GrammarGenerator.compile("arithmetic");
+        List<String> inputs = inputs(grammar, 5000, 40, 2); // more than one window of a two-worker pool
+        Path file = directory.resolve("inputs.txt");
+        Files.write(file, inputs, StandardCharsets.UTF_8);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            MembershipBatch batch = new MembershipBatch(grammar, new MembershipOptions().setPool(pool));
+            boolean[] expected = batch.checkAll(inputs);
+            List<String> seen = new ArrayList<>();
+            List<Boolean> results = new ArrayList<>();
+            batch.checkAll(inputs.iterator(), (input, result) -> {
+                seen.add(input);
+                results.add(result);
+            });
+            batch.checkFile(file, (input, result) -> {
+                seen.add(input);
+                results.add(result);
+            });
+            assertEquals(2 * inputs.size(), seen.size());
+            for(int i = 0; i < seen.size(); i++) {
+                assertEquals(inputs.get(i % inputs.size()), seen.get(i));
+                assertEquals(expected[i % inputs.size()], results.get(i).booleanValue(), seen.get(i));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void reusedChartsStartEmpty() {
+        CompiledGrammar grammar = GrammarGenerator.compile("random");
+        InputGenerator generator = new InputGenerator(grammar, 60, 3);
+        Random random = new Random(3);
+        MembershipOptions options = new MembershipOptions().setEngine(MembershipEngine.CHART);
+        PackedChart chart = new PackedChart(grammar.getWords(), 0);
+        for(int i = 0; i < 200; i++) { // long members followed by shorter inputs, which mustn't see their cells
+            int[] tokens = i % 2 == 0 ? generator.member(20 + random.nextInt(40)) : generator.nonMember(1 + random.nextInt(12));
+            assertEquals(grammar.recognize(tokens, options), grammar.recognize(tokens, options, chart), () -> generator.toString(tokens));
+        }
+        long bytes = chart.getBytes();
+        grammar.recognize(generator.member(5), options, chart);
+        assertEquals(bytes, chart.getBytes());
+    }
+
+    @Test
+    public void rethrowsAFailedInput() {
+        CompiledGrammar grammar = GrammarGenerator.compile("dyck");
+        List<String> inputs = new ArrayList<>(Collections.nCopies(1000, "()"));
+        inputs.set(600, "()".repeat(500));
+        MembershipBatch batch = new MembershipBatch(grammar, new MembershipOptions().setMaxChartBytes(1 << 16));
+        RuntimeException e = assertThrows(RuntimeException.class, () -> batch.checkAll(inputs));
+        assertTrue(e.getMessage().contains("over the limit"), e.getMessage());
+    }
+
+}
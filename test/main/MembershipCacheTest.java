@@ -0,0 +1,100 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/* Checks the cache's eviction order, that it forgets a grammar once the grammar changes, and that seeding charts from cached spans doesn't change any answer */
+public class MembershipCacheTest {
+
+    @Test
+    public void evictsTheLeastRecentlyUsedEntryOfASegment() {
+        MembershipCache.Store<Integer, String> store = new MembershipCache.Store<>(16 * 300); // 300 bytes a segment, so 3 entries of 100
+        int[] keys = {0, 16, 32, 48}; // small multiples of 16, which all land in the first segment
+        for(int key : keys)
+            assertEquals(0, MembershipCache.Store.segmentOf(key));
+        store.put(keys[0], "a", 100);
+        store.put(keys[1], "b", 100);
+        store.put(keys[2], "c", 100);
+        assertEquals("a", store.get(keys[0])); // now b is the least recently used
+        store.put(keys[3], "d", 100);
+        assertNull(store.get(keys[1]));
+        assertEquals("a", store.get(keys[0]));
+        assertEquals("c", store.get(keys[2]));
+        assertEquals("d", store.get(keys[3]));
+        assertEquals(300, store.bytes());
+
+        store.put(1, "other", 100); // another segment, so nothing in the first is evicted
+        assertEquals("c", store.get(keys[2]));
+        store.put(64, "too big", 301); // bigger than a segment, so never stored
+        assertNull(store.get(64));
+        assertEquals("d", store.get(keys[3]));
+    }
+
+    @Test
+    public void forgetsAGrammarOnceItChanges() {
+        MembershipCache cache = new MembershipCache(1 << 20);
+        CFG cfg = new CFG();
+        cfg.getOptions().setCache(cache);
+        cfg.addTerminal('a');
+        cfg.addTerminal('b');
+        cfg.addNonTerminal('S').addProduction("AB");
+        cfg.addNonTerminal('A').addProduction("a");
+        cfg.addNonTerminal('B').addProduction("a");
+        assertTrue(cfg.runCYK("aa"));
+        assertFalse(cfg.runCYK("ab")); // gets past the filters, since B could derive b once it has a production for it
+        assertTrue(cfg.runCYK("aa"));
+        assertEquals(1, cache.getVerdictHits());
+        assertTrue(cache.getVerdictBytes() > 0);
+        long fingerprint = cfg.compile().getFingerprint();
+
+        cfg.addNonTerminal('B').addProduction("b"); // a new production of an existing non-terminal
+        assertEquals(0, cache.getVerdictBytes());
+        assertNotEquals(fingerprint, cfg.compile().getFingerprint());
+        assertTrue(cfg.runCYK("ab"));
+
+        cfg.addNonTerminal('T'); // a new non-terminal, even without productions
+        assertEquals(0, cache.getVerdictBytes());
+
+        assertTrue(cfg.runCYK("ab"));
+        fingerprint = cfg.compile().getFingerprint();
+        cfg.addNonTerminal('S').addProduction("aAB"); // not in CNF form, so the grammar is converted before it's checked again
+        assertEquals(0, cache.getVerdictBytes());
+        cfg.convertToCNF(cfg.getNextUnusedSymbol(), null);
+        assertNotEquals(fingerprint, cfg.compile().getFingerprint());
+        assertTrue(cfg.runCYK("aab"));
+        assertTrue(cfg.runCYK("ab"));
+    }
+
+    @Test
+    public void spanHitsGiveTheSameAnswersAsColdChecks() {
+        MembershipCache cache = new MembershipCache(1 << 20, 8 << 20, 8);
+        MembershipOptions cached = new MembershipOptions().setCache(cache), cold = new MembershipOptions();
+        for(String name : new String[] {"dyck", "arithmetic", "random"}) {
+            CompiledGrammar grammar = GrammarGenerator.compile(name);
+            InputGenerator generator = new InputGenerator(grammar, 64, 3);
+            Random random = new Random(3);
+            List<int[]> pieces = new ArrayList<>();
+            for(int i = 0; i < 6; i++) {
+                int[] member = generator.member(8 + random.nextInt(24));
+                if(member != null)
+                    pieces.add(member);
+            }
+            for(int i = 0; i < 60; i++) { // inputs made of pieces seen before, so their substrings are cached, with some broken by a random token
+                int[] first = pieces.get(random.nextInt(pieces.size())), second = pieces.get(random.nextInt(pieces.size()));
+                int[] tokens = new int[first.length + second.length];
+                System.arraycopy(first, 0, tokens, 0, first.length);
+                System.arraycopy(second, 0, tokens, first.length, second.length);
+                if(random.nextBoolean())
+                    tokens[random.nextInt(tokens.length)] = random.nextInt(grammar.getTerminalCount());
+                assertEquals(grammar.recognize(tokens, cold), grammar.recognize(tokens, cached), () -> name + " on " + generator.toString(tokens));
+            }
+        }
+        assertTrue(cache.getSpanHits() > 0, "no span was ever found in the cache");
+    }
+
+}
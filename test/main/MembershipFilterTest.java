@@ -0,0 +1,104 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/* Checks each of the filters' rejections and counters, and that no filter ever rejects a member */
+public class MembershipFilterTest {
+
+    /* S → AcA, A → a | b - every member is three symbols long, starts and ends with a or b and has a c */
+    private static CompiledGrammar middleC() {
+        CFG cfg = new CFG();
+        cfg.addTerminal('a');
+        cfg.addTerminal('b');
+        cfg.addTerminal('c');
+        cfg.addNonTerminal('S').addProduction("AcA");
+        cfg.addNonTerminal('A').addProduction("a");
+        cfg.addNonTerminal('A').addProduction("b");
+        cfg.convertToCNF(cfg.getNextUnusedSymbol(), null);
+        return cfg.compile();
+    }
+
+    @Test
+    public void rejectsForEachReason() {
+        CompiledGrammar grammar = middleC();
+        MembershipFilter filter = grammar.getFilter();
+        assertEquals(3, filter.getMinLength());
+        assertEquals(3, filter.getMaxLength());
+        Object[][] cases = {
+            {"", MembershipFilter.Rejection.EMPTY},
+            {"adb", MembershipFilter.Rejection.ALPHABET},
+            {"ac", MembershipFilter.Rejection.MIN_LENGTH},
+            {"acab", MembershipFilter.Rejection.MAX_LENGTH},
+            {"cab", MembershipFilter.Rejection.FIRST},
+            {"abc", MembershipFilter.Rejection.LAST},
+            {"aab", MembershipFilter.Rejection.COUNTS},
+            {"acb", null},
+            {"bcb", null},
+        };
+        for(Object[] c : cases) {
+            assertEquals(c[1], filter.check(grammar.tokenize((String) c[0])), (String) c[0]);
+            assertEquals(c[1] == null, grammar.recognize((String) c[0]), (String) c[0]); // checked by the filter again, counting it twice
+        }
+        for(MembershipFilter.Rejection rejection : MembershipFilter.Rejection.values())
+            assertEquals(2, filter.getRejected(rejection), rejection.toString());
+        assertEquals(4, filter.getPassed());
+    }
+
+    @Test
+    public void unboundedGrammarsHaveNoMaxLength() {
+        CompiledGrammar grammar = GrammarGenerator.compile("dyck");
+        MembershipFilter filter = grammar.getFilter();
+        assertEquals(2, filter.getMinLength());
+        assertEquals(Integer.MAX_VALUE, filter.getMaxLength());
+        assertEquals(MembershipFilter.Rejection.FIRST, filter.check(grammar.tokenize(")(")));
+        assertEquals(MembershipFilter.Rejection.LAST, filter.check(grammar.tokenize("((")));
+        assertNull(filter.check(grammar.tokenize("(".repeat(1000) + ")".repeat(1000))));
+    }
+
+    @Test
+    public void startWithoutStringsRejectsEverything() {
+        CFG cfg = new CFG();
+        cfg.addTerminal('a');
+        cfg.addNonTerminal('S').addProduction("SS");
+        cfg.addNonTerminal('A').addProduction("a");
+        MembershipFilter filter = cfg.compile().getFilter();
+        assertEquals(MembershipFilter.Rejection.MIN_LENGTH, filter.check(cfg.compile().tokenize("a")));
+        assertEquals(MembershipFilter.Rejection.MIN_LENGTH, filter.check(cfg.compile().tokenize("aaaa")));
+    }
+
+    /* The filters only ever reject non-members - members of random grammars all get through, and whatever's rejected the chart rejects too */
+    @Test
+    public void neverRejectsAMember() {
+        MembershipOptions options = new MembershipOptions().setEngine(MembershipEngine.CHART);
+        int rejected = 0;
+        for(int seed = 0; seed < 40; seed++) {
+            CFG cnf = GrammarGenerator.random(5, 2, 3, 4, seed);
+            cnf.convertToCNF(cnf.getNextUnusedSymbol(), null);
+            CompiledGrammar grammar = cnf.compile();
+            MembershipFilter filter = grammar.getFilter();
+            InputGenerator generator = new InputGenerator(grammar, 30, seed);
+            int[] shortest = generator.member(1);
+            if(shortest != null)
+                assertEquals(shortest.length, filter.getMinLength(), "grammar " + seed);
+            Random random = new Random(seed);
+            for(int i = 0; i < 30; i++) {
+                int[] member = generator.member(1 + random.nextInt(30));
+                if(member != null)
+                    assertNull(filter.check(member), "grammar " + seed + " on member " + generator.toString(member));
+                int[] tokens = new int[1 + random.nextInt(12)];
+                for(int j = 0; j < tokens.length; j++)
+                    tokens[j] = random.nextInt(grammar.getTerminalCount());
+                if(filter.check(tokens) != null) {
+                    rejected++;
+                    assertFalse(grammar.recognize(tokens, options), "grammar " + seed + " on " + generator.toString(tokens));
+                }
+            }
+        }
+        assertTrue(rejected > 0, "nothing was rejected");
+    }
+
+}
@@ -0,0 +1,124 @@
+package main;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/* Runs the server on an ephemeral port and talks to it through MembershipClient, end to end */
+public class MembershipServerTest {
+
+    /* a^n b^n for n >= 1, as in data/input5.txt */
+    private static final String GRAMMAR = "S -> AB|XB\nT -> AB|XB\nX -> AT\nA -> a\nB -> b\n";
+
+    @TempDir
+    Path directory;
+
+    private GrammarRegistry registry;
+
+    private MembershipServer server;
+
+    @BeforeEach
+    public void start() throws IOException {
+        Files.write(directory.resolve("anbn.txt"), GRAMMAR.getBytes(StandardCharsets.UTF_8));
+        registry = new GrammarRegistry(new MembershipOptions());
+        server = new MembershipServer(registry, 0, 2, 64);
+        server.setLoadDirectory(directory);
+    }
+
+    @AfterEach
+    public void stop() throws IOException {
+        server.close();
+        registry.close();
+    }
+
+    @Test
+    public void loadCheckAndStats() throws IOException {
+        try(MembershipClient client = new MembershipClient(server.getPort())) {
+            assertEquals(GrammarClass.GENERAL, client.load("anbn", "anbn.txt"));
+            assertEquals(Arrays.asList("anbn"), client.list());
+            assertTrue(client.check("anbn", "aabb"));
+            assertFalse(client.check("anbn", "aab"));
+            assertArrayEquals(new boolean[] {true, false, true, false}, client.checkAll("anbn", Arrays.asList("ab", "ba", "aaabbb", "")));
+            String stats = client.stats();
+            assertTrue(stats.contains("checks=6"), stats);
+            assertTrue(stats.contains("errors=0"), stats);
+            client.drop("anbn");
+            assertTrue(client.list().isEmpty());
+            assertThrows(RuntimeException.class, () -> client.check("anbn", "ab"));
+            assertTrue(client.stats().contains("errors=1"));
+        }
+    }
+
+    /* Errors in the middle of a pipelined batch have to leave the connection in step, with the batch's other responses read */
+    @Test
+    public void checkAllReadsEveryResponseBeforeFailing() throws IOException {
+        try(MembershipClient client = new MembershipClient(server.getPort())) {
+            client.load("anbn", "anbn.txt");
+            assertThrows(RuntimeException.class, () -> client.checkAll("missing", Arrays.asList("ab", "aabb", "ba"))); // an error for each, with the first thrown
+            assertEquals(Arrays.asList("anbn"), client.list());
+            assertTrue(client.check("anbn", "aabb"));
+            assertArrayEquals(new boolean[] {true, false}, client.checkAll("anbn", Arrays.asList("ab", "ba")));
+        }
+    }
+
+    @Test
+    public void loadStaysInsideTheLoadDirectory() throws IOException {
+        try(MembershipClient client = new MembershipClient(server.getPort())) {
+            for(String file : new String[] {"/etc/passwd", "../../../../etc/passwd", "missing.txt"}) {
+                RuntimeException e = assertThrows(RuntimeException.class, () -> client.load("g", file), file);
+                assertFalse(e.getMessage().contains("root"), e.getMessage());
+            }
+            assertTrue(client.list().isEmpty());
+        }
+    }
+
+    /* A client that pipelines far more requests than the server will queue and then goes away without reading any responses mustn't stop the server answering anyone else */
+    @Test
+    public void clientThatNeverReads() throws Exception {
+        try(MembershipClient client = new MembershipClient(server.getPort())) {
+            client.load("anbn", "anbn.txt");
+        }
+        SocketChannel flood = SocketChannel.open();
+        flood.setOption(StandardSocketOptions.SO_RCVBUF, 4096); // small, so the server's responses back up quickly
+        flood.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()));
+        flood.configureBlocking(false);
+        ByteBuffer request = ByteBuffer.wrap("CHECK anbn ab\n".getBytes(StandardCharsets.UTF_8));
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        for(int stalled = 0; stalled < 20; ) { // write until the server has stopped reading for a while, with its response queue full behind a writer that can't send
+            assertTrue(System.nanoTime() < deadline, "the server never stopped reading the flood");
+            if(!request.hasRemaining())
+                request.rewind();
+            if(flood.write(request) > 0)
+                stalled = 0;
+            else {
+                stalled++;
+                Thread.sleep(25);
+            }
+        }
+        flood.close();
+        try(MembershipClient client = new MembershipClient(server.getPort())) {
+            deadline = System.nanoTime() + 10_000_000_000L;
+            while(!client.stats().contains(" open=1 ")) { // only this connection, once the flood's has given up on its writer
+                assertTrue(System.nanoTime() < deadline, "the flood's connection is still open: " + client.stats());
+                Thread.sleep(50);
+            }
+            assertTrue(client.check("anbn", "aaabbb"));
+            assertFalse(client.check("anbn", "abab"));
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/* Checks that filling the triangle's anti-diagonals on a pool gives the same answers as filling it on one thread, with each diagonal finished before the next starts */
+public class ParallelFillTest {
+
+    @Test
+    public void parallelFillGivesTheSameAnswers() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            MembershipOptions parallel = new MembershipOptions().setEngine(MembershipEngine.CHART).setParallelThreshold(2).setPool(pool);
+            MembershipOptions sequential = new MembershipOptions().setEngine(MembershipEngine.CHART).setParallelThreshold(Integer.MAX_VALUE);
+            for(String name : new String[] {"dyck", "arithmetic", "random"}) {
+                CompiledGrammar grammar = GrammarGenerator.compile(name);
+                InputGenerator generator = new InputGenerator(grammar, 300, 11);
+                for(int length : new int[] {2, 17, 64, 150, 300}) {
+                    int[] member = generator.member(length);
+                    if(member != null) {
+                        assertTrue(grammar.recognize(member, sequential), () -> name + " member " + generator.toString(member));
+                        assertTrue(grammar.recognize(member, parallel), () -> name + " member " + generator.toString(member) + " in parallel");
+                    }
+                    int[] nonMember = generator.nonMember(Math.min(length, 40)); // random grammars derive nearly every long string
+                    assertFalse(grammar.recognize(nonMember, parallel), () -> name + " non-member " + generator.toString(nonMember) + " in parallel");
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void fillsEachCellOnceAfterTheDiagonalBelow() {
+        int n = 400;
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            AtomicIntegerArray filled = new AtomicIntegerArray(n * n), done = new AtomicIntegerArray(n + 1); // filled per (s, l) at (l - 1) * n + s, and cells done per length
+            List<String> failures = Collections.synchronizedList(new ArrayList<>()); // collected rather than thrown on the pool's threads
+            SpanTask.fillTriangle((length, from, to) -> {
+                if(length > 2 && done.get(length - 1) != n - length + 2)
+                    failures.add("length " + length + " started before length " + (length - 1) + " finished");
+                for(int s = from; s < to; s++)
+                    filled.incrementAndGet((length - 1) * n + s);
+                done.addAndGet(length, to - from);
+            }, n, new MembershipOptions().setParallelThreshold(2).setPool(pool), null);
+            assertEquals(Collections.emptyList(), failures);
+            for(int l = 2; l <= n; l++)
+                for(int s = 0; s + l <= n; s++)
+                    assertEquals(1, filled.get((l - 1) * n + s), "cell (" + s + ", " + l + ")");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void staysOnTheCallingThreadBelowTheThresholdOrWithOneWorker() {
+        ForkJoinPool single = new ForkJoinPool(1), pool = new ForkJoinPool(4);
+        try {
+            for(MembershipOptions options : new MembershipOptions[] {new MembershipOptions().setParallelThreshold(2).setPool(single), new MembershipOptions().setParallelThreshold(500).setPool(pool)}) {
+                Set<Thread> threads = Collections.synchronizedSet(new HashSet<>());
+                SpanTask.fillTriangle((length, from, to) -> threads.add(Thread.currentThread()), 400, options, null);
+                assertEquals(Collections.singleton(Thread.currentThread()), threads);
+            }
+        } finally {
+            single.shutdown();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void cancellationStopsAParallelFill() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            CompiledGrammar grammar = GrammarGenerator.compile("dyck");
+            int[] member = new InputGenerator(grammar, 400, 3).member(400);
+            CancellationToken token = new CancellationToken();
+            token.cancel();
+            MembershipOptions options = new MembershipOptions().setEngine(MembershipEngine.CHART).setParallelThreshold(2).setPool(pool).setCancellationToken(token);
+            assertThrows(CancellationException.class, () -> grammar.recognize(member, options));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/* Checks the trees taken from parse forests against the grammars they were converted from */
+public class ParseForestTest {
+
+    private static final int GRAMMARS = 300, INPUTS = 4, MAX_LENGTH = 10, TREES = 5;
+
+    /* S → ASA | aB, A → B | S, B → b | λ - nullable, with unit productions and a production that's split into pairs before its lambda productions are removed */
+    private static CFG nullable() {
+        CFG cfg = new CFG();
+        cfg.addTerminal('a');
+        cfg.addTerminal('b');
+        cfg.addNonTerminal('S').addProduction("ASA");
+        cfg.addNonTerminal('S').addProduction("aB");
+        cfg.addNonTerminal('A').addProduction("B");
+        cfg.addNonTerminal('A').addProduction("S");
+        cfg.addNonTerminal('B').addProduction("b");
+        cfg.addNonTerminal('B').addProduction("λ");
+        return cfg;
+    }
+
+    /* S → SS | a, already in CNF form, whose inputs of n a's have the (n-1)th Catalan number of derivations */
+    private static CFG catalan() {
+        CFG cfg = new CFG();
+        cfg.addTerminal('a');
+        cfg.addNonTerminal('S').addProduction("SS");
+        cfg.addNonTerminal('S').addProduction("a");
+        return cfg;
+    }
+
+    @Test
+    public void countsDerivations() {
+        CFG cfg = catalan();
+        BigInteger catalan = BigInteger.ONE; // C(0)
+        for(int n = 1; n <= 40; n++) {
+            assertEquals(catalan, cfg.parse("a".repeat(n)).countDerivations(), "derivations of " + n + " a's");
+            catalan = catalan.multiply(BigInteger.valueOf(2L * (2 * n - 1))).divide(BigInteger.valueOf(n + 1)); // C(n) from C(n-1)
+        }
+        assertEquals(BigInteger.ZERO, cfg.parse("ab").countDerivations());
+        assertEquals(BigInteger.ZERO, cfg.parse("").countDerivations());
+    }
+
+    @Test
+    public void takesUpToKDistinctTrees() {
+        ParseForest forest = catalan().parse("aaaaa");
+        assertTrue(forest.isMember());
+        List<ParseTree> all = forest.trees(100);
+        assertEquals(14, all.size()); // C(4)
+        Set<String> distinct = new HashSet<>();
+        for(ParseTree tree : all) {
+            assertTrue(distinct.add(tree.toString()), "the tree " + tree + " was returned twice");
+            assertEquals(5, tree.getEnd());
+        }
+        List<ParseTree> some = forest.trees(3);
+        assertEquals(3, some.size());
+        for(int i = 0; i < some.size(); i++)
+            assertEquals(all.get(i).toString(), some.get(i).toString(), "the first trees depend on how many were asked for");
+        assertEquals(all.get(0).toString(), forest.firstTree().toString());
+        assertEquals(all.size(), forest.trees(100).size());
+
+        ParseForest nonMember = catalan().parse("aab");
+        assertFalse(nonMember.isMember());
+        assertTrue(nonMember.trees(5).isEmpty());
+        assertNull(nonMember.firstTree());
+    }
+
+    @Test
+    public void treesUseTheSourceProductions() {
+        CFG source = nullable();
+        CFG cnf = source.copy();
+        cnf.convertToCNF(cnf.getNextUnusedSymbol(), null);
+        List<ParseTree> trees = cnf.parse("aab").trees(3);
+        assertEquals(3, trees.size());
+        for(ParseTree tree : trees)
+            checkTree(source, "aab", tree);
+    }
+
+    /* Random grammars with lambda, unit and long productions, whose every tree has to be made of their own productions */
+    @Test
+    public void randomGrammarTreesUseTheSourceProductions() {
+        int checked = 0;
+        for(int seed = 0; seed < GRAMMARS; seed++) {
+            CFG source = GrammarGenerator.random(4, 3, 2, 3, seed);
+            CFG cnf = source.copy();
+            cnf.convertToCNF(cnf.getNextUnusedSymbol(), null);
+            InputGenerator generator = new InputGenerator(cnf.compile(), MAX_LENGTH, seed);
+            Random random = new Random(seed);
+            for(int i = 0; i < INPUTS; i++) {
+                int[] member = generator.member(1 + random.nextInt(MAX_LENGTH));
+                if(member == null)
+                    continue;
+                String input = generator.toString(member);
+                List<ParseTree> trees = cnf.parse(input).trees(TREES);
+                assertFalse(trees.isEmpty(), "no trees for the member " + input + " of grammar " + seed);
+                for(ParseTree tree : trees)
+                    checkTree(source, input, tree);
+                checked += trees.size();
+            }
+        }
+        assertTrue(checked > GRAMMARS, "only " + checked + " trees were checked");
+    }
+
+    /* Check the tree derives the whole input from the start symbol, with every node's children being one of the source grammar's productions for it over the spans they cover */
+    private static void checkTree(CFG source, String input, ParseTree tree) {
+        assertEquals(source.getSymbolTable().getName(source.getStartSymbol()), tree.getSymbol(), "root of " + tree);
+        assertEquals(0, tree.getStart(), "start of " + tree);
+        assertEquals(input.length(), tree.getEnd(), "end of " + tree);
+        Map<String, Set<List<String>>> productions = new HashMap<>();
+        for(NonTerminal n : source.getNonTerminals())
+            for(Production p : n.getProductionList())
+                productions.computeIfAbsent(n.getName(), k -> new HashSet<>()).add(Arrays.asList(CNFOrigins.names(source.getSymbolTable(), p.getSymbols())));
+        checkNode(productions, input, tree, tree);
+    }
+
+    private static void checkNode(Map<String, Set<List<String>>> productions, String input, ParseTree node, ParseTree tree) {
+        if(node.isTerminal()) {
+            assertEquals(input.substring(node.getStart(), node.getEnd()), node.getSymbol(), "leaf of " + tree);
+            return;
+        }
+        List<String> symbols = new ArrayList<>();
+        int position = node.getStart();
+        for(ParseTree child : node.getChildren()) {
+            assertEquals(position, child.getStart(), "span of " + child + " in " + tree);
+            position = child.getEnd();
+            if(!child.getSymbol().equals(Character.toString(Main.LAMBDA)))
+                symbols.add(child.getSymbol());
+            else
+                assertEquals(1, node.getChildren().size(), "lambda beside other children in " + tree);
+        }
+        assertEquals(node.getEnd(), position, "span of " + node + " in " + tree);
+        assertTrue(productions.getOrDefault(node.getSymbol(), Collections.emptySet()).contains(symbols), () -> node.getSymbol() + " " + Main.ARROW + " " + symbols + " isn't a production of the source grammar, in " + tree);
+        for(ParseTree child : node.getChildren())
+            if(!child.getSymbol().equals(Character.toString(Main.LAMBDA)))
+                checkNode(productions, input, child, tree);
+    }
+
+}
@@ -0,0 +1,83 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/* Checks that whitespace only separates tokens in token mode grammars, while single character grammars read it as a character like the original CYK did */
+public class TokenizerTest {
+
+    @TempDir
+    Path directory;
+
+    /* Read the grammar file and convert it to CNF form, as Main does */
+    private CFG read(String grammar) throws IOException {
+        Path file = directory.resolve("grammar.txt");
+        Files.write(file, grammar.getBytes(StandardCharsets.UTF_8));
+        CFG cfg = Main.readGrammar(file.toFile());
+        cfg.convertToCNF(cfg.getNextUnusedSymbol(), null);
+        return cfg;
+    }
+
+    @Test
+    public void characterModeReadsWhitespaceAsACharacter() throws IOException {
+        CFG cfg = read("S -> AB\nA -> a\nB -> b\n");
+        assertFalse(cfg.isTokenMode());
+        assertTrue(cfg.runCYK("ab"));
+        assertFalse(cfg.runCYK("a b"));
+        assertFalse(cfg.runCYK(" ab"));
+        CompiledGrammar grammar = cfg.compile();
+        int a = grammar.getTerminalIndex("a"), b = grammar.getTerminalIndex("b");
+        assertArrayEquals(new int[] {a, -1, b}, grammar.tokenize("a b"));
+        assertArrayEquals(new int[] {-1, -1}, grammar.tokenize("\t\n"));
+    }
+
+    @Test
+    public void tokenModeSkipsWhitespace() throws IOException {
+        CFG cfg = read("S -> a B\nB -> b\n"); // single character symbols, but spaced out, so read in token mode
+        assertTrue(cfg.isTokenMode());
+        assertTrue(cfg.runCYK("a b"));
+        assertTrue(cfg.runCYK(" a\tb "));
+        assertTrue(cfg.runCYK("ab"));
+        assertFalse(cfg.runCYK("a c"));
+
+        CFG named = read("expr -> num plus expr | num\n");
+        assertTrue(named.isTokenMode());
+        assertTrue(named.runCYK("num plus num"));
+        assertTrue(named.runCYK("numplusnum"));
+        assertFalse(named.runCYK("num plus"));
+    }
+
+    @Test
+    public void longTerminalNamesImplyTokenMode() {
+        CFG cfg = new CFG();
+        cfg.addTerminal("if");
+        cfg.addTerminal("x");
+        cfg.addNonTerminal('S').addProduction(new int[] {cfg.getSymbolTable().getId("if"), cfg.getSymbolTable().getId("x")});
+        assertTrue(cfg.isTokenMode());
+        cfg.convertToCNF(cfg.getNextUnusedSymbol(), null);
+        assertTrue(cfg.runCYK("if x"));
+        assertTrue(cfg.runCYK("ifx"));
+        assertFalse(cfg.runCYK("i f x"));
+    }
+
+    @Test
+    public void compiledGrammarFilesKeepTheMode() throws IOException {
+        Path file = directory.resolve("grammar.cfgb");
+        for(String source : new String[] {"S -> AB\nA -> a\nB -> b\n", "S -> a B\nB -> b\n"}) {
+            CFG cfg = read(source);
+            GrammarFile.write(cfg.compile(), 0, file);
+            CompiledGrammar loaded = GrammarFile.read(file);
+            assertEquals(cfg.isTokenMode(), loaded.getTokenizer().isTokenMode());
+            assertEquals(cfg.runCYK("a b"), loaded.recognize("a b"));
+            assertTrue(loaded.recognize("ab"));
+        }
+    }
+
+}